@@ -0,0 +1,243 @@
+package com.heartsafe.desktop;
+
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Activity log shown in the main window
+ * Keeps the most recent entries in a fixed-size ring buffer exposed as a ListModel, so a
+ * JList only renders the visible rows and memory stays bounded however long the session
+ * runs. Every entry is also queued to a background writer that appends to rolling files.
+ */
+public class ActivityLog extends AbstractListModel<String> implements AutoCloseable {
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(ActivityLog.class.getName());
+
+    // DateTimeFormatter is immutable and thread-safe, so one instance serves every entry
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss")
+        .withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+        .withZone(ZoneId.systemDefault());
+
+    // Ring buffer; only touched on the EDT
+    private final String[] lines;
+    private int head;
+    private int size;
+
+    // Writer thread and open file; never serialized with the model
+    private final transient FileSink sink;
+
+    /**
+     * @param maxEntries entries kept in memory; older ones are dropped from the view
+     * @param directory where rolling log files are written, or null for memory only
+     */
+    public ActivityLog(int maxEntries, Path directory, long maxFileBytes, int maxFiles) {
+        this.lines = new String[Math.max(1, maxEntries)];
+        this.sink = directory == null ? null : new FileSink(directory, maxFileBytes, maxFiles);
+    }
+
+    /**
+     * Log configured from heartsafe.log.maxEntries, heartsafe.log.dir, heartsafe.log.maxFileKb
+     * and heartsafe.log.maxFiles
+     */
+    public static ActivityLog fromSystemProperties() {
+        return new ActivityLog(Integer.getInteger("heartsafe.log.maxEntries", 5000),
+            Paths.get(System.getProperty("heartsafe.log.dir", "logs")),
+            Long.getLong("heartsafe.log.maxFileKb", 5 * 1024) * 1024,
+            Integer.getInteger("heartsafe.log.maxFiles", 5));
+    }
+
+    /**
+     * Add an entry; may be called from any thread
+     */
+    public void append(String message) {
+        long now = System.currentTimeMillis();
+        if (sink != null) {
+            sink.offer(FILE_TIME_FORMAT.format(Instant.ofEpochMilli(now)) + " " + message);
+        }
+        String line = "[" + TIME_FORMAT.format(Instant.ofEpochMilli(now)) + "] " + message;
+        if (SwingUtilities.isEventDispatchThread()) {
+            add(line);
+        } else {
+            SwingUtilities.invokeLater(() -> add(line));
+        }
+    }
+
+    public int getCapacity() {
+        return lines.length;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return lines[(head + index) % lines.length];
+    }
+
+    /**
+     * Stop the file writer after flushing queued entries
+     */
+    @Override
+    public void close() {
+        if (sink != null) {
+            sink.close();
+        }
+    }
+
+    private void add(String line) {
+        if (size == lines.length) {
+            lines[head] = line;
+            head = (head + 1) % lines.length;
+            fireIntervalRemoved(this, 0, 0);
+            fireIntervalAdded(this, size - 1, size - 1);
+        } else {
+            lines[(head + size) % lines.length] = line;
+            size++;
+            fireIntervalAdded(this, size - 1, size - 1);
+        }
+    }
+
+    /**
+     * Appends entries to activity.log on a daemon thread, rolling to activity.1.log ... when the
+     * file grows past maxFileBytes. If the queue is full (disk stalled), entries are dropped from
+     * the file rather than blocking the UI; the count is logged.
+     */
+    private static class FileSink {
+        private static final int QUEUE_CAPACITY = 10_000;
+        private static final long POLL_MILLIS = 250;
+
+        private final Path directory;
+        private final long maxFileBytes;
+        private final int maxFiles;
+        private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final AtomicLong dropped = new AtomicLong();
+        private final Thread writerThread;
+        private volatile boolean running = true;
+
+        private BufferedWriter writer;
+        private long fileBytes;
+
+        FileSink(Path directory, long maxFileBytes, int maxFiles) {
+            this.directory = directory;
+            this.maxFileBytes = maxFileBytes;
+            this.maxFiles = Math.max(1, maxFiles);
+            this.writerThread = new Thread(this::run, "activity-log-writer");
+            this.writerThread.setDaemon(true);
+            this.writerThread.start();
+        }
+
+        void offer(String line) {
+            if (!queue.offer(line)) {
+                dropped.incrementAndGet();
+            }
+        }
+
+        void close() {
+            // Not interrupted: an interrupt would close the file channel mid-write
+            running = false;
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(2));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void run() {
+            List<String> batch = new ArrayList<>();
+            try {
+                while (running || !queue.isEmpty()) {
+                    String first;
+                    try {
+                        first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                    if (first == null) continue;
+                    batch.add(first);
+                    queue.drainTo(batch);
+                    write(batch);
+                    batch.clear();
+                }
+            } catch (IOException e) {
+                LOGGER.warning("Activity log file writing stopped: " + e.getMessage());
+            } finally {
+                closeWriter();
+                long lost = dropped.get();
+                if (lost > 0) {
+                    LOGGER.warning(lost + " activity log entries were not written to file");
+                }
+            }
+        }
+
+        private void write(List<String> batch) throws IOException {
+            for (String line : batch) {
+                if (writer == null || fileBytes >= maxFileBytes) {
+                    roll();
+                }
+                writer.write(line);
+                writer.newLine();
+                // Approximate (chars, not bytes); only decides when to roll
+                fileBytes += line.length() + 1;
+            }
+            // Flush once per batch, so a burst costs one write
+            writer.flush();
+        }
+
+        private void roll() throws IOException {
+            Path current = directory.resolve("activity.log");
+            if (writer != null) {
+                closeWriter();
+                for (int i = maxFiles - 1; i >= 1; i--) {
+                    Path older = directory.resolve("activity." + i + ".log");
+                    if (Files.exists(older)) {
+                        if (i == maxFiles - 1) {
+                            Files.delete(older);
+                        } else {
+                            Files.move(older, directory.resolve("activity." + (i + 1) + ".log"), StandardCopyOption.REPLACE_EXISTING);
+                        }
+                    }
+                }
+                if (maxFiles > 1) {
+                    Files.move(current, directory.resolve("activity.1.log"), StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    Files.delete(current);
+                }
+            }
+            Files.createDirectories(directory);
+            writer = Files.newBufferedWriter(current, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            fileBytes = Files.size(current);
+        }
+
+        private void closeWriter() {
+            if (writer == null) return;
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOGGER.warning("Failed to close activity log file: " + e.getMessage());
+            }
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.heartsafe.shared.stats;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Fixed-bucket heart rate histogram with one bucket per BPM
+ * Heart rates are small integers, so one counter per BPM over MIN_BPM..MAX_BPM is an exact
+ * quantile sketch in under 2 KB: percentiles need no raw samples, and histograms from
+ * different sessions or nodes merge by adding counts. Readings outside the range are
+ * clamped into the end buckets.
+ */
+public class BpmHistogram {
+    public static final int MIN_BPM = 20;
+    public static final int MAX_BPM = 250;
+
+    private final long[] counts = new long[MAX_BPM - MIN_BPM + 1];
+    private long total;
+
+    public synchronized void add(int bpm) {
+        add(bpm, 1);
+    }
+
+    public synchronized void add(int bpm, long count) {
+        int clamped = Math.max(MIN_BPM, Math.min(MAX_BPM, bpm));
+        counts[clamped - MIN_BPM] += count;
+        total += count;
+    }
+
+    /**
+     * Add another histogram's counts to this one
+     */
+    public void merge(BpmHistogram other) {
+        long[] theirs;
+        synchronized (other) {
+            theirs = other.counts.clone();
+        }
+        synchronized (this) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += theirs[i];
+                total += theirs[i];
+            }
+        }
+    }
+
+    public synchronized BpmHistogram copy() {
+        BpmHistogram copy = new BpmHistogram();
+        System.arraycopy(counts, 0, copy.counts, 0, counts.length);
+        copy.total = total;
+        return copy;
+    }
+
+    /**
+     * Non-empty buckets as BPM to count, the storage and wire form
+     */
+    public synchronized Map<Integer, Long> toSparse() {
+        Map<Integer, Long> sparse = new TreeMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) sparse.put(MIN_BPM + i, counts[i]);
+        }
+        return sparse;
+    }
+
+    public static BpmHistogram fromSparse(Map<Integer, Long> sparse) {
+        BpmHistogram histogram = new BpmHistogram();
+        if (sparse != null) {
+            sparse.forEach((bpm, count) -> {
+                if (bpm != null && count != null && count > 0) histogram.add(bpm, count);
+            });
+        }
+        return histogram;
+    }
+
+    public synchronized long getCount() {
+        return total;
+    }
+
+    /**
+     * Smallest BPM with at least p percent of readings at or below it; 0 if empty
+     */
+    public synchronized int percentile(double p) {
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return MIN_BPM + i;
+        }
+        return MAX_BPM;
+    }
+
+    /**
+     * Readings from lowBpm to highBpm inclusive
+     */
+    public synchronized long countBetween(int lowBpm, int highBpm) {
+        long sum = 0;
+        for (int bpm = Math.max(MIN_BPM, lowBpm); bpm <= Math.min(MAX_BPM, highBpm); bpm++) {
+            sum += counts[bpm - MIN_BPM];
+        }
+        return sum;
+    }
+
+    public synchronized double getMean() {
+        if (total == 0) return 0;
+        double sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            sum += (double) counts[i] * (MIN_BPM + i);
+        }
+        return sum / total;
+    }
+}
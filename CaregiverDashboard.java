@@ -0,0 +1,246 @@
+package com.heartsafe.backend;
+
+import com.google.gson.Gson;
+import com.heartsafe.shared.json.JsonCodec;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live status of every monitored patient for a nurse station
+ * Each patient's summary (last BPM, zone, active alert, last reading time, stale flag) is
+ * updated as readings are ingested and stamped with a global version whenever it visibly
+ * changes. A dashboard asks for the changes since the version it last saw and gets only those
+ * summaries, so a refresh for thousands of patients is one small payload. The last reading time
+ * alone only counts as a change every TIMESTAMP_GRANULARITY_MILLIS, so steady readings do not
+ * resend every patient; clients work out the time since the last reading from "now".
+ * A delta looks like:
+ * <pre>
+ *   {"version":1234,"now":...,"full":false,"patients":[{"patientId":"p1","bpm":72,"zone":"NORMAL",
+ *    "alert":null,"lastReadingAt":...,"stale":false}, {"patientId":"p2","removed":true}]}
+ * </pre>
+ */
+public class CaregiverDashboard {
+    // Same bands as the desktop monitor
+    private static final int CRITICAL_HIGH_BPM = 120;
+    private static final int CRITICAL_LOW_BPM = 50;
+    private static final int ELEVATED_HIGH_BPM = 100;
+    private static final int ELEVATED_LOW_BPM = 60;
+
+    private static final long TIMESTAMP_GRANULARITY_MILLIS = 10_000;
+    private static final long HEARTBEAT_MILLIS = 15_000;
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final Gson gson = JsonCodec.gson();
+
+    private final Map<String, Summary> patients = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    // Removed patients are forgotten one sweep after their removal was announced; deltas from
+    // before the newest forgotten removal get a full snapshot instead
+    private volatile long oldestDeltaVersion;
+    private long lastSweepVersion;
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final long staleAfterMillis;
+    private final int maxSubscribers;
+
+    public CaregiverDashboard(long staleAfterMillis, int maxSubscribers) {
+        this.staleAfterMillis = staleAfterMillis;
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    public static String zoneOf(int bpm) {
+        if (bpm >= CRITICAL_HIGH_BPM || bpm <= CRITICAL_LOW_BPM) return "CRITICAL";
+        if (bpm >= ELEVATED_HIGH_BPM || bpm <= ELEVATED_LOW_BPM) return "ELEVATED";
+        return "NORMAL";
+    }
+
+    /**
+     * Update a patient's summary with an in-order reading
+     * @param alertType alert raised by this reading, or null; an alert stays active until the
+     *                  patient leaves the critical zone
+     */
+    public void onReading(String patientId, long timestampMillis, int bpm, String alertType) {
+        String zone = zoneOf(bpm);
+        while (true) {
+            Summary summary = patients.computeIfAbsent(patientId, Summary::new);
+            synchronized (summary) {
+                // Forgotten by a sweep after the lookup; retry with a fresh summary
+                if (summary.forgotten) continue;
+                String alert = alertType != null ? alertType : "CRITICAL".equals(zone) ? summary.alert : null;
+                boolean changed = summary.removed || summary.stale || bpm != summary.bpm || !zone.equals(summary.zone)
+                    || !Objects.equals(alert, summary.alert)
+                    || timestampMillis - summary.publishedReadingAt >= TIMESTAMP_GRANULARITY_MILLIS;
+                summary.bpm = bpm;
+                summary.zone = zone;
+                summary.alert = alert;
+                summary.lastReadingAt = timestampMillis;
+                summary.stale = false;
+                summary.removed = false;
+                if (changed) {
+                    summary.publishedReadingAt = timestampMillis;
+                    summary.touch(version.incrementAndGet());
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Flag patients without a reading for staleAfterMillis, and drop those idle since removeBeforeMillis
+     */
+    public synchronized void sweep(long nowMillis, long removeBeforeMillis) {
+        long forgottenVersion = 0;
+        for (Summary summary : patients.values()) {
+            synchronized (summary) {
+                if (summary.zone == null) continue;
+                if (summary.removed) {
+                    // Announced for at least one sweep period; forget it
+                    if (summary.version <= lastSweepVersion) {
+                        summary.forgotten = true;
+                        patients.remove(summary.patientId, summary);
+                        forgottenVersion = Math.max(forgottenVersion, summary.version);
+                    }
+                } else if (summary.lastReadingAt < removeBeforeMillis) {
+                    summary.removed = true;
+                    summary.touch(version.incrementAndGet());
+                } else if (!summary.stale && nowMillis - summary.lastReadingAt > staleAfterMillis) {
+                    summary.stale = true;
+                    summary.touch(version.incrementAndGet());
+                }
+            }
+        }
+        if (forgottenVersion > oldestDeltaVersion) {
+            oldestDeltaVersion = forgottenVersion;
+        }
+        lastSweepVersion = version.get();
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * JSON of the summaries changed after sinceVersion; a full snapshot if sinceVersion is 0 or too old
+     */
+    public String changesSince(long sinceVersion, long nowMillis) {
+        return render(sinceVersion, version.get(), nowMillis);
+    }
+
+    private String render(long sinceVersion, long current, long nowMillis) {
+        boolean full = sinceVersion <= 0 || sinceVersion < oldestDeltaVersion || sinceVersion > current;
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"version\":").append(current).append(",\"now\":").append(nowMillis)
+            .append(",\"full\":").append(full).append(",\"patients\":[");
+        int count = 0;
+        for (Summary summary : patients.values()) {
+            String entry = summary.jsonIfChanged(full ? 0 : sinceVersion, full);
+            if (entry == null) continue;
+            if (count++ > 0) json.append(',');
+            json.append(entry);
+        }
+        return json.append("]}").toString();
+    }
+
+    public boolean tryReserve() {
+        while (true) {
+            int count = subscriberCount.get();
+            if (count >= maxSubscribers) return false;
+            if (subscriberCount.compareAndSet(count, count + 1)) return true;
+        }
+    }
+
+    /**
+     * Stream deltas as server-sent "delta" events, starting with a full snapshot, until the client
+     * goes away. A slow client simply gets a larger delta next time. Requires a slot from
+     * {@link #tryReserve}, which is released on return.
+     */
+    public void stream(HttpExchange exchange, long pushIntervalMillis) throws IOException {
+        try {
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            boolean first = true;
+            long sent = 0;
+            long lastWriteAt = 0;
+            while (true) {
+                long now = System.currentTimeMillis();
+                long current = version.get();
+                if (first || current != sent) {
+                    String delta = render(first ? 0 : sent, current, now);
+                    first = false;
+                    sent = current;
+                    out.write(("event: delta\ndata: " + delta + "\n\n").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    lastWriteAt = now;
+                } else if (now - lastWriteAt >= HEARTBEAT_MILLIS) {
+                    out.write(HEARTBEAT);
+                    out.flush();
+                    lastWriteAt = now;
+                }
+                Thread.sleep(pushIntervalMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            subscriberCount.decrementAndGet();
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    public int getPatientCount() {
+        return patients.size();
+    }
+
+    private static class Summary {
+        final String patientId;
+        int bpm;
+        String zone;
+        String alert;
+        long lastReadingAt;
+        long publishedReadingAt;
+        boolean stale;
+        boolean removed;
+        boolean forgotten;
+        long version;
+        // Serialized form of the current version, shared by every dashboard that asks for it
+        private String json;
+
+        Summary(String patientId) {
+            this.patientId = patientId;
+        }
+
+        void touch(long newVersion) {
+            version = newVersion;
+            json = null;
+        }
+
+        synchronized String jsonIfChanged(long sinceVersion, boolean full) {
+            if (version <= sinceVersion || (full && removed) || zone == null) return null;
+            if (json == null) {
+                StringBuilder sb = new StringBuilder(128).append("{\"patientId\":").append(gson.toJson(patientId));
+                if (removed) {
+                    sb.append(",\"removed\":true}");
+                } else {
+                    sb.append(",\"bpm\":").append(bpm)
+                        .append(",\"zone\":\"").append(zone).append('"')
+                        .append(",\"alert\":").append(alert == null ? "null" : "\"" + alert + "\"")
+                        .append(",\"lastReadingAt\":").append(lastReadingAt)
+                        .append(",\"stale\":").append(stale).append('}');
+                }
+                json = sb.toString();
+            }
+            return json;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.heartsafe.desktop;
+
+import java.awt.EventQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Detects stalls of the Swing event dispatch thread
+ * A background timer posts a probe to the EDT and measures how long it takes to run.
+ * Probe delays go into a histogram; any delay above the threshold is logged, and while
+ * a stall is still in progress the EDT's stack is logged once to show what is blocking it.
+ */
+public class EdtWatchdog implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(EdtWatchdog.class.getName());
+
+    private final long thresholdNanos;
+    private final long intervalMillis;
+    private final LatencyHistogram probeDelays = new LatencyHistogram("edt-probe-delay");
+    private final ScheduledExecutorService timer;
+
+    // Set when a probe is posted, cleared by the probe on the EDT
+    private volatile long probePostedAt;
+    private volatile Thread edt;
+    // Only touched on the timer thread
+    private boolean stallReported;
+
+    public EdtWatchdog(long thresholdMillis, long intervalMillis) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.intervalMillis = intervalMillis;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "edt-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Watchdog configured from heartsafe.edt.stallThresholdMs and heartsafe.edt.probeIntervalMs
+     */
+    public static EdtWatchdog fromSystemProperties() {
+        return new EdtWatchdog(Long.getLong("heartsafe.edt.stallThresholdMs", 200),
+            Long.getLong("heartsafe.edt.probeIntervalMs", 100));
+    }
+
+    public void start() {
+        timer.scheduleWithFixedDelay(this::check, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public LatencyHistogram getProbeDelays() {
+        return probeDelays;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        LOGGER.info("EDT responsiveness " + probeDelays.summary());
+    }
+
+    private void check() {
+        long now = System.nanoTime();
+        long posted = probePostedAt;
+        if (posted == 0) {
+            stallReported = false;
+            probePostedAt = now;
+            EventQueue.invokeLater(this::probe);
+            return;
+        }
+        if (!stallReported && now - posted > thresholdNanos) {
+            stallReported = true;
+            Thread thread = edt;
+            StringBuilder sb = new StringBuilder("EDT unresponsive for ")
+                .append(TimeUnit.NANOSECONDS.toMillis(now - posted)).append(" ms");
+            if (thread != null) {
+                for (StackTraceElement frame : thread.getStackTrace()) {
+                    sb.append("\n    at ").append(frame);
+                }
+            }
+            LOGGER.warning(sb.toString());
+        }
+    }
+
+    private void probe() {
+        edt = Thread.currentThread();
+        long delay = System.nanoTime() - probePostedAt;
+        probePostedAt = 0;
+        probeDelays.record(delay);
+        if (delay > thresholdNanos) {
+            LOGGER.warning("EDT stalled for " + TimeUnit.NANOSECONDS.toMillis(delay) + " ms");
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.heartsafe.backend;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Emergency teleconsultation triage queue
+ * Cases are ordered by severity and arrival: each severity level counts as if the case
+ * had arrived SEVERITY_CREDIT_MILLIS earlier, so a waiting low-severity case is never
+ * starved forever. A dispatcher thread, started by {@link #start}, hands the head of the
+ * queue to the next free on-call doctor. Wait estimates come from queue position, free
+ * doctors and the observed consultation time.
+ */
+public class EmergencyTriage {
+    public static final int SEVERITY_CRITICAL = 3;
+    public static final int SEVERITY_HIGH = 2;
+    public static final int SEVERITY_MODERATE = 1;
+    public static final int SEVERITY_LOW = 0;
+
+    private static final long SEVERITY_CREDIT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long FINISHED_RETENTION_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final double SERVICE_TIME_SMOOTHING = 0.2;
+
+    private final PriorityBlockingQueue<Case> queue = new PriorityBlockingQueue<>(16,
+        Comparator.comparingLong((Case c) -> c.priorityKey).thenComparingLong(c -> c.sequence));
+    // One permit per queued case; the dispatcher is the only consumer, so a permit means the head is there
+    private final Semaphore queued = new Semaphore(0);
+    private final BlockingQueue<SlotAvailability.Doctor> freeDoctors = new LinkedBlockingQueue<>();
+    private final Map<String, Case> cases = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final int onCallCount;
+    private final long maxConsultMillis;
+    private final ScheduledExecutorService timers;
+    private Thread dispatcher;
+
+    // Doctor taken off freeDoctors by the dispatcher while it waits for the next case
+    private volatile SlotAvailability.Doctor waitingDoctor;
+    private volatile double meanServiceMillis;
+    private volatile boolean running = true;
+
+    /**
+     * @param onCall doctors taking emergency consultations
+     * @param expectedConsultMillis service time assumed until real consultations have been observed
+     * @param maxConsultMillis consultations not completed within this time free their doctor automatically
+     */
+    public EmergencyTriage(Collection<SlotAvailability.Doctor> onCall, long expectedConsultMillis, long maxConsultMillis) {
+        this.freeDoctors.addAll(onCall);
+        this.onCallCount = Math.max(1, onCall.size());
+        this.meanServiceMillis = expectedConsultMillis;
+        this.maxConsultMillis = maxConsultMillis;
+        this.timers = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "triage-timers");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Start dispatching cases to doctors and pruning finished ones
+     * @return this triage queue
+     */
+    public synchronized EmergencyTriage start() {
+        if (dispatcher != null) {
+            throw new IllegalStateException("Triage queue already started");
+        }
+        timers.scheduleAtFixedRate(this::pruneFinished, 10, 10, TimeUnit.MINUTES);
+        dispatcher = new Thread(this::dispatchLoop, "triage-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        return this;
+    }
+
+    /**
+     * Severity from the reported heart rate and emergency type
+     */
+    public static int severityOf(int heartRate, String emergencyType) {
+        int severity;
+        if (heartRate >= 150 || (heartRate > 0 && heartRate <= 40)) {
+            severity = SEVERITY_CRITICAL;
+        } else if (heartRate >= 120 || (heartRate > 0 && heartRate <= 50)) {
+            severity = SEVERITY_HIGH;
+        } else if (heartRate >= 100 || (heartRate > 0 && heartRate <= 60)) {
+            severity = SEVERITY_MODERATE;
+        } else {
+            severity = SEVERITY_LOW;
+        }
+        // A patient pressing the emergency button, or a lost device, is never treated as routine
+        if ("MANUAL_EMERGENCY".equals(emergencyType) || "DEVICE_DISCONNECTED".equals(emergencyType)) {
+            severity = Math.max(severity, SEVERITY_HIGH);
+        }
+        return severity;
+    }
+
+    /**
+     * Queue a new emergency case; the returned snapshot carries its position and wait estimate
+     */
+    public Status submit(String emergencyType, int heartRate) {
+        if (!running) {
+            throw new IllegalStateException("Triage queue is shut down");
+        }
+        long now = System.currentTimeMillis();
+        int severity = severityOf(heartRate, emergencyType);
+        Case c = new Case("EMRG_" + UUID.randomUUID().toString().substring(0, 8), sequence.incrementAndGet(),
+            severity, now, now - severity * SEVERITY_CREDIT_MILLIS);
+        cases.put(c.id, c);
+        queue.add(c);
+        queued.release();
+        return status(c.id);
+    }
+
+    /**
+     * Current state of a case, or null if unknown
+     */
+    public Status status(String caseId) {
+        Case c = cases.get(caseId);
+        if (c == null) return null;
+        int ahead = 0;
+        for (Case other : queue) {
+            if (other.priorityKey < c.priorityKey || (other.priorityKey == c.priorityKey && other.sequence < c.sequence)) {
+                ahead++;
+            }
+        }
+        synchronized (c) {
+            return c.doctor != null ? new Status(c, 0, 0) : new Status(c, ahead + 1, estimateWaitMillis(ahead));
+        }
+    }
+
+    /**
+     * Mark a consultation finished and return its doctor to the on-call pool
+     * @return false if the case is unknown, not yet assigned or already finished
+     */
+    public boolean complete(String caseId) {
+        Case c = cases.get(caseId);
+        if (c == null) return false;
+        SlotAvailability.Doctor doctor;
+        long serviceMillis;
+        synchronized (c) {
+            if (c.doctor == null || c.finishedAt != 0) return false;
+            c.finishedAt = System.currentTimeMillis();
+            if (c.timeout != null) c.timeout.cancel(false);
+            doctor = c.doctor;
+            serviceMillis = c.finishedAt - c.assignedAt;
+        }
+        meanServiceMillis += SERVICE_TIME_SMOOTHING * (serviceMillis - meanServiceMillis);
+        freeDoctors.add(doctor);
+        return true;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getMeanServiceMillis() {
+        return (long) meanServiceMillis;
+    }
+
+    public synchronized void shutdown() {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        timers.shutdownNow();
+    }
+
+    /**
+     * Time until a doctor is expected to be free for a case with {@code ahead} cases in front of it.
+     * Each of the c on-call doctors finishes a consultation every mean service time on average,
+     * so the k-th case past the free doctors waits about ceil(k / c) service times.
+     */
+    private long estimateWaitMillis(int ahead) {
+        int free = freeDoctors.size() + (waitingDoctor != null ? 1 : 0);
+        int beyondFree = ahead + 1 - free;
+        if (beyondFree <= 0) return 0;
+        long rounds = (beyondFree + onCallCount - 1) / onCallCount;
+        return (long) (rounds * meanServiceMillis);
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                SlotAvailability.Doctor doctor = freeDoctors.take();
+                waitingDoctor = doctor;
+                Case c;
+                try {
+                    queued.acquire();
+                    c = queue.peek();
+                    // Assigned before it leaves the queue, so status() always finds it queued or assigned
+                    synchronized (c) {
+                        c.doctor = doctor;
+                        c.assignedAt = System.currentTimeMillis();
+                        c.timeout = timers.schedule(() -> expire(c.id), maxConsultMillis, TimeUnit.MILLISECONDS);
+                    }
+                } catch (InterruptedException e) {
+                    freeDoctors.add(doctor);
+                    throw e;
+                } finally {
+                    waitingDoctor = null;
+                }
+                queue.remove(c);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void expire(String caseId) {
+        if (complete(caseId)) {
+            System.out.println("Emergency consultation " + caseId + " not completed in time; doctor returned to on-call pool");
+        }
+    }
+
+    private void pruneFinished() {
+        long cutoff = System.currentTimeMillis() - FINISHED_RETENTION_MILLIS;
+        cases.values().removeIf(c -> c.finishedAt != 0 && c.finishedAt < cutoff);
+    }
+
+    private static class Case {
+        final String id;
+        final long sequence;
+        final int severity;
+        final long enqueuedAt;
+        final long priorityKey;
+        SlotAvailability.Doctor doctor;
+        long assignedAt;
+        volatile long finishedAt;
+        ScheduledFuture<?> timeout;
+
+        Case(String id, long sequence, int severity, long enqueuedAt, long priorityKey) {
+            this.id = id;
+            this.sequence = sequence;
+            this.severity = severity;
+            this.enqueuedAt = enqueuedAt;
+            this.priorityKey = priorityKey;
+        }
+    }
+
+    /**
+     * Point-in-time view of a case
+     */
+    public static class Status {
+        public final String caseId;
+        public final int severity;
+        public final String state;
+        public final int position;
+        public final long waitedMillis;
+        public final long estimatedWaitMillis;
+        public final String doctorId;
+        public final String doctorName;
+        public final List<String> instructions = new ArrayList<>();
+
+        Status(Case c, int position, long estimatedWaitMillis) {
+            this.caseId = c.id;
+            this.severity = c.severity;
+            this.state = c.finishedAt != 0 ? "completed" : c.doctor != null ? "assigned" : "queued";
+            this.position = position;
+            this.waitedMillis = (c.doctor != null ? c.assignedAt : System.currentTimeMillis()) - c.enqueuedAt;
+            this.estimatedWaitMillis = estimatedWaitMillis;
+            this.doctorId = c.doctor == null ? null : c.doctor.id;
+            this.doctorName = c.doctor == null ? null : c.doctor.name;
+            if (c.severity >= SEVERITY_HIGH) {
+                instructions.add("If you feel chest pain, fainting or shortness of breath, call emergency services now.");
+            }
+            instructions.add("Stay seated and keep your monitoring device connected.");
+            instructions.add("Keep your phone nearby; the doctor will call you.");
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.heartsafe.desktop;
+
+import com.heartsafe.shared.json.JsonCodec;
+import com.heartsafe.shared.stats.BpmHistogram;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Long-term heart rate distribution for one patient
+ * Keeps BPM histograms of all, resting and active readings, persisted per patient and merged
+ * across sessions (or from other nodes), so p5/p50/p95 can be shown without keeping samples.
+ * Without an activity signal from the device, a reading counts as active when it is at least
+ * ACTIVE_MARGIN_BPM above the patient's resting baseline (the 25th percentile of all readings).
+ */
+public class HeartRateProfile {
+    private static final int ACTIVE_MARGIN_BPM = 20;
+    private static final int MIN_BASELINE_READINGS = 30;
+    private static final int DEFAULT_BASELINE_BPM = 70;
+
+    private final String patientId;
+    private final BpmHistogram all = new BpmHistogram();
+    private final BpmHistogram resting = new BpmHistogram();
+    private final BpmHistogram active = new BpmHistogram();
+
+    public HeartRateProfile(String patientId) {
+        this.patientId = patientId;
+    }
+
+    public String getPatientId() {
+        return patientId;
+    }
+
+    /**
+     * Add a reading, classifying it as resting or active against the current baseline
+     */
+    public void add(int bpm) {
+        int baseline = all.getCount() >= MIN_BASELINE_READINGS ? all.percentile(25) : DEFAULT_BASELINE_BPM;
+        add(bpm, bpm >= baseline + ACTIVE_MARGIN_BPM);
+    }
+
+    /**
+     * Add a reading whose activity state is known
+     */
+    public synchronized void add(int bpm, boolean isActive) {
+        all.add(bpm);
+        (isActive ? active : resting).add(bpm);
+    }
+
+    public synchronized void merge(HeartRateProfile other) {
+        all.merge(other.all);
+        resting.merge(other.resting);
+        active.merge(other.active);
+    }
+
+    public synchronized HeartRateProfile copy() {
+        HeartRateProfile copy = new HeartRateProfile(patientId);
+        copy.merge(this);
+        return copy;
+    }
+
+    public BpmHistogram getAll() {
+        return all;
+    }
+
+    public BpmHistogram getResting() {
+        return resting;
+    }
+
+    public BpmHistogram getActive() {
+        return active;
+    }
+
+    /**
+     * p5/p50/p95 of a histogram, e.g. "58/66/79 BPM", or "--" if empty
+     */
+    public static String percentiles(BpmHistogram histogram) {
+        if (histogram.getCount() == 0) return "--";
+        return histogram.percentile(5) + "/" + histogram.percentile(50) + "/" + histogram.percentile(95) + " BPM";
+    }
+
+    /**
+     * Profile stored for a patient, or an empty one if there is none yet
+     */
+    public static HeartRateProfile load(Path directory, String patientId) throws IOException {
+        Path file = fileFor(directory, patientId);
+        HeartRateProfile profile = new HeartRateProfile(patientId);
+        if (!Files.exists(file)) return profile;
+        Stored stored = JsonCodec.fromJson(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), Stored.class);
+        if (stored != null) {
+            profile.all.merge(BpmHistogram.fromSparse(stored.all));
+            profile.resting.merge(BpmHistogram.fromSparse(stored.resting));
+            profile.active.merge(BpmHistogram.fromSparse(stored.active));
+        }
+        return profile;
+    }
+
+    /**
+     * Write the profile, replacing the stored one atomically
+     */
+    public void save(Path directory) throws IOException {
+        Stored stored = new Stored();
+        synchronized (this) {
+            stored.patientId = patientId;
+            stored.all = all.toSparse();
+            stored.resting = resting.toSparse();
+            stored.active = active.toSparse();
+        }
+        Files.createDirectories(directory);
+        Path file = fileFor(directory, patientId);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, JsonCodec.toJson(stored).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path fileFor(Path directory, String patientId) {
+        return directory.resolve(patientId.replaceAll("[^A-Za-z0-9._-]", "_") + ".json");
+    }
+
+    /**
+     * On-disk form: sparse BPM to count maps
+     */
+    private static class Stored {
+        String patientId;
+        Map<Integer, Long> all;
+        Map<Integer, Long> resting;
+        Map<Integer, Long> active;
+    }
+}
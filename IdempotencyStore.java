@@ -0,0 +1,235 @@
+package com.heartsafe.backend;
+
+import com.heartsafe.backend.db.MySql;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Idempotency-Key bookkeeping for POST endpoints
+ * Recent keys live in a bounded, TTL-evicted concurrent map; durable ones are also kept in
+ * the idempotency_keys table (written in the same transaction as the effect) so a retry
+ * after a restart still replays the original response instead of repeating the request.
+ * A duplicate arriving while the first request is still running waits for its result, for a
+ * while; after that it gets a 409 with code "request_in_progress", which clients retry later.
+ */
+public class IdempotencyStore {
+    // Shorter than client socket timeouts (10 s on the desktop), so the duplicate gets an answer
+    private static final long IN_FLIGHT_WAIT_SECONDS = 5;
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public IdempotencyStore(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Fingerprint of a request body; a key reused with a different body is rejected
+     */
+    public static String fingerprint(String body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Claim a key for this request. Returns null if the caller should process the request
+     * (and then call {@link #complete} or {@link #abandon}); otherwise the response to send.
+     * @param durable whether to look the key up in the database on a memory miss
+     */
+    public Response begin(String key, String fingerprint, boolean durable) throws SQLException {
+        long now = System.currentTimeMillis();
+        while (true) {
+            Entry fresh = new Entry(fingerprint, now);
+            Entry existing = entries.putIfAbsent(key, fresh);
+            if (existing == null) {
+                evictIfFull(now);
+                Response stored;
+                try {
+                    stored = durable ? load(key) : null;
+                } catch (SQLException e) {
+                    abandon(key);
+                    throw e;
+                }
+                if (stored == null) {
+                    return null;
+                }
+                if (!fingerprint.equals(stored.fingerprint)) {
+                    abandon(key);
+                    return Response.mismatch();
+                }
+                complete(key, stored);
+                return stored;
+            }
+            if (now - existing.createdAt > ttlMillis) {
+                entries.remove(key, existing);
+                continue;
+            }
+            if (!fingerprint.equals(existing.fingerprint)) {
+                return Response.mismatch();
+            }
+            try {
+                Response response = existing.result.get(IN_FLIGHT_WAIT_SECONDS, TimeUnit.SECONDS);
+                if (response != null) return response;
+                // The original attempt failed without a result; let this one try again
+                entries.remove(key, existing);
+            } catch (TimeoutException e) {
+                return new Response(409, "{\"error\":\"request with this Idempotency-Key is still in progress\","
+                    + "\"code\":\"request_in_progress\"}", fingerprint);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for in-flight request", e);
+            } catch (ExecutionException e) {
+                entries.remove(key, existing);
+            }
+        }
+    }
+
+    /**
+     * Record the final response for a claimed key so duplicates replay it
+     */
+    public void complete(String key, Response response) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.result.complete(response);
+        }
+    }
+
+    /**
+     * Release a claimed key after a failure that should not be replayed (e.g. a 5xx)
+     */
+    public void abandon(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            entry.result.complete(null);
+        }
+    }
+
+    /**
+     * Persist a key and its response on the caller's connection, inside the caller's transaction
+     */
+    public static void persist(Connection conn, String key, Response response) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO idempotency_keys(idem_key, fingerprint, status, response) VALUES(?,?,?,?)")) {
+            ps.setString(1, key);
+            ps.setString(2, response.fingerprint);
+            ps.setInt(3, response.status);
+            ps.setString(4, response.body);
+            ps.executeUpdate();
+        }
+    }
+
+    public static void createTable(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS idempotency_keys ("
+                    + "idem_key VARCHAR(255) PRIMARY KEY, "
+                    + "fingerprint CHAR(64) NOT NULL, "
+                    + "status INT NOT NULL, "
+                    + "response TEXT, "
+                    + "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, "
+                    + "INDEX idx_idempotency_created (created_at)) ENGINE=InnoDB");
+        }
+    }
+
+    /**
+     * Drop expired keys from memory and the database
+     */
+    public void purgeExpired() {
+        long cutoff = System.currentTimeMillis() - ttlMillis;
+        entries.values().removeIf(e -> e.createdAt < cutoff && e.result.isDone());
+        try (Connection conn = MySql.get();
+             PreparedStatement ps = conn.prepareStatement("DELETE FROM idempotency_keys WHERE created_at < ?")) {
+            ps.setTimestamp(1, new Timestamp(cutoff));
+            int removed = ps.executeUpdate();
+            if (removed > 0) {
+                System.out.println("Purged " + removed + " expired idempotency keys");
+            }
+        } catch (Exception e) {
+            System.out.println("Idempotency key purge failed: " + e.getMessage());
+        }
+    }
+
+    private Response load(String key) throws SQLException {
+        try (Connection conn = MySql.get();
+             PreparedStatement ps = conn.prepareStatement(
+                 "SELECT fingerprint, status, response FROM idempotency_keys WHERE idem_key = ? AND created_at >= ?")) {
+            ps.setString(1, key);
+            ps.setTimestamp(2, new Timestamp(System.currentTimeMillis() - ttlMillis));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? new Response(rs.getInt(2), rs.getString(3), rs.getString(1)) : null;
+            }
+        } catch (SQLException e) {
+            // The table does not exist until the first durable request
+            if (e.getErrorCode() == 1146) return null;
+            throw e;
+        }
+    }
+
+    /**
+     * Keep the map bounded: drop expired entries, then the oldest completed ones
+     */
+    private void evictIfFull(long now) {
+        if (entries.size() <= maxEntries) return;
+        entries.values().removeIf(e -> now - e.createdAt > ttlMillis && e.result.isDone());
+        int excess = entries.size() - maxEntries * 9 / 10;
+        if (excess <= 0) return;
+        entries.entrySet().stream()
+            .filter(e -> e.getValue().result.isDone())
+            .sorted((a, b) -> Long.compare(a.getValue().createdAt, b.getValue().createdAt))
+            .limit(excess)
+            .forEach(e -> entries.remove(e.getKey(), e.getValue()));
+    }
+
+    private static class Entry {
+        final String fingerprint;
+        final long createdAt;
+        final CompletableFuture<Response> result = new CompletableFuture<>();
+
+        Entry(String fingerprint, long createdAt) {
+            this.fingerprint = fingerprint;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * Status and body to replay for a key
+     */
+    public static class Response {
+        public final int status;
+        public final String body;
+        final String fingerprint;
+
+        public Response(int status, String body, String fingerprint) {
+            this.status = status;
+            this.body = body;
+            this.fingerprint = fingerprint;
+        }
+
+        static Response mismatch() {
+            return new Response(422, "{\"error\":\"Idempotency-Key was already used with a different request\"}", null);
+        }
+    }
+}
@@ -1,20 +1,28 @@
 package com.heartsafe.desktop;
 
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
-import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import com.heartsafe.shared.report.ReportTemplate;
 
-import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -28,6 +36,38 @@ public class IncidentReportService {
     private static final DateTimeFormatter FILENAME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
     private static final DateTimeFormatter DISPLAY_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     
+    // Heart rate chart layout (PDF points)
+    private static final float CHART_HEIGHT = 260;
+    private static final float CHART_AXIS_WIDTH = 20;
+    private static final int CHART_MIN_BPM = 40;
+    private static final int CHART_MAX_BPM = 160;
+    
+    private static final ReportTemplate TEMPLATE = ReportTemplate.shared();
+    private static final int ID_BYTES = 16;
+    private static final String DETAILS_TITLE = "INCIDENT DETAILS";
+    private static final String ANALYSIS_TITLE = "HEART RATE ANALYSIS";
+    private static final String RESPONSE_TITLE = "EMERGENCY RESPONSE";
+    private static final String RECOMMENDATIONS_TITLE = "RECOMMENDATIONS & FOLLOW-UP";
+    private static final String[] PAGE_TITLES = {
+        DETAILS_TITLE, ANALYSIS_TITLE, RESPONSE_TITLE, RECOMMENDATIONS_TITLE
+    };
+    
+    // Archive policy: loose PDFs older than ARCHIVE_AFTER_DAYS move into compressed segments,
+    // and whole segments are dropped past RETENTION_DAYS or MAX_ARCHIVE_MB
+    private static final String ARCHIVE_DIRECTORY = "archive";
+    private static final long ARCHIVE_AFTER_DAYS = Long.getLong("heartsafe.reports.archiveAfterDays", 30);
+    private static final long RETENTION_DAYS = Long.getLong("heartsafe.reports.retentionDays", 3650);
+    private static final long MAX_ARCHIVE_MB = Long.getLong("heartsafe.reports.maxArchiveMb", 1024);
+    private static final long SEGMENT_BYTES = 16L * 1024 * 1024;
+    
+    private final CompletableFuture<ReportCatalog> catalog;
+    private final CompletableFuture<ReportArchive> archive;
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "report-archive-maintenance");
+        t.setDaemon(true);
+        return t;
+    });
+    
     public IncidentReportService() {
         // Create reports directory if it doesn't exist
         File reportsDir = new File(REPORTS_DIRECTORY);
@@ -35,6 +75,20 @@ public class IncidentReportService {
             reportsDir.mkdirs();
             LOGGER.info("Created reports directory: " + REPORTS_DIRECTORY);
         }
+        
+        // Load the report index off the calling thread; it reconciles with the directory once
+        catalog = CompletableFuture.supplyAsync(() -> new ReportCatalog(reportsDir.toPath(), FILENAME_FORMATTER).start());
+        archive = CompletableFuture.supplyAsync(() -> {
+            try {
+                return new ReportArchive(reportsDir.toPath().resolve(ARCHIVE_DIRECTORY), SEGMENT_BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        maintenance.scheduleWithFixedDelay(this::archiveOldReports, 1, 6 * 60, TimeUnit.MINUTES);
+        
+        // Pre-render page furniture in the background so the first report starts warm
+        CompletableFuture.runAsync(() -> TEMPLATE.warmUp(PAGE_TITLES));
     }
     
     /**
@@ -43,24 +97,37 @@ public class IncidentReportService {
     public CompletableFuture<IncidentReport> generateIncidentReport(IncidentData incidentData) {
         return CompletableFuture.supplyAsync(() -> {
             try {
-                String filename = "HeartSafe_Incident_" + incidentData.getTimestamp().format(FILENAME_FORMATTER) + ".pdf";
-                String filepath = REPORTS_DIRECTORY + File.separator + filename;
-                
+                long startNanos = System.nanoTime();
                 PDDocument document = new PDDocument();
+                ReportTemplate.Session session = TEMPLATE.open(document);
                 
                 // Add pages to the document
-                addCoverPage(document, incidentData);
-                addIncidentDetailsPage(document, incidentData);
-                addHeartRateAnalysisPage(document, incidentData);
-                addEmergencyResponsePage(document, incidentData);
-                addRecommendationsPage(document, incidentData);
+                addCoverPage(session, incidentData);
+                addIncidentDetailsPage(session, incidentData);
+                addHeartRateAnalysisPage(session, incidentData);
+                addEmergencyResponsePage(session, incidentData);
+                addRecommendationsPage(session, incidentData);
                 
-                // Save document
-                document.save(filepath);
+                // Save document under a content-addressed name so reports within the same second never collide
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                setPlaceholderId(document);
+                document.save(buffer);
                 document.close();
+                byte[] content = fillInContentId(buffer.toByteArray());
+                String contentHash = ReportArchive.hash(content);
+                
+                String filename = "HeartSafe_Incident_" + incidentData.getTimestamp().format(FILENAME_FORMATTER)
+                    + "_" + contentHash.substring(0, 12) + ".pdf";
+                String filepath = REPORTS_DIRECTORY + File.separator + filename;
+                Path target = Paths.get(filepath);
+                if (!Files.exists(target)) {
+                    Files.write(target, content);
+                }
                 
+                catalog.join().record(filename, filepath, contentHash, incidentData);
                 IncidentReport report = new IncidentReport(filename, filepath, incidentData);
-                LOGGER.info("Incident report generated successfully: " + filepath);
+                LOGGER.info(String.format("Incident report generated successfully: %s (%.1f ms)",
+                    filepath, (System.nanoTime() - startNanos) / 1_000_000.0));
                 
                 return report;
                 
@@ -74,43 +141,23 @@ public class IncidentReportService {
     /**
      * Add cover page to the report
      */
-    private void addCoverPage(PDDocument document, IncidentData incidentData) throws IOException {
-        PDPage page = new PDPage(PDRectangle.A4);
-        document.addPage(page);
+    private void addCoverPage(ReportTemplate.Session session, IncidentData incidentData) throws IOException {
+        PDPageContentStream contentStream = session.beginCoverPage();
         
-        PDPageContentStream contentStream = new PDPageContentStream(document, page);
-        
-        float margin = 50;
-        float yStart = page.getMediaBox().getHeight() - margin;
-        float yPosition = yStart;
-        
-        // Title
-        contentStream.beginText();
-        contentStream.setFont(PDType1Font.HELVETICA_BOLD, 24);
-        contentStream.newLineAtOffset(margin, yPosition);
-        contentStream.showText("HEARTSAFE INCIDENT REPORT");
-        contentStream.endText();
-        yPosition -= 60;
-        
-        // Red line under title
-        contentStream.setStrokingColor(Color.RED);
-        contentStream.setLineWidth(2);
-        contentStream.moveTo(margin, yPosition);
-        contentStream.lineTo(page.getMediaBox().getWidth() - margin, yPosition);
-        contentStream.stroke();
-        yPosition -= 40;
+        float margin = ReportTemplate.MARGIN;
+        float yPosition = TEMPLATE.contentTop() - 60;
         
         // Emergency icon (simulated with text)
         contentStream.beginText();
         contentStream.setFont(PDType1Font.HELVETICA, 48);
-        contentStream.setNonStrokingColor(Color.RED);
+        contentStream.setNonStrokingColor(1f, 0f, 0f);
         contentStream.newLineAtOffset(margin + 200, yPosition);
         contentStream.showText("🚨");
         contentStream.endText();
         yPosition -= 80;
         
         // Basic incident information
-        contentStream.setNonStrokingColor(Color.BLACK);
+        contentStream.setNonStrokingColor(0f, 0f, 0f);
         addTextLine(contentStream, "EMERGENCY INCIDENT DETAILS", margin, yPosition, PDType1Font.HELVETICA_BOLD, 16);
         yPosition -= 30;
         
@@ -131,34 +178,22 @@ public class IncidentReportService {
             yPosition -= 20;
         }
         
-        // Report generation info
+        // Report generation info; the generation time is kept in the catalog, not the PDF, so the
+        // same incident always renders to the same bytes and archives once
         yPosition -= 40;
-        addTextLine(contentStream, "Report Generated: " + LocalDateTime.now().format(DISPLAY_FORMATTER), margin, yPosition, PDType1Font.HELVETICA_OBLIQUE, 10);
-        yPosition -= 15;
         addTextLine(contentStream, "Generated by: HeartSafe Monitoring System v1.0", margin, yPosition, PDType1Font.HELVETICA_OBLIQUE, 10);
         
-        // Footer
-        addTextLine(contentStream, "This report contains confidential medical information", margin, 50, PDType1Font.HELVETICA_OBLIQUE, 9);
-        
         contentStream.close();
     }
     
     /**
      * Add incident details page
      */
-    private void addIncidentDetailsPage(PDDocument document, IncidentData incidentData) throws IOException {
-        PDPage page = new PDPage(PDRectangle.A4);
-        document.addPage(page);
-        
-        PDPageContentStream contentStream = new PDPageContentStream(document, page);
+    private void addIncidentDetailsPage(ReportTemplate.Session session, IncidentData incidentData) throws IOException {
+        PDPageContentStream contentStream = session.beginPage(DETAILS_TITLE);
         
-        float margin = 50;
-        float yStart = page.getMediaBox().getHeight() - margin;
-        float yPosition = yStart;
-        
-        // Page title
-        addTextLine(contentStream, "INCIDENT DETAILS", margin, yPosition, PDType1Font.HELVETICA_BOLD, 18);
-        yPosition -= 40;
+        float margin = ReportTemplate.MARGIN;
+        float yPosition = TEMPLATE.contentTop();
         
         // Timeline section
         addTextLine(contentStream, "INCIDENT TIMELINE", margin, yPosition, PDType1Font.HELVETICA_BOLD, 14);
@@ -217,84 +252,74 @@ public class IncidentReportService {
     /**
      * Add heart rate analysis page with chart
      */
-    private void addHeartRateAnalysisPage(PDDocument document, IncidentData incidentData) throws IOException {
-        PDPage page = new PDPage(PDRectangle.A4);
-        document.addPage(page);
+    private void addHeartRateAnalysisPage(ReportTemplate.Session session, IncidentData incidentData) throws IOException {
+        PDPageContentStream contentStream = session.beginPage(ANALYSIS_TITLE);
         
-        PDPageContentStream contentStream = new PDPageContentStream(document, page);
+        float margin = ReportTemplate.MARGIN;
+        float yPosition = TEMPLATE.contentTop();
         
-        float margin = 50;
-        float yStart = page.getMediaBox().getHeight() - margin;
-        float yPosition = yStart;
-        
-        // Page title
-        addTextLine(contentStream, "HEART RATE ANALYSIS", margin, yPosition, PDType1Font.HELVETICA_BOLD, 18);
-        yPosition -= 40;
-        
-        // Statistics
-        if (incidentData.getHeartRateHistory() != null && !incidentData.getHeartRateHistory().isEmpty()) {
-            List<Integer> hrData = incidentData.getHeartRateHistory();
-            int minHR = Collections.min(hrData);
-            int maxHR = Collections.max(hrData);
-            double avgHR = hrData.stream().mapToInt(Integer::intValue).average().orElse(0.0);
-            
+        // Statistics, accumulated while monitoring
+        SessionStats.Snapshot stats = incidentData.getSessionStats();
+        if (stats != null && stats.getCount() > 0) {
             addTextLine(contentStream, "STATISTICAL SUMMARY", margin, yPosition, PDType1Font.HELVETICA_BOLD, 14);
             yPosition -= 25;
             
-            addTextLine(contentStream, "Minimum Heart Rate: " + minHR + " BPM", margin + 20, yPosition, PDType1Font.HELVETICA, 11);
+            addTextLine(contentStream, "Minimum Heart Rate: " + stats.getMin() + " BPM", margin + 20, yPosition, PDType1Font.HELVETICA, 11);
+            yPosition -= 18;
+            addTextLine(contentStream, "Maximum Heart Rate: " + stats.getMax() + " BPM", margin + 20, yPosition, PDType1Font.HELVETICA, 11);
             yPosition -= 18;
-            addTextLine(contentStream, "Maximum Heart Rate: " + maxHR + " BPM", margin + 20, yPosition, PDType1Font.HELVETICA, 11);
+            addTextLine(contentStream, "Average Heart Rate: " + String.format("%.1f", stats.getMean())
+                + " BPM (SD " + String.format("%.1f", stats.getStdDev()) + ")", margin + 20, yPosition, PDType1Font.HELVETICA, 11);
             yPosition -= 18;
-            addTextLine(contentStream, "Average Heart Rate: " + String.format("%.1f", avgHR) + " BPM", margin + 20, yPosition, PDType1Font.HELVETICA, 11);
+            addTextLine(contentStream, "Variability (RMSSD proxy): " + String.format("%.0f", stats.getRmssdMillis()) + " ms",
+                margin + 20, yPosition, PDType1Font.HELVETICA, 11);
             yPosition -= 18;
             
-            // Count anomalies
-            long highCount = hrData.stream().filter(hr -> hr > 120).count();
-            long lowCount = hrData.stream().filter(hr -> hr < 50).count();
+            addTextLine(contentStream, "High HR readings (>120 BPM): " + stats.getHighCount(), margin + 20, yPosition, PDType1Font.HELVETICA, 11);
+            yPosition -= 18;
+            addTextLine(contentStream, "Low HR readings (<50 BPM): " + stats.getLowCount(), margin + 20, yPosition, PDType1Font.HELVETICA, 11);
+            yPosition -= 18;
             
-            addTextLine(contentStream, "High HR readings (>120 BPM): " + highCount, margin + 20, yPosition, PDType1Font.HELVETICA, 11);
+            StringBuilder zones = new StringBuilder("Time in zone:");
+            for (int zone = SessionStats.ZONE_NORMAL; zone <= SessionStats.ZONE_CRITICAL; zone++) {
+                zones.append("  ").append(SessionStats.zoneName(zone)).append(' ')
+                    .append(String.format("%.0f%%", 100 * stats.getZoneFraction(zone)));
+            }
+            addTextLine(contentStream, zones.toString(), margin + 20, yPosition, PDType1Font.HELVETICA, 11);
             yPosition -= 18;
-            addTextLine(contentStream, "Low HR readings (<50 BPM): " + lowCount, margin + 20, yPosition, PDType1Font.HELVETICA, 11);
-            yPosition -= 40;
-        }
-        
-        // Add simple text-based chart representation
-        addTextLine(contentStream, "HEART RATE TREND (Last 20 readings)", margin, yPosition, PDType1Font.HELVETICA_BOLD, 14);
-        yPosition -= 25;
-        
-        if (incidentData.getHeartRateHistory() != null && !incidentData.getHeartRateHistory().isEmpty()) {
-            List<Integer> recent = incidentData.getHeartRateHistory();
-            int startIdx = Math.max(0, recent.size() - 20);
             
-            for (int i = startIdx; i < recent.size() && yPosition > 100; i++) {
-                int hr = recent.get(i);
-                String bar = createTextBar(hr);
-                String status = getHeartRateStatus(hr);
-                addTextLine(contentStream, String.format("%3d BPM %s [%s]", hr, bar, status), 
-                    margin + 20, yPosition, PDType1Font.COURIER, 9);
-                yPosition -= 12;
+            HeartRateProfile profile = incidentData.getHeartRateProfile();
+            if (profile != null && profile.getAll().getCount() > 0) {
+                addTextLine(contentStream, "Long-term p5/p50/p95 (" + profile.getAll().getCount() + " readings): resting "
+                    + HeartRateProfile.percentiles(profile.getResting()) + ", active " + HeartRateProfile.percentiles(profile.getActive()),
+                    margin + 20, yPosition, PDType1Font.HELVETICA, 11);
+                yPosition -= 18;
             }
+            yPosition -= 22;
         }
         
+        // Vector chart of the full session
+        addTextLine(contentStream, "HEART RATE TREND (Full session)", margin, yPosition, PDType1Font.HELVETICA_BOLD, 14);
+        yPosition -= 25;
+
+        if (stats != null && stats.getCount() > 0) {
+            float chartHeight = Math.min(CHART_HEIGHT, yPosition - 100);
+            float chartWidth = TEMPLATE.getPageWidth() - 2 * margin - CHART_AXIS_WIDTH;
+            drawHeartRateChart(contentStream, stats.getTrend(), stats.getCount(),
+                margin + CHART_AXIS_WIDTH, yPosition - chartHeight, chartWidth, chartHeight);
+        }
+
         contentStream.close();
     }
     
     /**
      * Add emergency response page
      */
-    private void addEmergencyResponsePage(PDDocument document, IncidentData incidentData) throws IOException {
-        PDPage page = new PDPage(PDRectangle.A4);
-        document.addPage(page);
-        
-        PDPageContentStream contentStream = new PDPageContentStream(document, page);
-        
-        float margin = 50;
-        float yStart = page.getMediaBox().getHeight() - margin;
-        float yPosition = yStart;
+    private void addEmergencyResponsePage(ReportTemplate.Session session, IncidentData incidentData) throws IOException {
+        PDPageContentStream contentStream = session.beginPage(RESPONSE_TITLE);
         
-        // Page title
-        addTextLine(contentStream, "EMERGENCY RESPONSE", margin, yPosition, PDType1Font.HELVETICA_BOLD, 18);
-        yPosition -= 40;
+        float margin = ReportTemplate.MARGIN;
+        float yPosition = TEMPLATE.contentTop();
         
         // Response actions taken
         addTextLine(contentStream, "ACTIONS TAKEN", margin, yPosition, PDType1Font.HELVETICA_BOLD, 14);
@@ -345,19 +370,11 @@ public class IncidentReportService {
     /**
      * Add recommendations page
      */
-    private void addRecommendationsPage(PDDocument document, IncidentData incidentData) throws IOException {
-        PDPage page = new PDPage(PDRectangle.A4);
-        document.addPage(page);
-        
-        PDPageContentStream contentStream = new PDPageContentStream(document, page);
+    private void addRecommendationsPage(ReportTemplate.Session session, IncidentData incidentData) throws IOException {
+        PDPageContentStream contentStream = session.beginPage(RECOMMENDATIONS_TITLE);
         
-        float margin = 50;
-        float yStart = page.getMediaBox().getHeight() - margin;
-        float yPosition = yStart;
-        
-        // Page title
-        addTextLine(contentStream, "RECOMMENDATIONS & FOLLOW-UP", margin, yPosition, PDType1Font.HELVETICA_BOLD, 18);
-        yPosition -= 40;
+        float margin = ReportTemplate.MARGIN;
+        float yPosition = TEMPLATE.contentTop();
         
         // Medical recommendations
         addTextLine(contentStream, "MEDICAL RECOMMENDATIONS", margin, yPosition, PDType1Font.HELVETICA_BOLD, 14);
@@ -396,16 +413,57 @@ public class IncidentReportService {
         contentStream.close();
     }
     
+    /**
+     * PDFBox stamps a time-based /ID on save unless the trailer has one; give it a fixed placeholder
+     * so that identical reports produce identical bytes
+     */
+    private static void setPlaceholderId(PDDocument document) {
+        COSString placeholder = new COSString(new byte[ID_BYTES]);
+        placeholder.setForceHexForm(true);
+        COSArray id = new COSArray();
+        id.add(placeholder);
+        id.add(placeholder);
+        document.getDocument().getTrailer().setItem(COSName.ID, id);
+    }
+    
+    /**
+     * Replace the placeholder /ID in the trailer with an MD5 digest of the document, same length,
+     * so the ID still identifies the content and no offsets move
+     */
+    private static byte[] fillInContentId(byte[] content) {
+        byte[] placeholder = ("<" + "00".repeat(ID_BYTES) + ">").getBytes(StandardCharsets.US_ASCII);
+        // The trailer is written last, so its two ID strings are the last two occurrences
+        int second = lastIndexOf(content, placeholder, content.length - placeholder.length);
+        int first = second < 0 ? -1 : lastIndexOf(content, placeholder, second - 1);
+        if (first < 0) {
+            return content;
+        }
+        byte[] hex;
+        try {
+            hex = new COSString(MessageDigest.getInstance("MD5").digest(content)).toHexString().getBytes(StandardCharsets.US_ASCII);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+        System.arraycopy(hex, 0, content, first + 1, hex.length);
+        System.arraycopy(hex, 0, content, second + 1, hex.length);
+        return content;
+    }
+    
+    private static int lastIndexOf(byte[] content, byte[] pattern, int from) {
+        for (int i = from; i >= 0; i--) {
+            if (Arrays.equals(content, i, i + pattern.length, pattern, 0, pattern.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
     /**
      * Helper method to add text line
      */
     private void addTextLine(PDPageContentStream contentStream, String text, float x, float y, 
                            PDType1Font font, int fontSize) throws IOException {
-        contentStream.beginText();
-        contentStream.setFont(font, fontSize);
-        contentStream.newLineAtOffset(x, y);
-        contentStream.showText(text);
-        contentStream.endText();
+        ReportTemplate.addTextLine(contentStream, text, x, y, font, fontSize);
     }
     
     /**
@@ -419,15 +477,107 @@ public class IncidentReportService {
     }
     
     /**
-     * Create text-based bar for heart rate visualization
+     * Draw the session trend as a vector line chart.
+     * When the trend has more points than the chart is wide, or its buckets already
+     * summarise several readings, they are rolled up per column into a min/max band with an average line.
      */
-    private String createTextBar(int heartRate) {
-        int barLength = Math.max(1, Math.min(20, heartRate / 5));
-        StringBuilder bar = new StringBuilder();
-        for (int i = 0; i < barLength; i++) {
-            bar.append("█");
+    private void drawHeartRateChart(PDPageContentStream contentStream, SessionStats.Trend trend, long readings,
+                                    float x, float y, float width, float height) throws IOException {
+        int dataMin = Integer.MAX_VALUE;
+        int dataMax = Integer.MIN_VALUE;
+        for (int b = 0; b < trend.size(); b++) {
+            dataMin = Math.min(dataMin, trend.getMin(b));
+            dataMax = Math.max(dataMax, trend.getMax(b));
+        }
+        int low = Math.min(CHART_MIN_BPM, dataMin - 5);
+        int high = Math.max(CHART_MAX_BPM, dataMax + 5);
+        float scale = height / (high - low);
+        
+        // Frame and zone threshold lines
+        contentStream.setStrokingColor(0.75f, 0.75f, 0.75f);
+        contentStream.setLineWidth(0.5f);
+        contentStream.addRect(x, y, width, height);
+        contentStream.stroke();
+        for (int threshold : new int[] {50, 100, 120}) {
+            float ty = y + (threshold - low) * scale;
+            contentStream.moveTo(x, ty);
+            contentStream.lineTo(x + width, ty);
+            contentStream.stroke();
+            contentStream.setNonStrokingColor(0.5f, 0.5f, 0.5f);
+            addTextLine(contentStream, String.valueOf(threshold), x - CHART_AXIS_WIDTH, ty - 3, PDType1Font.HELVETICA, 8);
+        }
+        
+        int n = trend.size();
+        int columns = Math.min(n, Math.max(1, (int) width));
+        float step = width / Math.max(1, columns - 1);
+        boolean singleReadings = trend.getReadingsPerBucket() == 1 && n == columns;
+        
+        if (singleReadings) {
+            contentStream.setStrokingColor(1f, 0f, 0f);
+            contentStream.setLineWidth(1.2f);
+            for (int i = 0; i < n; i++) {
+                float px = x + i * step;
+                float py = y + (trend.getMin(i) - low) * scale;
+                if (i == 0) {
+                    contentStream.moveTo(px, py);
+                } else {
+                    contentStream.lineTo(px, py);
+                }
+            }
+            if (n == 1) {
+                contentStream.lineTo(x + width, y + (trend.getMin(0) - low) * scale);
+            }
+            contentStream.stroke();
+        } else {
+            int[] colMin = new int[columns];
+            int[] colMax = new int[columns];
+            float[] colAvg = new float[columns];
+            // Each column merges the trend buckets that fall into it
+            for (int c = 0; c < columns; c++) {
+                int from = (int) ((long) c * n / columns);
+                int to = (int) ((long) (c + 1) * n / columns);
+                int min = Integer.MAX_VALUE;
+                int max = Integer.MIN_VALUE;
+                long sum = 0;
+                long count = 0;
+                for (int b = from; b < to; b++) {
+                    min = Math.min(min, trend.getMin(b));
+                    max = Math.max(max, trend.getMax(b));
+                    sum += trend.getSum(b);
+                    count += trend.getCount(b);
+                }
+                colMin[c] = min;
+                colMax[c] = max;
+                colAvg[c] = (float) sum / count;
+            }
+            
+            // Min/max band: trace the maxima left to right, then the minima back
+            contentStream.setNonStrokingColor(1f, 0.804f, 0.824f);
+            contentStream.moveTo(x, y + (colMax[0] - low) * scale);
+            for (int c = 1; c < columns; c++) {
+                contentStream.lineTo(x + c * step, y + (colMax[c] - low) * scale);
+            }
+            for (int c = columns - 1; c >= 0; c--) {
+                contentStream.lineTo(x + c * step, y + (colMin[c] - low) * scale);
+            }
+            contentStream.closePath();
+            contentStream.fill();
+            
+            // Average line
+            contentStream.setStrokingColor(1f, 0f, 0f);
+            contentStream.setLineWidth(1f);
+            contentStream.moveTo(x, y + (colAvg[0] - low) * scale);
+            for (int c = 1; c < columns; c++) {
+                contentStream.lineTo(x + c * step, y + (colAvg[c] - low) * scale);
+            }
+            contentStream.stroke();
         }
-        return bar.toString();
+        
+        contentStream.setNonStrokingColor(0f, 0f, 0f);
+        String caption = singleReadings
+            ? readings + " readings"
+            : readings + " readings, ~" + Math.max(1, readings / columns) + " per column (band = min/max, line = average)";
+        addTextLine(contentStream, caption, x, y - 15, PDType1Font.HELVETICA_OBLIQUE, 9);
     }
     
     /**
@@ -455,6 +605,17 @@ public class IncidentReportService {
                 recommendations.add("General cardiac evaluation recommended");
         }
         
+        SessionStats.Snapshot stats = incidentData.getSessionStats();
+        if (stats != null && stats.getCount() > 0) {
+            double criticalShare = stats.getZoneFraction(SessionStats.ZONE_CRITICAL);
+            if (criticalShare >= 0.1) {
+                recommendations.add(String.format("Heart rate was in the critical range %.0f%% of the session - review with a cardiologist", 100 * criticalShare));
+            }
+            if (stats.getStdDev() >= 20) {
+                recommendations.add("Large heart rate swings during the session - check for arrhythmia");
+            }
+        }
+        
         recommendations.add("Maintain regular monitoring schedule");
         recommendations.add("Keep emergency contacts updated");
         
@@ -462,30 +623,119 @@ public class IncidentReportService {
     }
     
     /**
-     * Get all generated reports
+     * Get all generated reports, newest first
      */
     public List<IncidentReport> getAllReports() {
+        ReportCatalog reportCatalog = catalog.join();
         List<IncidentReport> reports = new ArrayList<>();
-        File reportsDir = new File(REPORTS_DIRECTORY);
-        
-        if (reportsDir.exists() && reportsDir.isDirectory()) {
-            File[] files = reportsDir.listFiles((dir, name) -> name.endsWith(".pdf"));
-            if (files != null) {
-                Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
-                
-                for (File file : files) {
-                    reports.add(new IncidentReport(file.getName(), file.getAbsolutePath(), null));
+        for (ReportCatalog.Entry entry : reportCatalog.query(null, 0, reportCatalog.size()).getEntries()) {
+            reports.add(toReport(entry));
+        }
+        return reports;
+    }
+    
+    /**
+     * Query one page of reports from the catalog without touching the reports directory
+     */
+    public CompletableFuture<ReportPage> queryReports(String filter, int offset, int limit) {
+        return catalog.thenApplyAsync(reportCatalog -> {
+            ReportCatalog.Page page = reportCatalog.query(filter, offset, limit);
+            List<IncidentReport> reports = new ArrayList<>();
+            for (ReportCatalog.Entry entry : page.getEntries()) {
+                reports.add(toReport(entry));
+            }
+            return new ReportPage(reports, page.getTotalMatches(), page.hasMore());
+        });
+    }
+    
+    private IncidentReport toReport(ReportCatalog.Entry entry) {
+        IncidentData data = null;
+        if (entry.patientName != null) {
+            data = new IncidentData(entry.patientName, entry.getIncidentTime(), entry.emergencyType, entry.triggerHeartRate);
+        }
+        return new IncidentReport(entry.filename, entry.filepath, data, entry.getGeneratedAt(), entry.sizeBytes);
+    }
+    
+    /**
+     * Get a readable file for a report, extracting it from the archive if it was compacted
+     */
+    public CompletableFuture<File> resolveReportFile(IncidentReport report) {
+        return CompletableFuture.supplyAsync(() -> {
+            File file = new File(report.getFilepath());
+            if (file.exists()) {
+                return file;
+            }
+            ReportCatalog.Entry entry = catalog.join().get(report.getFilename());
+            if (entry == null || !entry.archived) {
+                throw new UncheckedIOException(new FileNotFoundException("Report not found: " + report.getFilename()));
+            }
+            try {
+                Path extracted = Files.createTempDirectory("heartsafe-report").resolve(report.getFilename());
+                Files.write(extracted, archive.join().extract(entry.contentHash));
+                extracted.toFile().deleteOnExit();
+                extracted.getParent().toFile().deleteOnExit();
+                return extracted.toFile();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+    
+    /**
+     * Move old loose reports into the archive and apply retention limits
+     */
+    private void archiveOldReports() {
+        try {
+            ReportCatalog reportCatalog = catalog.join();
+            ReportArchive reportArchive = archive.join();
+            long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(ARCHIVE_AFTER_DAYS);
+            
+            List<Path> archivedFiles = new ArrayList<>();
+            for (ReportCatalog.Entry entry : reportCatalog.looseReportsBefore(cutoff)) {
+                Path file = Paths.get(entry.filepath);
+                if (!Files.exists(file)) continue;
+                String contentHash = reportArchive.store(Files.readAllBytes(file), entry.incidentTime);
+                reportCatalog.markArchived(entry.filename, contentHash);
+                archivedFiles.add(file);
+            }
+            // The index must record the reports as archived before their loose copies go, or a
+            // crash in between would make the startup reconcile drop their entries
+            if (!archivedFiles.isEmpty()) {
+                reportCatalog.flush();
+                for (Path file : archivedFiles) {
+                    Files.delete(file);
                 }
             }
+            int archived = archivedFiles.size();
+            
+            Set<String> dropped = reportArchive.applyRetention(
+                TimeUnit.DAYS.toMillis(RETENTION_DAYS), MAX_ARCHIVE_MB * 1024 * 1024);
+            reportCatalog.removeArchived(dropped);
+            
+            if (archived > 0 || !dropped.isEmpty()) {
+                LOGGER.info("Report archive maintenance: " + archived + " archived, " + dropped.size()
+                    + " removed by retention, archive size " + reportArchive.totalBytes() / 1024 + " KB");
+            }
+        } catch (Exception e) {
+            LOGGER.warning("Report archive maintenance failed: " + e.getMessage());
         }
-        
-        return reports;
+    }
+    
+    /**
+     * Stop background maintenance, stop watching the reports directory and flush the catalog index
+     */
+    public void close() {
+        maintenance.shutdownNow();
+        catalog.thenAccept(ReportCatalog::close);
     }
     
     /**
      * Incident data container class
      */
     public static class IncidentData {
+        // Spacing assumed for histories without live statistics (the monitor samples every 2 s)
+        private static final long HISTORY_SAMPLE_INTERVAL_MILLIS = 2000;
+        
         private String patientName;
         private LocalDateTime timestamp;
         private String emergencyType;
@@ -495,6 +745,8 @@ public class IncidentReportService {
         private List<String> timeline;
         private List<String> responseActions;
         private EmergencySMSService.EmergencyAlertResult smsAlertResult;
+        private SessionStats.Snapshot sessionStats;
+        private HeartRateProfile heartRateProfile;
         
         public IncidentData(String patientName, LocalDateTime timestamp, String emergencyType, 
                           int triggerHeartRate) {
@@ -518,9 +770,22 @@ public class IncidentReportService {
         public List<String> getResponseActions() { return responseActions; }
         public EmergencySMSService.EmergencyAlertResult getSmsAlertResult() { return smsAlertResult; }
         
+        /**
+         * Statistics for the whole session; derived from the heart rate history if none were tracked live
+         */
+        public SessionStats.Snapshot getSessionStats() {
+            if (sessionStats == null && heartRateHistory != null) {
+                sessionStats = SessionStats.fromHistory(heartRateHistory, HISTORY_SAMPLE_INTERVAL_MILLIS);
+            }
+            return sessionStats;
+        }
+        
         public void setLocation(String location) { this.location = location; }
         public void setHeartRateHistory(List<Integer> heartRateHistory) { this.heartRateHistory = heartRateHistory; }
         public void setSmsAlertResult(EmergencySMSService.EmergencyAlertResult smsAlertResult) { this.smsAlertResult = smsAlertResult; }
+        public void setSessionStats(SessionStats.Snapshot sessionStats) { this.sessionStats = sessionStats; }
+        public HeartRateProfile getHeartRateProfile() { return heartRateProfile; }
+        public void setHeartRateProfile(HeartRateProfile heartRateProfile) { this.heartRateProfile = heartRateProfile; }
         
         public void addTimelineEvent(String event) { 
             timeline.add(LocalDateTime.now().format(DISPLAY_FORMATTER) + " - " + event); 
@@ -539,22 +804,49 @@ public class IncidentReportService {
         private String filepath;
         private LocalDateTime generatedAt;
         private IncidentData incidentData;
+        private long sizeBytes;
         
         public IncidentReport(String filename, String filepath, IncidentData incidentData) {
+            this(filename, filepath, incidentData, LocalDateTime.now(), new File(filepath).length());
+        }
+        
+        public IncidentReport(String filename, String filepath, IncidentData incidentData,
+                              LocalDateTime generatedAt, long sizeBytes) {
             this.filename = filename;
             this.filepath = filepath;
-            this.generatedAt = LocalDateTime.now();
+            this.generatedAt = generatedAt;
             this.incidentData = incidentData;
+            this.sizeBytes = sizeBytes;
         }
         
         public String getFilename() { return filename; }
         public String getFilepath() { return filepath; }
         public LocalDateTime getGeneratedAt() { return generatedAt; }
         public IncidentData getIncidentData() { return incidentData; }
+        public long getSizeBytes() { return sizeBytes; }
         
         @Override
         public String toString() {
             return filename + " (Generated: " + generatedAt.format(DISPLAY_FORMATTER) + ")";
         }
     }
+    
+    /**
+     * One page of catalog query results
+     */
+    public static class ReportPage {
+        private final List<IncidentReport> reports;
+        private final int totalMatches;
+        private final boolean hasMore;
+        
+        public ReportPage(List<IncidentReport> reports, int totalMatches, boolean hasMore) {
+            this.reports = reports;
+            this.totalMatches = totalMatches;
+            this.hasMore = hasMore;
+        }
+        
+        public List<IncidentReport> getReports() { return reports; }
+        public int getTotalMatches() { return totalMatches; }
+        public boolean hasMore() { return hasMore; }
+    }
 }
\ No newline at end of file
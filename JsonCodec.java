@@ -0,0 +1,126 @@
+package com.heartsafe.shared.json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Shared JSON wire format for client-backend traffic
+ * One compact Gson instance (no pretty printing, no HTML escaping) with streaming
+ * type adapters for java.time values, plus the gzip helpers both sides use when
+ * Content-Encoding / Accept-Encoding negotiate compression.
+ */
+public final class JsonCodec {
+    public static final String GZIP = "gzip";
+    // Below this size gzip framing costs more than it saves
+    public static final int COMPRESSION_THRESHOLD_BYTES = 1024;
+
+    private static final Gson GSON = new GsonBuilder()
+        .disableHtmlEscaping()
+        .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter().nullSafe())
+        .registerTypeAdapter(LocalDate.class, new LocalDateAdapter().nullSafe())
+        .create();
+
+    private JsonCodec() {
+    }
+
+    /**
+     * Thread-safe shared instance; each DTO's adapter is built once and cached
+     */
+    public static Gson gson() {
+        return GSON;
+    }
+
+    /**
+     * Build the reflective adapters for the given DTO types now rather than on the first request
+     */
+    public static void warmUp(Class<?>... types) {
+        for (Class<?> type : types) {
+            GSON.getAdapter(type);
+        }
+    }
+
+    public static String toJson(Object value) {
+        return GSON.toJson(value);
+    }
+
+    public static <T> T fromJson(String json, Class<T> type) {
+        return GSON.fromJson(json, type);
+    }
+
+    /**
+     * Whether an Accept-Encoding header value allows a gzip response
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] coding = part.trim().split(";");
+            if (coding[0].trim().equalsIgnoreCase(GZIP)) {
+                return coding.length < 2 || !coding[1].trim().replace(" ", "").equals("q=0");
+            }
+        }
+        return false;
+    }
+
+    public static boolean shouldCompress(byte[] body) {
+        return body.length >= COMPRESSION_THRESHOLD_BYTES;
+    }
+
+    public static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Read a request or response body, inflating it if its Content-Encoding is gzip
+     */
+    public static String readBody(InputStream in, String contentEncoding) throws IOException {
+        if (contentEncoding != null && contentEncoding.trim().equalsIgnoreCase(GZIP)) {
+            try (InputStream gzip = new GZIPInputStream(in)) {
+                return new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * ISO-8601 local date-time, e.g. 2025-03-01T14:30:00
+     */
+    private static class LocalDateTimeAdapter extends TypeAdapter<LocalDateTime> {
+        @Override
+        public void write(JsonWriter out, LocalDateTime value) throws IOException {
+            out.value(value.toString());
+        }
+
+        @Override
+        public LocalDateTime read(JsonReader in) throws IOException {
+            return LocalDateTime.parse(in.nextString());
+        }
+    }
+
+    private static class LocalDateAdapter extends TypeAdapter<LocalDate> {
+        @Override
+        public void write(JsonWriter out, LocalDate value) throws IOException {
+            out.value(value.toString());
+        }
+
+        @Override
+        public LocalDate read(JsonReader in) throws IOException {
+            return LocalDate.parse(in.nextString());
+        }
+    }
+}
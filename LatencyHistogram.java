@@ -0,0 +1,116 @@
+package com.heartsafe.desktop;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram for HeartSafe diagnostics
+ * Values are bucketed logarithmically with four sub-buckets per power of two,
+ * so percentiles are accurate to within ~20% over nanoseconds to hours.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    private final AtomicLong resetAt = new AtomicLong(System.currentTimeMillis());
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Record one duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public String getName() { return name; }
+    public long getCount() { return count.sum(); }
+    public long getMaxNanos() { return max.get(); }
+
+    public double getMeanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Upper bound of the bucket containing the given percentile (0-100), in nanoseconds
+     */
+    public long percentile(double percentile) {
+        long total = count.sum();
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clear all recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+        resetAt.set(System.currentTimeMillis());
+    }
+
+    public long getResetAtMillis() {
+        return resetAt.get();
+    }
+
+    /**
+     * One-line summary with millisecond percentiles
+     */
+    public String summary() {
+        return String.format("%s: n=%d mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+            name, getCount(), getMeanNanos() / 1e6, percentile(50) / 1e6,
+            percentile(95) / 1e6, percentile(99) / 1e6, getMaxNanos() / 1e6);
+    }
+
+    @Override
+    public String toString() {
+        return summary();
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int log2 = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (log2 - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (log2 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int log2 = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long base = 1L << log2;
+        long step = 1L << (log2 - SUB_BUCKET_BITS);
+        return base + (sub + 1) * step - 1;
+    }
+}
@@ -0,0 +1,100 @@
+package com.heartsafe.desktop;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * A service constructed in the background on first use
+ * The factory runs once on the given executor, so slow setup (network clients, SDK init,
+ * index loading) never runs on the EDT and several services can start in parallel.
+ * The state is observable so the UI can show per-service readiness.
+ */
+public class LazyService<T> {
+    private static final Logger LOGGER = Logger.getLogger(LazyService.class.getName());
+
+    public enum State { IDLE, STARTING, READY, FAILED }
+
+    private final String name;
+    private final Supplier<T> factory;
+    private final Executor executor;
+    private final CompletableFuture<T> instance = new CompletableFuture<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final List<Runnable> stateListeners = new CopyOnWriteArrayList<>();
+
+    private volatile State state = State.IDLE;
+    private volatile long startupMillis;
+
+    public LazyService(String name, Supplier<T> factory, Executor executor) {
+        this.name = name;
+        this.factory = factory;
+        this.executor = executor;
+    }
+
+    /**
+     * The service, starting it if this is the first request
+     */
+    public CompletableFuture<T> get() {
+        if (started.compareAndSet(false, true)) {
+            setState(State.STARTING);
+            executor.execute(this::create);
+        }
+        return instance;
+    }
+
+    /**
+     * The service if it is ready, otherwise null; never starts it
+     */
+    public T getNow() {
+        return state == State.READY ? instance.join() : null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Construction time, once READY or FAILED
+     */
+    public long getStartupMillis() {
+        return startupMillis;
+    }
+
+    /**
+     * Called on the starting thread whenever the state changes
+     */
+    public void addStateListener(Runnable listener) {
+        stateListeners.add(listener);
+    }
+
+    private void create() {
+        long startNanos = System.nanoTime();
+        try {
+            T service = factory.get();
+            startupMillis = (System.nanoTime() - startNanos) / 1_000_000;
+            instance.complete(service);
+            setState(State.READY);
+            LOGGER.info(name + " service ready in " + startupMillis + " ms");
+        } catch (RuntimeException | Error e) {
+            startupMillis = (System.nanoTime() - startNanos) / 1_000_000;
+            instance.completeExceptionally(e);
+            setState(State.FAILED);
+            LOGGER.warning(name + " service failed to start: " + e.getMessage());
+        }
+    }
+
+    private void setState(State newState) {
+        state = newState;
+        for (Runnable listener : stateListeners) {
+            listener.run();
+        }
+    }
+}
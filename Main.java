@@ -6,12 +6,10 @@ import javax.swing.border.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.*;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -20,13 +18,17 @@ import java.nio.file.StandardCopyOption;
 import java.util.List;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class Main {
     // UI Components
     private JFrame frame;
     private JLabel hrLabel;
     private JLabel statusLabel;
-    private JTextArea logArea;
+    private JLabel percentileLabel;
+    private JList<String> logList;
+    private ActivityLog activityLog;
     private ModernButton startBtn;
     private ModernButton stopBtn;
     private ModernButton emergencyBtn;
@@ -35,15 +37,35 @@ public class Main {
     private JPanel headerPanel;
     
     // Data and Threading
-    private ScheduledExecutorService scheduler;
+    // Kept after monitoring stops, so a session report still has the agent's statistics and profile
+    private MonitoringAgent monitoringAgent;
     private final List<Integer> lastReadings = new ArrayList<>();
+    // Patient's long-term BPM distribution, loaded and saved by the agent
+    private static final Path PROFILE_DIRECTORY = Paths.get(System.getProperty("heartsafe.profiles.dir", "profiles"));
     private boolean isMonitoring = false;
     
-    // New Services
-    private GoogleFitServiceDemo googleFitService;
-    private EmergencySMSService smsService;
-    private IncidentReportService reportService;
-    private TeleconsultationService teleconsultService;
+    // New Services, each constructed in the background on first use
+    private final ExecutorService serviceStartup = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "service-startup");
+        t.setDaemon(true);
+        return t;
+    });
+    private final LazyService<GoogleFitServiceDemo> googleFit = new LazyService<>("Google Fit", () -> {
+        GoogleFitServiceDemo service = new GoogleFitServiceDemo();
+        if (!service.initialize().join()) {
+            throw new IllegalStateException("initialization failed");
+        }
+        return service;
+    }, serviceStartup);
+    private final LazyService<EmergencySMSService> sms = new LazyService<>("SMS", EmergencySMSService::new, serviceStartup);
+    private final LazyService<IncidentReportService> reports = new LazyService<>("Reports", IncidentReportService::new, serviceStartup);
+    private final LazyService<TeleconsultationService> teleconsult = new LazyService<>("Teleconsult", () -> {
+        TeleconsultationService service = new TeleconsultationService();
+        service.prefetch();
+        return service;
+    }, serviceStartup);
+    private EdtWatchdog edtWatchdog;
+    private UiMetrics uiMetrics;
     
     // Patient info
     private String patientName = "Demo Patient";
@@ -53,8 +75,14 @@ public class Main {
     private ModernButton configBtn;
     private ModernButton reportsBtn;
     private ModernButton contactsBtn;
+    private ModernButton diagnosticsBtn;
     private JLabel serviceStatusLabel;
-    private boolean useGoogleFit = false;
+    
+    // Startup timing: -Dheartsafe.startup.benchmark=true starts monitoring, reports the time to
+    // the first displayed reading and exits (also the AppCDS training run)
+    private static final boolean STARTUP_BENCHMARK = Boolean.getBoolean("heartsafe.startup.benchmark");
+    private static long mainEnteredNanos;
+    private boolean firstReadingShown;
     
     // Modern Color Scheme - Medical Theme
     public static final Color PRIMARY_RED = new Color(229, 57, 53);
@@ -88,10 +116,17 @@ public class Main {
     }
 
     public static void main(String[] args) {
+        mainEnteredNanos = System.nanoTime();
         SwingUtilities.invokeLater(() -> new Main().start());
     }
 
     private void start() {
+        edtWatchdog = EdtWatchdog.fromSystemProperties();
+        edtWatchdog.start();
+        uiMetrics = new UiMetrics(Long.getLong("heartsafe.edt.slowEventMs", 100));
+        uiMetrics.install();
+        activityLog = ActivityLog.fromSystemProperties();
+        
         // Set system look and feel with modern enhancements
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -148,10 +183,13 @@ public class Main {
         // Show the frame
         frame.setVisible(true);
         
-        // Initialize new services
-        initializeServices();
-        
         log("🎉 HeartSafe Desktop Application Started");
+        if (STARTUP_BENCHMARK) {
+            beginMonitoring();
+        }
+        
+        // Start services in parallel once the window is up; none of them is needed for monitoring
+        SwingUtilities.invokeLater(this::initializeServices);
     }
 
     private void createHeaderPanel() {
@@ -179,7 +217,14 @@ public class Main {
         titleLabel.setForeground(Color.WHITE);
         titleLabel.setBorder(new EmptyBorder(20, 20, 20, 20));
         
+        serviceStatusLabel = new JLabel();
+        serviceStatusLabel.setFont(getPreferredFont(Font.PLAIN, 12));
+        serviceStatusLabel.setForeground(Color.WHITE);
+        serviceStatusLabel.setBorder(new EmptyBorder(0, 0, 0, 20));
+        updateServiceStatus();
+        
         headerPanel.add(titleLabel, BorderLayout.CENTER);
+        headerPanel.add(serviceStatusLabel, BorderLayout.EAST);
     }
     
     private JPanel createHeartRatePanel() {
@@ -203,10 +248,17 @@ public class Main {
         statusLabel.setForeground(TEXT_SECONDARY);
         statusLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
         
+        percentileLabel = new JLabel(" ", JLabel.CENTER);
+        percentileLabel.setFont(getPreferredFont(Font.PLAIN, 12));
+        percentileLabel.setForeground(TEXT_SECONDARY);
+        percentileLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        
         panel.add(Box.createVerticalGlue());
         panel.add(hrLabel);
         panel.add(Box.createRigidArea(new Dimension(0, 10)));
         panel.add(statusLabel);
+        panel.add(Box.createRigidArea(new Dimension(0, 6)));
+        panel.add(percentileLabel);
         panel.add(Box.createVerticalGlue());
         
         return panel;
@@ -226,6 +278,7 @@ public class Main {
         configBtn = new ModernButton("⚙️ Settings", new Color(100, 100, 100), Color.WHITE);
         reportsBtn = new ModernButton("📄 Reports", new Color(60, 120, 180), Color.WHITE);
         contactsBtn = new ModernButton("📞 Contacts", new Color(180, 80, 120), Color.WHITE);
+        diagnosticsBtn = new ModernButton("📊 Diagnostics", new Color(90, 90, 140), Color.WHITE);
         
         stopBtn.setEnabled(false);
         
@@ -240,11 +293,12 @@ public class Main {
         panel.add(reportsBtn);
         panel.add(contactsBtn);
         panel.add(generateReportBtn);
+        panel.add(diagnosticsBtn);
 
         generateReportBtn.addActionListener(e -> {
             generateReportBtn.animateClick();
             // Create a normal session report on demand
-            generateSessionReportAndShow();
+            whenReady(reports, this::generateSessionReportAndShow);
         });
         
         return panel;
@@ -254,17 +308,47 @@ public class Main {
         JPanel panel = createStyledPanel("📋 Activity Log", null);
         panel.setPreferredSize(new Dimension(300, 0));
         
-        logArea = new JTextArea();
-        logArea.setEditable(false);
-        logArea.setFont(new Font("Consolas", Font.PLAIN, 12));
-        logArea.setBackground(new Color(248, 249, 250));
-        logArea.setBorder(new EmptyBorder(10, 10, 10, 10));
-        
-        JScrollPane scrollPane = new JScrollPane(logArea);
+        // JList renders only the visible rows; fixed cell sizes avoid measuring every entry,
+        // and the tooltip shows lines too long for the panel
+        logList = new JList<>(activityLog) {
+            @Override
+            public String getToolTipText(MouseEvent e) {
+                int index = locationToIndex(e.getPoint());
+                return index >= 0 ? getModel().getElementAt(index) : null;
+            }
+        };
+        logList.setFont(new Font("Consolas", Font.PLAIN, 12));
+        logList.setBackground(new Color(248, 249, 250));
+        logList.setBorder(new EmptyBorder(10, 10, 10, 10));
+        logList.setFixedCellHeight(logList.getFontMetrics(logList.getFont()).getHeight() + 2);
+        logList.setFixedCellWidth(250);
+        ToolTipManager.sharedInstance().registerComponent(logList);
+        
+        JScrollPane scrollPane = new JScrollPane(logList);
         scrollPane.setBorder(null);
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
         
+        // Follow new entries only while the view is scrolled to the bottom
+        activityLog.addListDataListener(new javax.swing.event.ListDataListener() {
+            @Override
+            public void intervalAdded(javax.swing.event.ListDataEvent e) {
+                JScrollBar bar = scrollPane.getVerticalScrollBar();
+                boolean atBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - logList.getFixedCellHeight();
+                if (atBottom) {
+                    SwingUtilities.invokeLater(() -> logList.ensureIndexIsVisible(activityLog.getSize() - 1));
+                }
+            }
+            
+            @Override
+            public void intervalRemoved(javax.swing.event.ListDataEvent e) {
+            }
+            
+            @Override
+            public void contentsChanged(javax.swing.event.ListDataEvent e) {
+            }
+        });
+        
         panel.add(scrollPane, BorderLayout.CENTER);
         return panel;
     }
@@ -310,7 +394,7 @@ public class Main {
         
         bookBtn.addActionListener(e -> {
             bookBtn.animateClick();
-            showTeleconsultDialog();
+            whenReady(teleconsult, this::showTeleconsultDialog);
         });
         
         // New button handlers
@@ -321,51 +405,115 @@ public class Main {
         
         reportsBtn.addActionListener(e -> {
             reportsBtn.animateClick();
-            showReportsDialog();
+            whenReady(reports, this::showReportsDialog);
         });
         
         contactsBtn.addActionListener(e -> {
             contactsBtn.animateClick();
-            showContactsDialog();
+            whenReady(sms, this::showContactsDialog);
+        });
+        
+        diagnosticsBtn.addActionListener(e -> {
+            diagnosticsBtn.animateClick();
+            showDiagnosticsDialog();
         });
     }
     
     private void initializeServices() {
-        log("🔧 Initializing HeartSafe services...");
-        
-        // Initialize Google Fit Service
-        googleFitService = new GoogleFitServiceDemo();
-        googleFitService.initialize().thenAccept(success -> {
-            SwingUtilities.invokeLater(() -> {
-                if (success) {
-                    log("✅ Google Fit service initialized successfully");
-                    useGoogleFit = true;
-                } else {
-                    log("⚠️ Google Fit service initialization failed - using simulation mode");
-                }
-            });
-        });
+        log("🔧 Starting HeartSafe services in the background...");
         
-        // Initialize SMS Service
-        smsService = new EmergencySMSService();
-        if (smsService.isConfigured()) {
-            log("✅ SMS emergency service configured");
-        } else {
-            log("⚠️ SMS service in demo mode - configure Twilio for real alerts");
+        for (LazyService<?> service : List.of(googleFit, sms, reports, teleconsult)) {
+            service.addStateListener(() -> SwingUtilities.invokeLater(this::updateServiceStatus));
         }
         
-        // Initialize Report Service
-        reportService = new IncidentReportService();
-        log("✅ PDF report service initialized");
-        
-        // Initialize Teleconsultation Service
-        teleconsultService = new TeleconsultationService();
-        log("✅ Teleconsultation service initialized");
-        
-        log("✨ All services initialized successfully!");
+        googleFit.get().whenComplete((service, ex) -> SwingUtilities.invokeLater(() -> {
+            if (ex == null) {
+                log("✅ Google Fit service initialized (" + googleFit.getStartupMillis() + " ms)");
+            } else {
+                log("⚠️ Google Fit service initialization failed - using simulation mode");
+            }
+        }));
+        sms.get().whenComplete((service, ex) -> SwingUtilities.invokeLater(() -> {
+            if (ex != null) {
+                log("❌ SMS service failed to start: " + ex.getMessage());
+            } else if (service.isConfigured()) {
+                log("✅ SMS emergency service configured (" + sms.getStartupMillis() + " ms)");
+            } else {
+                log("⚠️ SMS service in demo mode - configure Twilio for real alerts");
+            }
+        }));
+        reports.get().whenComplete((service, ex) -> SwingUtilities.invokeLater(() -> {
+            log(ex == null ? "✅ PDF report service initialized (" + reports.getStartupMillis() + " ms)"
+                : "❌ PDF report service failed to start: " + ex.getMessage());
+        }));
+        teleconsult.get().whenComplete((service, ex) -> SwingUtilities.invokeLater(() -> {
+            log(ex == null ? "✅ Teleconsultation service initialized (" + teleconsult.getStartupMillis() + " ms)"
+                : "❌ Teleconsultation service failed to start: " + ex.getMessage());
+        }));
+    }
+    
+    /**
+     * Run an action on the EDT with a service, starting it first if needed
+     */
+    private <T> void whenReady(LazyService<T> service, Consumer<T> action) {
+        T ready = service.getNow();
+        if (ready != null) {
+            action.accept(ready);
+            return;
+        }
+        log("⏳ " + service.getName() + " service is still starting...");
+        service.get().whenComplete((started, ex) -> SwingUtilities.invokeLater(() -> {
+            if (ex != null) {
+                log("❌ " + service.getName() + " service is unavailable: " + ex.getMessage());
+            } else {
+                action.accept(started);
+            }
+        }));
+    }
+    
+    private void updateServiceStatus() {
+        StringBuilder sb = new StringBuilder();
+        for (LazyService<?> service : List.of(googleFit, sms, reports, teleconsult)) {
+            String icon;
+            switch (service.getState()) {
+                case READY: icon = "✅"; break;
+                case FAILED: icon = "❌"; break;
+                case STARTING: icon = "⏳"; break;
+                default: icon = "○"; break;
+            }
+            if (sb.length() > 0) sb.append("  ");
+            sb.append(service.getName()).append(' ').append(icon);
+        }
+        serviceStatusLabel.setText(sb.toString());
+    }
+    
+    /**
+     * Called once, when the chart first paints a reading
+     */
+    private void firstReadingDisplayed() {
+        long fromMain = (System.nanoTime() - mainEnteredNanos) / 1_000_000;
+        String fromJvm = ProcessHandle.current().info().startInstant()
+            .map(t -> Duration.between(t, Instant.now()).toMillis() + " ms after JVM start, ")
+            .orElse("");
+        String message = "First reading displayed " + fromJvm + fromMain + " ms after main()";
+        log("⏱️ " + message);
+        if (STARTUP_BENCHMARK) {
+            System.out.println("[startup-benchmark] " + message);
+            shutdown();
+            System.exit(0);
+        }
+    }
+    
+    private String describe(LazyService<?> service, String ready, String failed) {
+        switch (service.getState()) {
+            case READY: return ready;
+            case FAILED: return failed;
+            default: return "Starting...";
+        }
     }
     
     private void showConfigurationDialog() {
+        EmergencySMSService smsService = sms.getNow();
         JDialog configDialog = new JDialog(frame, "HeartSafe Configuration", true);
         configDialog.setSize(500, 400);
         configDialog.setLocationRelativeTo(frame);
@@ -376,16 +524,16 @@ public class Main {
         infoArea.setText(
             "HeartSafe Configuration\n\n" +
             "Google Fit Integration:\n" +
-            "- Status: " + (useGoogleFit ? "Enabled (Demo Mode)" : "Disabled") + "\n" +
+            "- Status: " + describe(googleFit, "Enabled (Demo Mode)", "Disabled") + "\n" +
             "- To enable: Add credentials.json to project root\n\n" +
             "SMS Emergency Alerts:\n" +
-            "- Status: " + (smsService.isConfigured() ? "Configured" : "Demo Mode") + "\n" +
+            "- Status: " + (smsService == null ? describe(sms, "", "Unavailable") : smsService.isConfigured() ? "Configured" : "Demo Mode") + "\n" +
             "- Configure Twilio: Set TWILIO_ACCOUNT_SID, TWILIO_AUTH_TOKEN, TWILIO_PHONE_NUMBER\n\n" +
             "Patient Information:\n" +
             "- Name: " + patientName + "\n" +
             "- Location: " + patientLocation + "\n\n" +
             "Reports Directory: ./reports/\n" +
-            "Emergency Contacts: " + smsService.getEmergencyContacts().size() + " configured"
+            "Emergency Contacts: " + (smsService == null ? "(loading)" : smsService.getEmergencyContacts().size() + " configured")
         );
         
         panel.add(new JScrollPane(infoArea), BorderLayout.CENTER);
@@ -400,24 +548,26 @@ public class Main {
         log("⚙️ Configuration dialog opened");
     }
     
-    private void showReportsDialog() {
+    private static final int REPORTS_PAGE_SIZE = 50;
+    
+    private void showReportsDialog(IncidentReportService reportService) {
         JDialog reportsDialog = new JDialog(frame, "Incident Reports", true);
         reportsDialog.setSize(600, 500);
         reportsDialog.setLocationRelativeTo(frame);
         
         JPanel panel = new JPanel(new BorderLayout());
         
-        DefaultListModel<String> listModel = new DefaultListModel<>();
-        List<IncidentReportService.IncidentReport> reports = reportService.getAllReports();
+        // Filter by patient name or emergency type
+        JPanel filterPanel = new JPanel(new BorderLayout(5, 5));
+        filterPanel.setBorder(new EmptyBorder(5, 5, 5, 5));
+        JTextField filterField = new JTextField();
+        filterPanel.add(new JLabel("Filter:"), BorderLayout.WEST);
+        filterPanel.add(filterField, BorderLayout.CENTER);
+        panel.add(filterPanel, BorderLayout.NORTH);
         
-        if (reports.isEmpty()) {
-            listModel.addElement("No incident reports generated yet");
-            listModel.addElement("Reports will appear here after emergencies are triggered");
-        } else {
-            for (IncidentReportService.IncidentReport report : reports) {
-                listModel.addElement(report.toString());
-            }
-        }
+        DefaultListModel<String> listModel = new DefaultListModel<>();
+        List<IncidentReportService.IncidentReport> reports = new ArrayList<>();
+        listModel.addElement("Loading reports...");
         
         JList<String> reportsList = new JList<>(listModel);
         panel.add(new JScrollPane(reportsList), BorderLayout.CENTER);
@@ -425,17 +575,64 @@ public class Main {
         JPanel buttonPanel = new JPanel(new FlowLayout());
         JButton openBtn = new JButton("Open Report");
     JButton downloadBtn = new JButton("Download Report");
+        JButton moreBtn = new JButton("Load More");
         JButton refreshBtn = new JButton("Refresh");
         JButton closeBtn = new JButton("Close");
+        moreBtn.setEnabled(false);
+        
+        // Loads one catalog page off the EDT; offset 0 replaces the list, otherwise appends
+        java.util.function.IntConsumer loadPage = offset -> {
+            moreBtn.setEnabled(false);
+            reportService.queryReports(filterField.getText(), offset, REPORTS_PAGE_SIZE).thenAccept(page -> {
+                SwingUtilities.invokeLater(() -> {
+                    if (offset == 0) {
+                        reports.clear();
+                        listModel.clear();
+                    }
+                    reports.addAll(page.getReports());
+                    for (IncidentReportService.IncidentReport report : page.getReports()) {
+                        listModel.addElement(report.toString());
+                    }
+                    if (reports.isEmpty()) {
+                        listModel.addElement("No incident reports generated yet");
+                        listModel.addElement("Reports will appear here after emergencies are triggered");
+                    }
+                    moreBtn.setEnabled(page.hasMore());
+                    if (offset == 0) {
+                        log("📄 Reports loaded - " + page.getTotalMatches() + " reports available");
+                    }
+                });
+            }).exceptionally(err -> {
+                Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+                SwingUtilities.invokeLater(() -> {
+                    if (offset == 0) {
+                        reports.clear();
+                        listModel.clear();
+                        listModel.addElement("Could not load reports: " + cause.getMessage());
+                    }
+                    moreBtn.setEnabled(offset > 0);
+                    log("❌ Failed to load reports: " + cause.getMessage());
+                    JOptionPane.showMessageDialog(reportsDialog, "Could not load reports: " + cause.getMessage(),
+                        "Reports Error", JOptionPane.ERROR_MESSAGE);
+                });
+                return null;
+            });
+        };
         
         openBtn.addActionListener(e -> {
             if (!reports.isEmpty() && reportsList.getSelectedIndex() >= 0) {
                 IncidentReportService.IncidentReport selectedReport = reports.get(reportsList.getSelectedIndex());
-                try {
-                    Desktop.getDesktop().open(new java.io.File(selectedReport.getFilepath()));
-                } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(reportsDialog, "Could not open report: " + ex.getMessage());
-                }
+                // Archived reports are extracted to a temporary file first
+                reportService.resolveReportFile(selectedReport).whenComplete((file, err) -> {
+                    SwingUtilities.invokeLater(() -> {
+                        try {
+                            if (err != null) throw err;
+                            Desktop.getDesktop().open(file);
+                        } catch (Throwable ex) {
+                            JOptionPane.showMessageDialog(reportsDialog, "Could not open report: " + ex.getMessage());
+                        }
+                    });
+                });
             }
         });
 
@@ -447,37 +644,42 @@ public class Main {
                 int res = chooser.showSaveDialog(reportsDialog);
                 if (res == JFileChooser.APPROVE_OPTION) {
                     java.io.File dest = chooser.getSelectedFile();
-                    try {
-                        java.nio.file.Path src = java.nio.file.Paths.get(selectedReport.getFilepath());
-                        java.nio.file.Files.copy(src, dest.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-                        JOptionPane.showMessageDialog(reportsDialog, "Report saved to: " + dest.getAbsolutePath());
-                    } catch (Exception ex) {
-                        JOptionPane.showMessageDialog(reportsDialog, "Failed to save report: " + ex.getMessage(), "Save Error", JOptionPane.ERROR_MESSAGE);
-                    }
+                    reportService.resolveReportFile(selectedReport).thenAccept(src -> {
+                        try {
+                            java.nio.file.Files.copy(src.toPath(), dest.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                        } catch (java.io.IOException ex) {
+                            throw new java.io.UncheckedIOException(ex);
+                        }
+                    }).whenComplete((ok, err) -> SwingUtilities.invokeLater(() -> {
+                        if (err == null) {
+                            JOptionPane.showMessageDialog(reportsDialog, "Report saved to: " + dest.getAbsolutePath());
+                        } else {
+                            JOptionPane.showMessageDialog(reportsDialog, "Failed to save report: " + err.getMessage(), "Save Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                    }));
                 }
             }
         });
         
-        refreshBtn.addActionListener(e -> {
-            reportsDialog.dispose();
-            showReportsDialog();
-        });
+        moreBtn.addActionListener(e -> loadPage.accept(reports.size()));
+        refreshBtn.addActionListener(e -> loadPage.accept(0));
+        filterField.addActionListener(e -> loadPage.accept(0));
         
         closeBtn.addActionListener(e -> reportsDialog.dispose());
         
     buttonPanel.add(openBtn);
     buttonPanel.add(downloadBtn);
+        buttonPanel.add(moreBtn);
         buttonPanel.add(refreshBtn);
         buttonPanel.add(closeBtn);
         panel.add(buttonPanel, BorderLayout.SOUTH);
         
         reportsDialog.add(panel);
+        loadPage.accept(0);
         reportsDialog.setVisible(true);
-        
-        log("📄 Reports dialog opened - " + reports.size() + " reports available");
     }
     
-    private void showContactsDialog() {
+    private void showContactsDialog(EmergencySMSService smsService) {
         JDialog contactsDialog = new JDialog(frame, "Emergency Contacts", true);
         contactsDialog.setSize(500, 400);
         contactsDialog.setLocationRelativeTo(frame);
@@ -510,7 +712,7 @@ public class Main {
                     }
                     smsService.addEmergencyContact(name.trim(), phone.trim(), relationship.trim());
                     contactsDialog.dispose();
-                    showContactsDialog(); // Refresh
+                    showContactsDialog(smsService); // Refresh
                 }
             }
         });
@@ -543,7 +745,7 @@ public class Main {
         log("📞 Emergency contacts dialog opened - " + contacts.size() + " contacts");
     }
     
-    private void showTeleconsultDialog() {
+    private void showTeleconsultDialog(TeleconsultationService teleconsultService) {
         JDialog teleconsultDialog = new JDialog(frame, "Book Teleconsultation", true);
         teleconsultDialog.setSize(700, 600);
         teleconsultDialog.setLocationRelativeTo(frame);
@@ -556,35 +758,13 @@ public class Main {
         
         panel.add(new JScrollPane(infoArea), BorderLayout.CENTER);
         
-        // Load doctors asynchronously
+        // Show cached doctors instantly, then refresh in the background
+        List<TeleconsultationService.Doctor> cachedDoctors = teleconsultService.getCachedDoctors();
+        if (cachedDoctors != null) {
+            infoArea.setText(formatDoctorList(cachedDoctors));
+        }
         teleconsultService.getAvailableDoctors().thenAccept(doctors -> {
-            SwingUtilities.invokeLater(() -> {
-                StringBuilder sb = new StringBuilder();
-                sb.append("Available Doctors for Teleconsultation:\n\n");
-                
-                for (int i = 0; i < doctors.size(); i++) {
-                    TeleconsultationService.Doctor doctor = doctors.get(i);
-                    sb.append((i + 1)).append(". ").append(doctor.name).append("\n");
-                    sb.append("   Specialty: ").append(doctor.specialty).append("\n");
-                    sb.append("   Experience: ").append(doctor.experience).append(" years\n");
-                    sb.append("   Rating: ").append(doctor.rating).append("/5.0 ⭐\n");
-                    sb.append("   Fee: $").append(doctor.consultationFee).append("\n");
-                    sb.append("   Availability: ").append(doctor.availability).append("\n\n");
-                }
-                
-                sb.append("To book an appointment:\n");
-                sb.append("1. Select a doctor\n");
-                sb.append("2. Choose consultation type (Regular/Emergency)\n");
-                sb.append("3. Provide symptoms and medical history\n\n");
-                
-                if (smsService.isConfigured()) {
-                    sb.append("Emergency consultations are available 24/7\n");
-                } else {
-                    sb.append("Demo mode: All bookings are simulated\n");
-                }
-                
-                infoArea.setText(sb.toString());
-            });
+            SwingUtilities.invokeLater(() -> infoArea.setText(formatDoctorList(doctors)));
         });
         
         JPanel buttonPanel = new JPanel(new FlowLayout());
@@ -593,12 +773,12 @@ public class Main {
         JButton closeBtn = new JButton("Close");
         
         bookRegularBtn.addActionListener(e -> {
-            bookRegularConsultation();
+            bookRegularConsultation(teleconsultService);
             teleconsultDialog.dispose();
         });
         
         bookEmergencyBtn.addActionListener(e -> {
-            bookEmergencyConsultation();
+            bookEmergencyConsultation(teleconsultService);
             teleconsultDialog.dispose();
         });
         
@@ -612,10 +792,39 @@ public class Main {
         teleconsultDialog.add(panel);
         teleconsultDialog.setVisible(true);
         
-        log("📞 Teleconsultation dialog opened");
+        log("📞 Teleconsultation dialog opened (" + teleconsultService.getCacheStats() + ")");
+    }
+    
+    private String formatDoctorList(List<TeleconsultationService.Doctor> doctors) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Available Doctors for Teleconsultation:\n\n");
+        
+        for (int i = 0; i < doctors.size(); i++) {
+            TeleconsultationService.Doctor doctor = doctors.get(i);
+            sb.append((i + 1)).append(". ").append(doctor.name).append("\n");
+            sb.append("   Specialty: ").append(doctor.specialty).append("\n");
+            sb.append("   Experience: ").append(doctor.experience).append(" years\n");
+            sb.append("   Rating: ").append(doctor.rating).append("/5.0 ⭐\n");
+            sb.append("   Fee: $").append(doctor.consultationFee).append("\n");
+            sb.append("   Availability: ").append(doctor.availability).append("\n\n");
+        }
+        
+        sb.append("To book an appointment:\n");
+        sb.append("1. Select a doctor\n");
+        sb.append("2. Choose consultation type (Regular/Emergency)\n");
+        sb.append("3. Provide symptoms and medical history\n\n");
+        
+        EmergencySMSService smsService = sms.getNow();
+        if (smsService != null && smsService.isConfigured()) {
+            sb.append("Emergency consultations are available 24/7\n");
+        } else {
+            sb.append("Demo mode: All bookings are simulated\n");
+        }
+        
+        return sb.toString();
     }
     
-    private void bookRegularConsultation() {
+    private void bookRegularConsultation(TeleconsultationService teleconsultService) {
         TeleconsultationService.ConsultationBooking booking = new TeleconsultationService.ConsultationBooking();
         booking.patientId = "demo_patient";
         booking.patientName = patientName;
@@ -623,24 +832,35 @@ public class Main {
         booking.symptoms = "Heart rate monitoring concerns";
         booking.contactPhone = "+1234567890";
         
-        teleconsultService.bookConsultation(booking).thenAccept(result -> {
+        // The backend books a specific slot; take the earliest free one with a cardiologist
+        teleconsultService.bookEarliestConsultation(booking, "cardi", 7).whenComplete((result, ex) -> {
             SwingUtilities.invokeLater(() -> {
-                if (result.success) {
-                    JOptionPane.showMessageDialog(frame, 
-                        "Consultation booked successfully!\n" +
-                        "Booking ID: " + result.bookingId + "\n" +
-                        "Confirmation: " + result.confirmationNumber,
+                if (ex != null) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(frame, "Booking failed: " + cause.getMessage(), 
+                        "Booking Error", JOptionPane.ERROR_MESSAGE);
+                    log("❌ Regular teleconsultation failed: " + cause.getMessage());
+                } else if (result.success) {
+                    StringBuilder message = new StringBuilder("Consultation booked successfully!\n");
+                    message.append("Booking ID: ").append(result.bookingId).append("\n");
+                    if (result.appointmentTime != null) {
+                        message.append("Time: ").append(result.appointmentTime.format(DateTimeFormatter.ofPattern("MMM dd, yyyy HH:mm"))).append("\n");
+                    }
+                    if (result.confirmationNumber != null) {
+                        message.append("Confirmation: ").append(result.confirmationNumber);
+                    }
+                    JOptionPane.showMessageDialog(frame, message.toString(),
                         "Booking Confirmed", JOptionPane.INFORMATION_MESSAGE);
                     log("✅ Regular teleconsultation booked: " + result.bookingId);
                 } else {
-                    JOptionPane.showMessageDialog(frame, "Booking failed: " + result.message, 
+                    JOptionPane.showMessageDialog(frame, result.message, 
                         "Booking Error", JOptionPane.ERROR_MESSAGE);
                 }
             });
         });
     }
     
-    private void bookEmergencyConsultation() {
+    private void bookEmergencyConsultation(TeleconsultationService teleconsultService) {
         TeleconsultationService.EmergencyConsultationRequest request = new TeleconsultationService.EmergencyConsultationRequest();
         request.patientId = "demo_patient";
         request.patientName = patientName;
@@ -673,32 +893,44 @@ public class Main {
         if (isMonitoring) return;
         
         isMonitoring = true;
-        scheduler = Executors.newSingleThreadScheduledExecutor();
-        Random rnd = new Random();
         
         // Update UI state
         startBtn.setEnabled(false);
         stopBtn.setEnabled(true);
         updateStatus("🟢 Monitoring Active", SECONDARY_GREEN);
         
-        scheduler.scheduleAtFixedRate(() -> {
-            // Generate realistic heart rate data
-            int baseHR = 70;
-            int variation = rnd.nextInt(30) - 15; // +/- 15 BPM variation
-            int hr = Math.max(50, Math.min(150, baseHR + variation));
+        // The UI is a front end to the same loop the headless agent runs; alerts are shown
+        // here rather than sent, so the agent's SMS and report actions are off
+        MonitoringAgent.Config config = new MonitoringAgent.Config();
+        config.patientName = patientName;
+        config.patientLocation = patientLocation;
+        config.useGoogleFit = false;
+        config.smsAlerts = false;
+        config.incidentReports = false;
+        config.alertCooldownMillis = 0;
+        config.profileDirectory = PROFILE_DIRECTORY;
+        AtomicReference<MonitoringAgent> self = new AtomicReference<>();
+        MonitoringAgent agent = new MonitoringAgent(config, new MonitoringAgent.Listener() {
+            @Override
+            public void onReading(int heartRate, long sampledAtNanos) {
+                // Read on the agent's thread, which is the only one updating the profile
+                HeartRateProfile profile = self.get().getProfile();
+                String percentiles = "p5/p50/p95  resting " + HeartRateProfile.percentiles(profile.getResting())
+                    + "  ·  active " + HeartRateProfile.percentiles(profile.getActive());
+                SwingUtilities.invokeLater(() -> {
+                    updateHeartRate(heartRate, percentiles);
+                    chartPanel.addDataPoint(heartRate, sampledAtNanos);
+                });
+            }
             
-            SwingUtilities.invokeLater(() -> {
-                updateHeartRate(hr);
-                chartPanel.addDataPoint(hr);
-                
-                // Check for anomalies
-                if (hr >= 120) {
-                    emergencyAlert("⚠️ High Heart Rate Detected: " + hr + " BPM");
-                } else if (hr <= 50) {
-                    emergencyAlert("⚠️ Low Heart Rate Detected: " + hr + " BPM");
-                }
-            });
-        }, 0, 2, TimeUnit.SECONDS);
+            @Override
+            public void onAlert(EmergencySMSService.EmergencyType type, int heartRate, String message) {
+                SwingUtilities.invokeLater(() -> emergencyAlert(message));
+            }
+        });
+        self.set(agent);
+        monitoringAgent = agent;
+        agent.start();
         
         log("▶️ Heart rate monitoring started");
     }
@@ -708,9 +940,9 @@ public class Main {
         
         isMonitoring = false;
         
-        if (scheduler != null) {
-            scheduler.shutdownNow();
-            scheduler = null;
+        if (monitoringAgent != null) {
+            // Saves the profile; the closed agent still answers for its session's statistics
+            monitoringAgent.close();
         }
         
         // Update UI state
@@ -723,7 +955,7 @@ public class Main {
             // After stopping, do not generate a session report
     }
 
-    private void generateSessionReportAndShow() {
+    private void generateSessionReportAndShow(IncidentReportService reportService) {
         // Build incident data for the monitoring session
         int triggerHr = lastReadings.isEmpty() ? 0 : lastReadings.get(lastReadings.size() - 1);
         IncidentReportService.IncidentData incidentData = new IncidentReportService.IncidentData(
@@ -736,6 +968,10 @@ public class Main {
         incidentData.setLocation(patientLocation);
         // Copy recent history
         incidentData.setHeartRateHistory(new ArrayList<>(lastReadings));
+        if (monitoringAgent != null) {
+            incidentData.setSessionStats(monitoringAgent.getSessionStats().snapshot());
+            incidentData.setHeartRateProfile(monitoringAgent.getProfile().copy());
+        }
         incidentData.addTimelineEvent("Monitoring session stopped");
         incidentData.addResponseAction("Session ended by user");
 
@@ -814,9 +1050,10 @@ public class Main {
         dialog.setVisible(true);
     }
     
-    private void updateHeartRate(int hr) {
+    private void updateHeartRate(int hr, String percentiles) {
         lastReadings.add(hr);
         if (lastReadings.size() > 50) lastReadings.remove(0);
+        percentileLabel.setText(percentiles);
         
         // Animate heart rate update
         String newText = hr + " BPM";
@@ -896,41 +1133,115 @@ public class Main {
         log("ALERT: " + msg);
     }
 
-    private void bookTeleconsult() {
-        try {
-            URL url = new URL("http://localhost:8081/api/teleconsult/book");
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setDoOutput(true);
-            conn.setRequestProperty("Content-Type", "application/json");
-            String patientId = System.getProperty("user.name", "demo");
-            long incidentTime = System.currentTimeMillis();
-            String description = "Triggered from desktop UI";
-            String json = "{" +
-                    "\"patientId\":\"" + escape(patientId) + "\"," +
-                    "\"incidentTime\":" + incidentTime + "," +
-                    "\"description\":\"" + escape(description) + "\"}";
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(json.getBytes(StandardCharsets.UTF_8));
+    private void showDiagnosticsDialog() {
+        JDialog dialog = new JDialog(frame, "HeartSafe Diagnostics", false);
+        dialog.setSize(820, 420);
+        dialog.setLocationRelativeTo(frame);
+        
+        JTextArea metricsArea = new JTextArea();
+        metricsArea.setEditable(false);
+        metricsArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        metricsArea.setBorder(new EmptyBorder(10, 10, 10, 10));
+        
+        Runnable refresh = () -> metricsArea.setText(UiMetrics.format(collectDiagnostics()));
+        refresh.run();
+        Timer refreshTimer = new Timer(1000, e -> refresh.run());
+        refreshTimer.start();
+        
+        JButton resetBtn = new JButton("Reset");
+        JButton exportBtn = new JButton("Export...");
+        JButton closeBtn = new JButton("Close");
+        resetBtn.addActionListener(e -> {
+            uiMetrics.reset();
+            edtWatchdog.getProbeDelays().reset();
+            refresh.run();
+        });
+        exportBtn.addActionListener(e -> {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setSelectedFile(new File("heartsafe-diagnostics-" + System.currentTimeMillis() + ".txt"));
+            if (chooser.showSaveDialog(dialog) == JFileChooser.APPROVE_OPTION) {
+                Path target = chooser.getSelectedFile().toPath();
+                List<LatencyHistogram> snapshot = collectDiagnostics();
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        UiMetrics.export(target, snapshot);
+                        SwingUtilities.invokeLater(() -> log("📊 Diagnostics exported to " + target));
+                    } catch (Exception ex) {
+                        SwingUtilities.invokeLater(() -> log("❌ Diagnostics export failed: " + ex.getMessage()));
+                    }
+                });
             }
-            int code = conn.getResponseCode();
-            String resp = new String(conn.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
-            log("Teleconsult response (" + code + "): " + resp);
-        } catch (Exception ex) {
-            log("Teleconsult failed: " + ex.getMessage());
+        });
+        closeBtn.addActionListener(e -> dialog.dispose());
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                refreshTimer.stop();
+            }
+        });
+        
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.add(resetBtn);
+        buttons.add(exportBtn);
+        buttons.add(closeBtn);
+        
+        dialog.setLayout(new BorderLayout());
+        dialog.add(new JScrollPane(metricsArea), BorderLayout.CENTER);
+        dialog.add(buttons, BorderLayout.SOUTH);
+        dialog.setVisible(true);
+    }
+    
+    /**
+     * UI metrics, EDT probe delays and backend call latencies, in display order
+     */
+    private List<LatencyHistogram> collectDiagnostics() {
+        List<LatencyHistogram> histograms = new ArrayList<>(uiMetrics.getHistograms());
+        histograms.add(1, edtWatchdog.getProbeDelays());
+        TeleconsultationService teleconsultService = teleconsult.getNow();
+        if (teleconsultService != null) {
+            histograms.addAll(teleconsultService.getLatencyHistograms().values());
         }
+        return histograms;
     }
 
-    private static String escape(String s) { return s.replace("\"", "'"); }
+    private void bookTeleconsult() {
+        TeleconsultationService.ConsultationBooking booking = new TeleconsultationService.ConsultationBooking();
+        booking.patientId = System.getProperty("user.name", "demo");
+        booking.patientName = patientName;
+        booking.reason = "Triggered from desktop UI";
+        // Runs on the service's executor with connect/socket timeouts; only the result comes back to the EDT
+        teleconsult.get().thenCompose(service -> service.bookEarliestConsultation(booking, "cardi", 7)).whenComplete((result, ex) -> SwingUtilities.invokeLater(() -> {
+            if (ex != null) {
+                log("Teleconsult failed: " + ex.getMessage());
+            } else if (result.success) {
+                log("Teleconsult booked: " + result.bookingId);
+            } else {
+                log("Teleconsult failed: " + result.message);
+            }
+        }));
+    }
 
     private void log(String s) {
-        String ts = new SimpleDateFormat("HH:mm:ss").format(new Date());
-        logArea.append("[" + ts + "] " + s + "\n");
-        logArea.setCaretPosition(logArea.getDocument().getLength());
+        activityLog.append(s);
     }
 
     private void shutdown() {
+        // Closes the agent, which saves the heart rate profile
         stopMonitoring();
+        IncidentReportService reportService = reports.getNow();
+        if (reportService != null) {
+            reportService.close();
+        }
+        TeleconsultationService teleconsultService = teleconsult.getNow();
+        if (teleconsultService != null) {
+            teleconsultService.close();
+        }
+        if (edtWatchdog != null) {
+            edtWatchdog.close();
+        }
+        if (activityLog != null) {
+            activityLog.close();
+        }
     }
 
     // Modern Button Class with animations and styling
@@ -1011,6 +1322,8 @@ public class Main {
     class HeartRateChart extends JPanel {
         private List<Integer> dataPoints = new ArrayList<>();
         private final int MAX_POINTS = 50;
+        // Earliest reading not yet on screen (System.nanoTime), 0 if none
+        private long oldestUnpaintedSample;
         
         public HeartRateChart() {
             setBackground(SURFACE_WHITE);
@@ -1018,15 +1331,45 @@ public class Main {
         }
         
         public void addDataPoint(int heartRate) {
+            addDataPoint(heartRate, System.nanoTime());
+        }
+        
+        /**
+         * @param sampledAtNanos System.nanoTime() when the reading was taken, for sample-to-pixel latency
+         */
+        public void addDataPoint(int heartRate, long sampledAtNanos) {
             dataPoints.add(heartRate);
             if (dataPoints.size() > MAX_POINTS) {
                 dataPoints.remove(0);
             }
+            if (oldestUnpaintedSample == 0) {
+                oldestUnpaintedSample = sampledAtNanos;
+            }
             repaint();
         }
         
         @Override
         protected void paintComponent(Graphics g) {
+            long start = System.nanoTime();
+            try {
+                paintChart(g);
+            } finally {
+                long end = System.nanoTime();
+                if (uiMetrics != null) {
+                    uiMetrics.getChartRepaint().record(end - start);
+                    if (oldestUnpaintedSample != 0) {
+                        uiMetrics.getSampleToPixel().record(end - oldestUnpaintedSample);
+                    }
+                }
+                if (oldestUnpaintedSample != 0 && !firstReadingShown) {
+                    firstReadingShown = true;
+                    SwingUtilities.invokeLater(Main.this::firstReadingDisplayed);
+                }
+                oldestUnpaintedSample = 0;
+            }
+        }
+        
+        private void paintChart(Graphics g) {
             super.paintComponent(g);
             Graphics2D g2d = (Graphics2D) g.create();
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
@@ -0,0 +1,376 @@
+package com.heartsafe.desktop;
+
+import com.heartsafe.shared.models.ReadingBatchCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Heart rate monitoring loop without any UI
+ * Samples heart rate (Google Fit when available, simulated otherwise), checks it against the
+ * alert thresholds and, per configuration, sends SMS alerts, files an incident report and books
+ * an emergency teleconsultation. Nothing here touches AWT or Swing, so it runs headless on edge
+ * boxes via {@link #main}; the desktop UI drives the same loop through a {@link Listener}.
+ * Services are created on first use so the agent starts without loading Twilio, PDFBox or HttpClient.
+ */
+public class MonitoringAgent implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(MonitoringAgent.class.getName());
+
+    private static final int HISTORY_SIZE = 50;
+    // Batches kept for retry while the backend is unreachable; the oldest is dropped beyond this
+    private static final int MAX_PENDING_UPLOADS = 120;
+
+    private final Config config;
+    private final Listener listener;
+    private final ScheduledExecutorService scheduler;
+    private final Random random = new Random();
+    // Only touched on the scheduler thread
+    private final Deque<Integer> history = new ArrayDeque<>(HISTORY_SIZE);
+    private final SessionStats sessionStats = new SessionStats();
+    private final HeartRateProfile profile;
+    private volatile boolean profileLoaded;
+    private long lastAlertAt;
+    // Reading upload state, only touched on the scheduler thread
+    private final long[] uploadTimestamps;
+    private final int[] uploadHeartRates;
+    private int uploadCount;
+    private final Deque<byte[]> pendingUploads = new ArrayDeque<>();
+    private boolean uploadInFlight;
+
+    private GoogleFitServiceDemo googleFitService;
+    private EmergencySMSService smsService;
+    private IncidentReportService reportService;
+    private TeleconsultationService teleconsultService;
+    private volatile boolean googleFitReady;
+
+    /**
+     * Callbacks for a front end; invoked on the agent's thread
+     */
+    public interface Listener {
+        default void onReading(int heartRate, long sampledAtNanos) {
+        }
+
+        default void onAlert(EmergencySMSService.EmergencyType type, int heartRate, String message) {
+        }
+
+        default void onLog(String message) {
+        }
+    }
+
+    public MonitoringAgent(Config config, Listener listener) {
+        this.config = config;
+        this.listener = listener;
+        this.profile = new HeartRateProfile(config.patientId);
+        int batchSize = config.uploadReadings ? config.uploadBatchSize : 0;
+        this.uploadTimestamps = new long[batchSize];
+        this.uploadHeartRates = new int[batchSize];
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "monitoring-agent");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Run headless: {@code MonitoringAgent [config.properties]}
+     */
+    public static void main(String[] args) throws Exception {
+        long startNanos = System.nanoTime();
+        System.setProperty("java.awt.headless", "true");
+        Config config = args.length > 0 ? Config.load(Paths.get(args[0])) : new Config();
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        MonitoringAgent agent = new MonitoringAgent(config, new Listener() {
+            @Override
+            public void onAlert(EmergencySMSService.EmergencyType type, int heartRate, String message) {
+                LOGGER.warning(message);
+            }
+
+            @Override
+            public void onLog(String message) {
+                LOGGER.info(message);
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            agent.close();
+            stopped.countDown();
+        }, "monitoring-agent-shutdown"));
+        agent.start();
+        LOGGER.info("HeartSafe agent started in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)
+            + " ms for " + config.patientName);
+        stopped.await();
+    }
+
+    public void start() {
+        if (config.useGoogleFit) {
+            googleFitService = new GoogleFitServiceDemo();
+            googleFitService.initialize().thenAccept(success -> {
+                googleFitReady = success;
+                listener.onLog(success ? "Google Fit connected" : "Google Fit unavailable - using simulated readings");
+            });
+        }
+        scheduler.execute(this::loadProfile);
+        if (config.smsAlerts) {
+            // Twilio setup happens off the startup path, ready before the first alert in practice
+            scheduler.execute(this::sms);
+        }
+        scheduler.scheduleAtFixedRate(this::sample, 0, config.sampleIntervalMillis, TimeUnit.MILLISECONDS);
+        listener.onLog("Heart rate monitoring started");
+    }
+
+    public SessionStats getSessionStats() {
+        return sessionStats;
+    }
+
+    public HeartRateProfile getProfile() {
+        return profile;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (profileLoaded && config.profileDirectory != null) {
+            try {
+                profile.save(config.profileDirectory);
+            } catch (IOException e) {
+                LOGGER.warning("Could not save heart rate profile: " + e.getMessage());
+            }
+        }
+        if (reportService != null) {
+            reportService.close();
+        }
+        if (teleconsultService != null) {
+            teleconsultService.close();
+        }
+    }
+
+    private void sample() {
+        try {
+            int hr = readHeartRate();
+            long sampledAt = System.nanoTime();
+            if (history.size() == HISTORY_SIZE) history.removeFirst();
+            history.addLast(hr);
+            long now = System.currentTimeMillis();
+            sessionStats.add(hr, now);
+            profile.add(hr);
+            if (config.uploadReadings) {
+                bufferUpload(hr, now);
+            }
+            listener.onReading(hr, sampledAt);
+
+            if (hr >= config.highBpm) {
+                alert(EmergencySMSService.EmergencyType.HIGH_HEART_RATE, hr, "⚠️ High Heart Rate Detected: " + hr + " BPM");
+            } else if (hr <= config.lowBpm) {
+                alert(EmergencySMSService.EmergencyType.LOW_HEART_RATE, hr, "⚠️ Low Heart Rate Detected: " + hr + " BPM");
+            }
+        } catch (RuntimeException e) {
+            // Keep the schedule alive; an exception would cancel all later samples
+            LOGGER.warning("Heart rate sample failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Collect readings into primitive arrays and encode each full batch once, so nothing is
+     * allocated per reading and a batch is not re-encoded when its upload is retried
+     */
+    private void bufferUpload(int hr, long atMillis) {
+        uploadTimestamps[uploadCount] = atMillis;
+        uploadHeartRates[uploadCount] = hr;
+        if (++uploadCount < uploadTimestamps.length) return;
+
+        if (pendingUploads.size() == MAX_PENDING_UPLOADS) {
+            pendingUploads.removeFirst();
+            LOGGER.warning("Reading upload backlog full - dropped the oldest batch");
+        }
+        pendingUploads.addLast(ReadingBatchCodec.encode(config.patientId, uploadTimestamps, uploadHeartRates, uploadCount));
+        uploadCount = 0;
+        sendNextUpload();
+    }
+
+    private void sendNextUpload() {
+        if (uploadInFlight || pendingUploads.isEmpty()) return;
+        byte[] batch = pendingUploads.peekFirst();
+        uploadInFlight = true;
+        teleconsult().uploadReadings(batch).whenComplete((ok, ex) -> scheduler.execute(() -> {
+            uploadInFlight = false;
+            if (Boolean.TRUE.equals(ok)) {
+                pendingUploads.remove(batch);
+                sendNextUpload();
+            }
+            // On failure the batch stays queued and is retried when the next one is ready
+        }));
+    }
+
+    private void loadProfile() {
+        if (config.profileDirectory == null) return;
+        try {
+            profile.merge(HeartRateProfile.load(config.profileDirectory, config.patientId));
+            profileLoaded = true;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warning("Could not load heart rate profile: " + e.getMessage());
+        }
+    }
+
+    private int readHeartRate() {
+        if (googleFitReady) {
+            Integer hr = googleFitService.getLatestHeartRate().join();
+            if (hr != null) return hr;
+        }
+        int variation = random.nextInt(30) - 15; // +/- 15 BPM variation
+        return Math.max(50, Math.min(150, 70 + variation));
+    }
+
+    private void alert(EmergencySMSService.EmergencyType type, int hr, String message) {
+        long now = System.currentTimeMillis();
+        if (lastAlertAt != 0 && now - lastAlertAt < config.alertCooldownMillis) return;
+        lastAlertAt = now;
+        listener.onAlert(type, hr, message);
+
+        IncidentReportService.IncidentData incident = new IncidentReportService.IncidentData(
+            config.patientName, LocalDateTime.now(), type.name(), hr);
+        incident.setLocation(config.patientLocation);
+        incident.setHeartRateHistory(new ArrayList<>(history));
+        incident.setSessionStats(sessionStats.snapshot());
+        incident.setHeartRateProfile(profile.copy());
+        incident.addTimelineEvent(message);
+
+        CompletableFuture<Void> response = CompletableFuture.completedFuture(null);
+        if (config.smsAlerts) {
+            response = sms().sendEmergencyAlert(type, hr, config.patientName, config.patientLocation)
+                .thenAccept(result -> {
+                    incident.setSmsAlertResult(result);
+                    incident.addResponseAction("SMS alert: " + result.getSummary());
+                    listener.onLog("SMS alert sent: " + result.getSummary());
+                });
+        }
+        if (config.emergencyTeleconsult) {
+            TeleconsultationService.EmergencyConsultationRequest request = new TeleconsultationService.EmergencyConsultationRequest();
+            request.patientId = config.patientId;
+            request.patientName = config.patientName;
+            request.emergencyType = type.name();
+            request.currentHeartRate = hr;
+            request.symptoms = message;
+            request.location = config.patientLocation;
+            response = response.thenCompose(v -> teleconsult().bookEmergencyConsultation(request))
+                .thenAccept(result -> {
+                    String outcome = result.success ? "booked " + result.bookingId : "failed: " + result.message;
+                    incident.addResponseAction("Emergency teleconsultation " + outcome);
+                    listener.onLog("Emergency teleconsultation " + outcome);
+                });
+        }
+        if (config.incidentReports) {
+            response = response.thenCompose(v -> reports().generateIncidentReport(incident))
+                .thenAccept(report -> listener.onLog("Incident report generated: " + report.getFilename()));
+        }
+        response.exceptionally(ex -> {
+            listener.onLog("Emergency response failed: " + ex.getMessage());
+            return null;
+        });
+    }
+
+    private synchronized EmergencySMSService sms() {
+        if (smsService == null) {
+            smsService = new EmergencySMSService();
+            for (String contact : config.contacts) {
+                String[] parts = contact.split(",", 3);
+                if (parts.length == 3) {
+                    smsService.addEmergencyContact(parts[0].trim(), parts[1].trim(), parts[2].trim());
+                } else {
+                    LOGGER.warning("Ignoring malformed contact entry: " + contact);
+                }
+            }
+        }
+        return smsService;
+    }
+
+    private synchronized IncidentReportService reports() {
+        if (reportService == null) {
+            reportService = new IncidentReportService();
+        }
+        return reportService;
+    }
+
+    private synchronized TeleconsultationService teleconsult() {
+        if (teleconsultService == null) {
+            teleconsultService = new TeleconsultationService();
+        }
+        return teleconsultService;
+    }
+
+    /**
+     * Agent settings; loaded from a properties file for headless runs
+     */
+    public static class Config {
+        public String patientId = System.getProperty("user.name", "demo");
+        public String patientName = "Demo Patient";
+        public String patientLocation = "Home";
+        public long sampleIntervalMillis = 2000;
+        public int highBpm = 120;
+        public int lowBpm = 50;
+        public long alertCooldownMillis = TimeUnit.MINUTES.toMillis(5);
+        public boolean useGoogleFit = true;
+        public boolean smsAlerts = true;
+        public boolean incidentReports = true;
+        public boolean emergencyTeleconsult = false;
+        // Where the patient's heart rate profile is kept across runs; null to not persist it
+        public Path profileDirectory = Paths.get("profiles");
+        // Send readings to the backend in batches of uploadBatchSize
+        public boolean uploadReadings = false;
+        public int uploadBatchSize = 30;
+        // "name,phone,relationship" entries added to the SMS contacts
+        public List<String> contacts = new ArrayList<>();
+
+        /**
+         * Read heartsafe.agent.* settings from a properties file. Other heartsafe.* and twilio.*
+         * entries become system properties, so the services pick up backend URL, HTTP and SMS
+         * settings from the same file.
+         */
+        public static Config load(Path file) throws IOException {
+            Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(file)) {
+                props.load(in);
+            }
+            for (String name : props.stringPropertyNames()) {
+                if ((name.startsWith("heartsafe.") && !name.startsWith("heartsafe.agent.")) || name.startsWith("twilio.")) {
+                    System.setProperty(name, props.getProperty(name));
+                }
+            }
+
+            Config config = new Config();
+            config.patientId = props.getProperty("heartsafe.agent.patientId", config.patientId);
+            config.patientName = props.getProperty("heartsafe.agent.patientName", config.patientName);
+            config.patientLocation = props.getProperty("heartsafe.agent.location", config.patientLocation);
+            config.sampleIntervalMillis = Long.parseLong(props.getProperty("heartsafe.agent.sampleIntervalMs", String.valueOf(config.sampleIntervalMillis)));
+            config.highBpm = Integer.parseInt(props.getProperty("heartsafe.agent.highBpm", String.valueOf(config.highBpm)));
+            config.lowBpm = Integer.parseInt(props.getProperty("heartsafe.agent.lowBpm", String.valueOf(config.lowBpm)));
+            config.alertCooldownMillis = Long.parseLong(props.getProperty("heartsafe.agent.alertCooldownMs", String.valueOf(config.alertCooldownMillis)));
+            config.useGoogleFit = Boolean.parseBoolean(props.getProperty("heartsafe.agent.googleFit", String.valueOf(config.useGoogleFit)));
+            config.smsAlerts = Boolean.parseBoolean(props.getProperty("heartsafe.agent.smsAlerts", String.valueOf(config.smsAlerts)));
+            config.incidentReports = Boolean.parseBoolean(props.getProperty("heartsafe.agent.incidentReports", String.valueOf(config.incidentReports)));
+            config.profileDirectory = Paths.get(props.getProperty("heartsafe.agent.profileDir", config.profileDirectory.toString()));
+            config.emergencyTeleconsult = Boolean.parseBoolean(props.getProperty("heartsafe.agent.emergencyTeleconsult", String.valueOf(config.emergencyTeleconsult)));
+            config.uploadReadings = Boolean.parseBoolean(props.getProperty("heartsafe.agent.uploadReadings", String.valueOf(config.uploadReadings)));
+            config.uploadBatchSize = Integer.parseInt(props.getProperty("heartsafe.agent.uploadBatchSize", String.valueOf(config.uploadBatchSize)));
+            for (int i = 1; props.getProperty("heartsafe.agent.contact." + i) != null; i++) {
+                config.contacts.add(props.getProperty("heartsafe.agent.contact." + i));
+            }
+            return config;
+        }
+    }
+}
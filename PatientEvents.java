@@ -0,0 +1,214 @@
+package com.heartsafe.backend;
+
+import com.heartsafe.shared.models.HealthReading;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Live readings and alerts per patient, pushed to subscribers as server-sent events
+ * Publishing never blocks on a client: each subscriber has a bounded ring of readings and a
+ * small alert queue, drained by its own (virtual) thread. A slow client loses its oldest
+ * readings, and is told how many with a "dropped" event; alerts are only dropped if more than
+ * ALERT_CAPACITY pile up. Events:
+ * <pre>
+ *   event: reading   data: {"timestamp":...,"heartRate":...}
+ *   event: alert     data: {"type":"HIGH_HEART_RATE","timestamp":...,"heartRate":...}
+ *   event: dropped   data: {"readings":...}
+ * </pre>
+ * A comment line is sent when idle so dead connections are noticed.
+ */
+public class PatientEvents {
+    private static final int ALERT_CAPACITY = 32;
+    private static final long HEARTBEAT_MILLIS = 15_000;
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Map<String, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final LongAdder droppedReadings = new LongAdder();
+    private final int maxSubscribers;
+    private final int readingCapacity;
+
+    /**
+     * @param readingCapacity readings buffered per subscriber before the oldest are dropped
+     */
+    public PatientEvents(int maxSubscribers, int readingCapacity) {
+        this.maxSubscribers = maxSubscribers;
+        this.readingCapacity = readingCapacity;
+    }
+
+    public void publishReading(String patientId, long timestampMillis, int heartRate) {
+        List<Subscriber> list = subscribers.get(patientId);
+        if (list == null) return;
+        for (Subscriber subscriber : list) {
+            subscriber.offerReading(timestampMillis, heartRate);
+        }
+    }
+
+    public void publishAlert(String patientId, String type, long timestampMillis, int heartRate) {
+        List<Subscriber> list = subscribers.get(patientId);
+        if (list == null) return;
+        String event = "event: alert\ndata: {\"type\":\"" + type + "\",\"timestamp\":" + timestampMillis
+            + ",\"heartRate\":" + heartRate + "}\n\n";
+        for (Subscriber subscriber : list) {
+            subscriber.offerAlert(event);
+        }
+    }
+
+    /**
+     * Reserve a subscriber slot; false if the server is at its subscriber limit
+     */
+    public boolean tryReserve() {
+        while (true) {
+            int count = subscriberCount.get();
+            if (count >= maxSubscribers) return false;
+            if (subscriberCount.compareAndSet(count, count + 1)) return true;
+        }
+    }
+
+    /**
+     * Stream a patient's events to the exchange on the calling thread until the client goes away.
+     * Requires a slot from {@link #tryReserve}, which is released on return.
+     * @param latest sent first so the client has a value straight away; may be null
+     */
+    public void stream(HttpExchange exchange, String patientId, HealthReading latest) throws IOException {
+        Subscriber subscriber = new Subscriber(readingCapacity);
+        subscribers.computeIfAbsent(patientId, id -> new CopyOnWriteArrayList<>()).add(subscriber);
+        try {
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            StringBuilder events = new StringBuilder("retry: 5000\n\n");
+            if (latest != null) {
+                appendReading(events, latest.timestamp, latest.heartRate);
+            }
+            out.write(events.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            while (true) {
+                events.setLength(0);
+                if (!subscriber.drainTo(events, HEARTBEAT_MILLIS)) {
+                    out.write(HEARTBEAT);
+                } else {
+                    out.write(events.toString().getBytes(StandardCharsets.UTF_8));
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            subscribers.computeIfPresent(patientId, (id, list) -> {
+                list.remove(subscriber);
+                return list.isEmpty() ? null : list;
+            });
+            subscriberCount.decrementAndGet();
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    /**
+     * Readings dropped across all subscribers because a client fell behind
+     */
+    public long getDroppedReadingCount() {
+        return droppedReadings.sum();
+    }
+
+    private static void appendReading(StringBuilder events, long timestampMillis, int heartRate) {
+        events.append("event: reading\ndata: {\"timestamp\":").append(timestampMillis)
+            .append(",\"heartRate\":").append(heartRate).append("}\n\n");
+    }
+
+    /**
+     * Per-client buffers; a ReentrantLock rather than synchronized so waiting does not pin a carrier thread
+     */
+    private class Subscriber {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition ready = lock.newCondition();
+        private final long[] timestamps;
+        private final int[] heartRates;
+        private int head;
+        private int size;
+        private long dropped;
+        private final ArrayDeque<String> alerts = new ArrayDeque<>();
+
+        Subscriber(int capacity) {
+            timestamps = new long[capacity];
+            heartRates = new int[capacity];
+        }
+
+        void offerReading(long timestampMillis, int heartRate) {
+            lock.lock();
+            try {
+                if (size == timestamps.length) {
+                    head = (head + 1) % timestamps.length;
+                    size--;
+                    dropped++;
+                    droppedReadings.increment();
+                }
+                int tail = (head + size) % timestamps.length;
+                timestamps[tail] = timestampMillis;
+                heartRates[tail] = heartRate;
+                size++;
+                ready.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void offerAlert(String event) {
+            lock.lock();
+            try {
+                if (alerts.size() == ALERT_CAPACITY) alerts.removeFirst();
+                alerts.addLast(event);
+                ready.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Wait up to timeoutMillis for events and append all pending ones, alerts first
+         * @return false if nothing arrived in time
+         */
+        boolean drainTo(StringBuilder events, long timeoutMillis) throws InterruptedException {
+            lock.lock();
+            try {
+                long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+                while (size == 0 && alerts.isEmpty() && dropped == 0) {
+                    if (remaining <= 0) return false;
+                    remaining = ready.awaitNanos(remaining);
+                }
+                while (!alerts.isEmpty()) {
+                    events.append(alerts.removeFirst());
+                }
+                if (dropped > 0) {
+                    events.append("event: dropped\ndata: {\"readings\":").append(dropped).append("}\n\n");
+                    dropped = 0;
+                }
+                for (; size > 0; size--) {
+                    appendReading(events, timestamps[head], heartRates[head]);
+                    head = (head + 1) % timestamps.length;
+                }
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
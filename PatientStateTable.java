@@ -0,0 +1,293 @@
+package com.heartsafe.backend;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Per-patient monitoring state kept off-heap in fixed-layout records
+ * Each shard is one direct buffer of RECORD_BYTES slots, addressed by an open-addressing
+ * (linear probing) table on the patient id. The id itself is stored in the record, so the table
+ * holds no object per patient and updates allocate nothing; the GC sees one buffer per shard
+ * however many patients are tracked. Shards are locked independently and grow by rehashing.
+ * Patient ids are limited to MAX_ID_CHARS characters.
+ */
+public class PatientStateTable {
+    public static final int NO_ALERT = 0;
+    public static final int HIGH_ALERT = 1;
+    public static final int LOW_ALERT = 2;
+
+    public static final int MAX_ID_CHARS = 64;
+
+    // Record layout
+    private static final int STATUS = 0;
+    private static final int HASH = 4;
+    private static final int LAST_TIMESTAMP = 8;
+    private static final int LAST_ALERT_AT = 16;
+    private static final int READING_COUNT = 24;
+    private static final int LAST_HEART_RATE = 32;
+    private static final int CONSECUTIVE_HIGH = 36;
+    private static final int CONSECUTIVE_LOW = 40;
+    private static final int ALERT_COUNT = 44;
+    private static final int CONTACTS_VERSION = 48;
+    private static final int ID_LENGTH = 52;
+    private static final int ID_CHARS = 56;
+    private static final int RECORD_BYTES = 192;
+
+    private static final int EMPTY = 0;
+    private static final int USED = 1;
+    private static final int DELETED = 2;
+
+    private static final int SHARD_BITS = 4;
+    private static final int INITIAL_SHARD_CAPACITY = 256;
+    private static final double MAX_LOAD = 0.7;
+
+    private final Shard[] shards = new Shard[1 << SHARD_BITS];
+    private final int highBpm;
+    private final int lowBpm;
+    private final int alertAfterReadings;
+    private final long alertCooldownMillis;
+
+    /**
+     * Copy of one patient's record
+     */
+    public static class State {
+        public long lastTimestamp;
+        public int lastHeartRate;
+        public long readingCount;
+        public int consecutiveHigh;
+        public int consecutiveLow;
+        public long lastAlertAt;
+        public int alertCount;
+        public int contactsVersion;
+    }
+
+    /**
+     * @param alertAfterReadings consecutive readings at or beyond a threshold before alerting
+     */
+    public PatientStateTable(int highBpm, int lowBpm, int alertAfterReadings, long alertCooldownMillis) {
+        this.highBpm = highBpm;
+        this.lowBpm = lowBpm;
+        this.alertAfterReadings = alertAfterReadings;
+        this.alertCooldownMillis = alertCooldownMillis;
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(INITIAL_SHARD_CAPACITY);
+        }
+    }
+
+    public static boolean isValidId(String patientId) {
+        return patientId != null && !patientId.isEmpty() && patientId.length() <= MAX_ID_CHARS;
+    }
+
+    /**
+     * Record a reading and run threshold detection
+     * @return NO_ALERT, or HIGH_ALERT / LOW_ALERT when the patient has been past a threshold for
+     *         alertAfterReadings readings and is out of the alert cooldown
+     */
+    public int onReading(String patientId, long timestampMillis, int heartRate) {
+        int hash = hash(patientId);
+        Shard shard = shard(hash);
+        synchronized (shard) {
+            int base = shard.slotFor(patientId, hash, true) * RECORD_BYTES;
+            ByteBuffer buf = shard.buf;
+            buf.putLong(base + READING_COUNT, buf.getLong(base + READING_COUNT) + 1);
+            // Readings replayed out of order or repeated count, but do not move the latest reading
+            // back or advance the threshold run
+            if (timestampMillis <= buf.getLong(base + LAST_TIMESTAMP)) return NO_ALERT;
+            buf.putLong(base + LAST_TIMESTAMP, timestampMillis);
+            buf.putInt(base + LAST_HEART_RATE, heartRate);
+
+            int high = heartRate >= highBpm ? buf.getInt(base + CONSECUTIVE_HIGH) + 1 : 0;
+            int low = heartRate <= lowBpm ? buf.getInt(base + CONSECUTIVE_LOW) + 1 : 0;
+            buf.putInt(base + CONSECUTIVE_HIGH, high);
+            buf.putInt(base + CONSECUTIVE_LOW, low);
+            if (high < alertAfterReadings && low < alertAfterReadings) return NO_ALERT;
+
+            long lastAlertAt = buf.getLong(base + LAST_ALERT_AT);
+            if (lastAlertAt != 0 && timestampMillis - lastAlertAt < alertCooldownMillis) return NO_ALERT;
+            buf.putLong(base + LAST_ALERT_AT, timestampMillis);
+            buf.putInt(base + ALERT_COUNT, buf.getInt(base + ALERT_COUNT) + 1);
+            return high >= alertAfterReadings ? HIGH_ALERT : LOW_ALERT;
+        }
+    }
+
+    /**
+     * Note that a patient's emergency contacts changed
+     * @return the new contacts version
+     */
+    public int bumpContactsVersion(String patientId) {
+        int hash = hash(patientId);
+        Shard shard = shard(hash);
+        synchronized (shard) {
+            int base = shard.slotFor(patientId, hash, true) * RECORD_BYTES;
+            int version = shard.buf.getInt(base + CONTACTS_VERSION) + 1;
+            shard.buf.putInt(base + CONTACTS_VERSION, version);
+            return version;
+        }
+    }
+
+    /**
+     * Copy a patient's state into a caller-owned holder
+     * @return false if the patient is not tracked
+     */
+    public boolean read(String patientId, State into) {
+        int hash = hash(patientId);
+        Shard shard = shard(hash);
+        synchronized (shard) {
+            int slot = shard.slotFor(patientId, hash, false);
+            if (slot < 0) return false;
+            int base = slot * RECORD_BYTES;
+            ByteBuffer buf = shard.buf;
+            into.lastTimestamp = buf.getLong(base + LAST_TIMESTAMP);
+            into.lastHeartRate = buf.getInt(base + LAST_HEART_RATE);
+            into.readingCount = buf.getLong(base + READING_COUNT);
+            into.consecutiveHigh = buf.getInt(base + CONSECUTIVE_HIGH);
+            into.consecutiveLow = buf.getInt(base + CONSECUTIVE_LOW);
+            into.lastAlertAt = buf.getLong(base + LAST_ALERT_AT);
+            into.alertCount = buf.getInt(base + ALERT_COUNT);
+            into.contactsVersion = buf.getInt(base + CONTACTS_VERSION);
+            return true;
+        }
+    }
+
+    /**
+     * Forget patients with no reading since cutoffMillis
+     * @return number of patients removed
+     */
+    public int removeIdle(long cutoffMillis) {
+        int removed = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (int slot = 0; slot < shard.capacity; slot++) {
+                    int base = slot * RECORD_BYTES;
+                    if (shard.buf.getInt(base + STATUS) == USED && shard.buf.getLong(base + LAST_TIMESTAMP) < cutoffMillis) {
+                        shard.buf.putInt(base + STATUS, DELETED);
+                        shard.live--;
+                        removed++;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                size += shard.live;
+            }
+        }
+        return size;
+    }
+
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                bytes += shard.buf.capacity();
+            }
+        }
+        return bytes;
+    }
+
+    private static int hash(String patientId) {
+        if (!isValidId(patientId)) {
+            throw new IllegalArgumentException("patient id must be 1-" + MAX_ID_CHARS + " characters");
+        }
+        int h = patientId.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Shard shard(int hash) {
+        return shards[hash >>> (32 - SHARD_BITS)];
+    }
+
+    /**
+     * One direct buffer of records; all access is under the shard's lock
+     */
+    private static class Shard {
+        ByteBuffer buf;
+        int capacity;
+        int live;
+        // Live plus deleted slots; probing needs some slots to stay empty
+        int occupied;
+
+        Shard(int capacity) {
+            this.capacity = capacity;
+            this.buf = ByteBuffer.allocateDirect(capacity * RECORD_BYTES).order(ByteOrder.nativeOrder());
+        }
+
+        /**
+         * Slot holding the patient, inserting a zeroed record if create is set; -1 if absent
+         */
+        int slotFor(String patientId, int hash, boolean create) {
+            int mask = capacity - 1;
+            int firstDeleted = -1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                int base = slot * RECORD_BYTES;
+                int status = buf.getInt(base + STATUS);
+                if (status == EMPTY) {
+                    if (!create) return -1;
+                    return insert(patientId, hash, firstDeleted >= 0 ? firstDeleted : slot);
+                }
+                if (status == DELETED) {
+                    if (firstDeleted < 0) firstDeleted = slot;
+                } else if (buf.getInt(base + HASH) == hash && idEquals(base, patientId)) {
+                    return slot;
+                }
+            }
+        }
+
+        private int insert(String patientId, int hash, int slot) {
+            if (buf.getInt(slot * RECORD_BYTES + STATUS) == EMPTY) {
+                if (occupied + 1 > capacity * MAX_LOAD) {
+                    rehash();
+                    return slotFor(patientId, hash, true);
+                }
+                occupied++;
+            }
+            int base = slot * RECORD_BYTES;
+            for (int offset = 0; offset < RECORD_BYTES; offset += 8) {
+                buf.putLong(base + offset, 0);
+            }
+            buf.putInt(base + STATUS, USED);
+            buf.putInt(base + HASH, hash);
+            buf.putShort(base + ID_LENGTH, (short) patientId.length());
+            for (int i = 0; i < patientId.length(); i++) {
+                buf.putChar(base + ID_CHARS + 2 * i, patientId.charAt(i));
+            }
+            live++;
+            return slot;
+        }
+
+        private boolean idEquals(int base, String patientId) {
+            if (buf.getShort(base + ID_LENGTH) != patientId.length()) return false;
+            for (int i = 0; i < patientId.length(); i++) {
+                if (buf.getChar(base + ID_CHARS + 2 * i) != patientId.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Copy live records into a new buffer, doubling it unless clearing deleted slots is enough
+         */
+        private void rehash() {
+            int newCapacity = live + 1 > capacity * MAX_LOAD / 2 ? capacity * 2 : capacity;
+            ByteBuffer old = buf;
+            int oldCapacity = capacity;
+            buf = ByteBuffer.allocateDirect(newCapacity * RECORD_BYTES).order(ByteOrder.nativeOrder());
+            capacity = newCapacity;
+            occupied = live;
+            int mask = newCapacity - 1;
+            for (int slot = 0; slot < oldCapacity; slot++) {
+                int from = slot * RECORD_BYTES;
+                if (old.getInt(from + STATUS) != USED) continue;
+                int to = old.getInt(from + HASH) & mask;
+                while (buf.getInt(to * RECORD_BYTES + STATUS) != EMPTY) {
+                    to = (to + 1) & mask;
+                }
+                buf.put(to * RECORD_BYTES, old, from, RECORD_BYTES);
+            }
+        }
+    }
+}
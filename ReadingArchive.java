@@ -0,0 +1,123 @@
+package com.heartsafe.backend;
+
+import com.heartsafe.backend.db.MySql;
+import com.heartsafe.shared.models.ReadingBatchCodec;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Long-term storage of readings in the heart_rate_readings table
+ * Used by WAL compaction: a segment's batches are inserted in one transaction with JDBC
+ * batching, and INSERT IGNORE makes re-archiving a segment after a crash harmless. Also
+ * serves reading queries reaching back past the in-memory window.
+ */
+public class ReadingArchive {
+    private static final int ROWS_PER_STATEMENT_BATCH = 1000;
+
+    private static volatile boolean schemaReady;
+
+    private ReadingArchive() {
+    }
+
+    public static void store(List<byte[]> batches) throws SQLException {
+        if (batches.isEmpty()) return;
+        try (Connection conn = MySql.get()) {
+            createTable(conn);
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT IGNORE INTO heart_rate_readings(patient_id, recorded_at, heart_rate) VALUES(?,?,?)")) {
+                Rows rows = new Rows(ps);
+                for (byte[] batch : batches) {
+                    ReadingBatchCodec.decode(batch, batch.length, rows);
+                    if (rows.failure != null) throw rows.failure;
+                }
+                if (rows.pending > 0) ps.executeBatch();
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Visit a patient's archived readings with fromMillis <= timestamp < toMillis, oldest first
+     * @return number of readings visited
+     */
+    public static int scan(String patientId, long fromMillis, long toMillis, ReadingStore.ReadingVisitor visitor) throws SQLException {
+        try (Connection conn = MySql.get()) {
+            createTable(conn);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT recorded_at, heart_rate FROM heart_rate_readings WHERE patient_id = ? AND recorded_at >= ? AND recorded_at < ? "
+                        + "ORDER BY recorded_at", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // Stream rows; a long range can hold many thousands
+                ps.setFetchSize(Integer.MIN_VALUE);
+                ps.setString(1, patientId);
+                ps.setLong(2, fromMillis);
+                ps.setLong(3, toMillis);
+                int count = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        visitor.reading(rs.getLong(1), rs.getInt(2));
+                        count++;
+                    }
+                }
+                return count;
+            }
+        }
+    }
+
+    private static void createTable(Connection conn) throws SQLException {
+        if (schemaReady) return;
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS heart_rate_readings ("
+                    + "patient_id VARCHAR(64) NOT NULL, "
+                    + "recorded_at BIGINT NOT NULL, "
+                    + "heart_rate SMALLINT NOT NULL, "
+                    + "PRIMARY KEY (patient_id, recorded_at)) ENGINE=InnoDB");
+        }
+        schemaReady = true;
+    }
+
+    /**
+     * Adds decoded readings to the statement batch; the sink cannot throw SQLException, so the
+     * first failure is kept and later readings are skipped
+     */
+    private static class Rows implements ReadingBatchCodec.BatchSink {
+        private final PreparedStatement ps;
+        private String patientId;
+        private int pending;
+        private SQLException failure;
+
+        Rows(PreparedStatement ps) {
+            this.ps = ps;
+        }
+
+        @Override
+        public void begin(String patientId, int count) {
+            this.patientId = patientId;
+        }
+
+        @Override
+        public void reading(long timestampMillis, int heartRate) {
+            if (failure != null) return;
+            try {
+                ps.setString(1, patientId);
+                ps.setLong(2, timestampMillis);
+                ps.setInt(3, heartRate);
+                ps.addBatch();
+                if (++pending == ROWS_PER_STATEMENT_BATCH) {
+                    ps.executeBatch();
+                    pending = 0;
+                }
+            } catch (SQLException e) {
+                failure = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.heartsafe.backend;
+
+import com.heartsafe.shared.models.ReadingBatchCodec;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ingestion of heart rate reading batches from gateways
+ * Binary batches are decoded straight into the {@link ReadingStore} and the
+ * {@link PatientStateTable} through a sink, with no object per reading, and published to
+ * live {@link PatientEvents} subscribers and the {@link CaregiverDashboard}. JSON batches from older gateways are encoded to the
+ * binary form first, so the WAL holds a single format.
+ */
+public class ReadingIngest {
+    private final ReadingStore store;
+    private final PatientStateTable states;
+    private final PatientEvents events;
+    private final CaregiverDashboard dashboard;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder readings = new LongAdder();
+    private final LongAdder outOfOrder = new LongAdder();
+    private final LongAdder alerts = new LongAdder();
+
+    public ReadingIngest(ReadingStore store, PatientStateTable states, PatientEvents events, CaregiverDashboard dashboard) {
+        this.store = store;
+        this.states = states;
+        this.events = events;
+        this.dashboard = dashboard;
+    }
+
+    /**
+     * Check a binary batch without storing anything, before it is written to the WAL
+     * @return number of readings
+     * @throws IllegalArgumentException if the batch is corrupt or its patient id is invalid
+     */
+    public static int validate(byte[] body, int length) {
+        return ReadingBatchCodec.decode(body, length, new ReadingBatchCodec.BatchSink() {
+            @Override
+            public void begin(String patientId, int count) {
+                checkPatientId(patientId);
+            }
+
+            @Override
+            public void reading(long timestampMillis, int heartRate) {
+            }
+        });
+    }
+
+    /**
+     * Ingest a binary batch
+     * @return number of readings
+     * @throws IllegalArgumentException if the batch is corrupt
+     */
+    public int ingest(byte[] body, int length) {
+        return ingest(body, length, true);
+    }
+
+    /**
+     * Ingest a batch recovered from the WAL; threshold state is rebuilt without logging or publishing
+     */
+    public int replay(byte[] body) {
+        return ingest(body, body.length, false);
+    }
+
+    private int ingest(byte[] body, int length, boolean live) {
+        int count = ReadingBatchCodec.decode(body, length, new Sink(live));
+        batches.increment();
+        readings.add(count);
+        return count;
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getReadingCount() {
+        return readings.sum();
+    }
+
+    /**
+     * Readings dropped for not being newer than the newest stored, e.g. a batch replayed by a gateway retry
+     */
+    public long getOutOfOrderCount() {
+        return outOfOrder.sum();
+    }
+
+    /**
+     * Threshold alerts raised by the state table
+     */
+    public long getAlertCount() {
+        return alerts.sum();
+    }
+
+    private static void checkPatientId(String patientId) {
+        if (!PatientStateTable.isValidId(patientId)) {
+            throw new IllegalArgumentException("patient id must be 1-" + PatientStateTable.MAX_ID_CHARS + " characters");
+        }
+    }
+
+    private class Sink implements ReadingBatchCodec.BatchSink {
+        private final boolean live;
+        private String patientId;
+
+        Sink(boolean live) {
+            this.live = live;
+        }
+
+        @Override
+        public void begin(String patientId, int count) {
+            // Checked before any reading is stored, so a bad id rejects the whole batch
+            checkPatientId(patientId);
+            this.patientId = patientId;
+        }
+
+        @Override
+        public void reading(long timestampMillis, int heartRate) {
+            if (!store.append(patientId, timestampMillis, heartRate)) {
+                // A duplicate or late reading; counting it again would skew the threshold runs
+                outOfOrder.increment();
+                return;
+            }
+            int alert = states.onReading(patientId, timestampMillis, heartRate);
+            String alertType = alert == PatientStateTable.HIGH_ALERT ? "HIGH_HEART_RATE"
+                : alert == PatientStateTable.LOW_ALERT ? "LOW_HEART_RATE" : null;
+            dashboard.onReading(patientId, timestampMillis, heartRate, alertType);
+            if (!live) return;
+            events.publishReading(patientId, timestampMillis, heartRate);
+            if (alertType != null) {
+                alerts.increment();
+                System.out.println("Heart rate alert " + alertType + " for patient " + patientId + ": " + heartRate + " BPM");
+                events.publishAlert(patientId, alertType, timestampMillis, heartRate);
+            }
+        }
+    }
+}
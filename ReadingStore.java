@@ -0,0 +1,359 @@
+package com.heartsafe.backend;
+
+import com.heartsafe.shared.models.HealthReading;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory store of recent heart rate readings, compressed Gorilla-style
+ * Each patient's readings are appended to fixed-size byte[] blocks as bit-packed
+ * delta-of-delta timestamps and BPM deltas, each with a short prefix code:
+ * <pre>
+ *   timestamp delta-of-delta (zigzag): '0' = 0, '10' + 7 bits, '110' + 9 bits, '1110' + 12 bits, '1111' + 32 bits
+ *   BPM delta (zigzag):                '0' = 0, '10' + 3 bits, '110' + 6 bits, '111' + 16 bits
+ * </pre>
+ * A block starts with the absolute timestamp (64 bits) and BPM (16 bits). Readings taken every
+ * few seconds with millisecond jitter take about 2 bytes each, against ~20 bytes for a boxed
+ * Integer in a list and far more for a HealthReading. Blocks are append-only, so scans decode a
+ * snapshot of them outside the patient's lock. Readings not newer than the newest one stored for
+ * a patient are dropped, so a retried batch is not stored twice, and whole blocks expire after the
+ * retention period.
+ */
+public class ReadingStore {
+    private static final int BLOCK_BYTES = 1024;
+    private static final int BLOCK_BITS = BLOCK_BYTES * 8;
+    private static final int MAX_ENTRY_BITS = 4 + 32 + 3 + 16;
+    // Rough per-block object overhead (Block fields, array header, deque slot) for memory reporting
+    private static final int BLOCK_OVERHEAD_BYTES = 80;
+    private static final int MAX_BPM = 0x7FFF;
+
+    private final Map<String, Series> patients = new ConcurrentHashMap<>();
+    private final long retentionMillis;
+
+    /**
+     * Receives readings from a scan, oldest first
+     */
+    public interface ReadingVisitor {
+        void reading(long timestampMillis, int heartRate);
+    }
+
+    public ReadingStore(long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+    }
+
+    public long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    /**
+     * @return false if the reading is not newer than the newest one stored for the patient
+     */
+    public boolean append(String patientId, long timestampMillis, int heartRate) {
+        while (true) {
+            int result = patients.computeIfAbsent(patientId, id -> new Series()).append(timestampMillis, heartRate);
+            // A series retired by purgeExpired in the meantime is no longer in the map; retry with a new one
+            if (result != Series.RETIRED) return result == Series.APPENDED;
+        }
+    }
+
+    /**
+     * Newest reading stored for a patient, or null if there is none
+     */
+    public HealthReading latest(String patientId) {
+        Series series = patients.get(patientId);
+        return series == null ? null : series.latest();
+    }
+
+    /**
+     * Visit a patient's readings with fromMillis <= timestamp <= toMillis, oldest first
+     * @return number of readings visited
+     */
+    public int scan(String patientId, long fromMillis, long toMillis, ReadingVisitor visitor) {
+        Series series = patients.get(patientId);
+        return series == null ? 0 : series.scan(fromMillis, toMillis, visitor);
+    }
+
+    /**
+     * Drop blocks whose newest reading is past the retention period, and patients left empty
+     */
+    public void purgeExpired(long nowMillis) {
+        long cutoff = nowMillis - retentionMillis;
+        patients.forEach((patientId, series) -> {
+            if (series.purgeBefore(cutoff)) {
+                patients.remove(patientId, series);
+            }
+        });
+    }
+
+    public int getPatientCount() {
+        return patients.size();
+    }
+
+    public long getSampleCount() {
+        long total = 0;
+        for (Series series : patients.values()) {
+            total += series.getSampleCount();
+        }
+        return total;
+    }
+
+    /**
+     * Bytes held by blocks, including per-block overhead
+     */
+    public long getMemoryBytes() {
+        long total = 0;
+        for (Series series : patients.values()) {
+            total += (long) series.getBlockCount() * (BLOCK_BYTES + BLOCK_OVERHEAD_BYTES);
+        }
+        return total;
+    }
+
+    /**
+     * Bytes of encoded data per reading, not counting unused space in open blocks
+     */
+    public double getEncodedBytesPerSample() {
+        long bits = 0;
+        long samples = 0;
+        for (Series series : patients.values()) {
+            synchronized (series) {
+                for (Block block : series.blocks) {
+                    bits += block.bitPos;
+                    samples += block.count;
+                }
+            }
+        }
+        return samples == 0 ? 0 : bits / 8.0 / samples;
+    }
+
+    /**
+     * e.g. "1200 patients, 3456000 readings, 7.2 MB (2.2 B/reading, 1.9 B encoded)"
+     */
+    public String describe() {
+        long samples = getSampleCount();
+        long bytes = getMemoryBytes();
+        return String.format("%d patients, %d readings, %.1f MB (%.1f B/reading, %.1f B encoded)",
+            getPatientCount(), samples, bytes / (1024.0 * 1024.0),
+            samples == 0 ? 0.0 : (double) bytes / samples, getEncodedBytesPerSample());
+    }
+
+    /**
+     * One patient's blocks, oldest first; the last one is open for appends
+     */
+    private static class Series {
+        static final int APPENDED = 0;
+        static final int OUT_OF_ORDER = 1;
+        static final int RETIRED = 2;
+
+        private final Deque<Block> blocks = new ArrayDeque<>();
+        private long sampleCount;
+        private boolean retired;
+
+        synchronized int append(long timestampMillis, int heartRate) {
+            if (retired) return RETIRED;
+            int bpm = Math.max(0, Math.min(MAX_BPM, heartRate));
+            Block open = blocks.peekLast();
+            // An equal timestamp is a duplicate, e.g. from a gateway retrying a batch
+            if (open != null && timestampMillis <= open.lastTimestamp) return OUT_OF_ORDER;
+            if (open == null || !open.tryAppend(timestampMillis, bpm)) {
+                open = new Block(timestampMillis, bpm);
+                blocks.addLast(open);
+            }
+            sampleCount++;
+            return APPENDED;
+        }
+
+        int scan(long fromMillis, long toMillis, ReadingVisitor visitor) {
+            // Appends only write bits past a block's snapshot, so decoding needs no lock
+            List<BlockView> views = new ArrayList<>();
+            synchronized (this) {
+                for (Block block : blocks) {
+                    if (block.lastTimestamp >= fromMillis && block.firstTimestamp <= toMillis) {
+                        views.add(new BlockView(block.data, block.bitPos, block.count));
+                    }
+                }
+            }
+            int visited = 0;
+            for (BlockView view : views) {
+                visited += view.scan(fromMillis, toMillis, visitor);
+            }
+            return visited;
+        }
+
+        synchronized HealthReading latest() {
+            Block open = blocks.peekLast();
+            if (open == null) return null;
+            HealthReading reading = new HealthReading();
+            reading.timestamp = open.lastTimestamp;
+            reading.heartRate = open.lastHeartRate;
+            return reading;
+        }
+
+        synchronized long getSampleCount() {
+            return sampleCount;
+        }
+
+        synchronized int getBlockCount() {
+            return blocks.size();
+        }
+
+        /**
+         * @return true if the series was left empty and retired
+         */
+        synchronized boolean purgeBefore(long cutoffMillis) {
+            while (!blocks.isEmpty() && blocks.peekFirst().lastTimestamp < cutoffMillis) {
+                sampleCount -= blocks.removeFirst().count;
+            }
+            retired = blocks.isEmpty();
+            return retired;
+        }
+    }
+
+    /**
+     * Fixed-size block being written; fields are guarded by the owning Series
+     */
+    private static class Block {
+        final byte[] data = new byte[BLOCK_BYTES];
+        final long firstTimestamp;
+        int bitPos;
+        int count;
+        long lastTimestamp;
+        long lastDelta;
+        int lastHeartRate;
+
+        Block(long timestampMillis, int bpm) {
+            firstTimestamp = timestampMillis;
+            write(timestampMillis, 64);
+            write(bpm, 16);
+            count = 1;
+            lastTimestamp = timestampMillis;
+            lastHeartRate = bpm;
+        }
+
+        /**
+         * @return false if the block is full or the gap is too large to encode; start a new block
+         */
+        boolean tryAppend(long timestampMillis, int bpm) {
+            if (bitPos + MAX_ENTRY_BITS > BLOCK_BITS) return false;
+            long delta = timestampMillis - lastTimestamp;
+            long dod = zigzag(delta - lastDelta);
+            if (dod >>> 32 != 0) return false;
+
+            if (dod == 0) {
+                write(0, 1);
+            } else if (dod < (1 << 7)) {
+                write(0b10, 2);
+                write(dod, 7);
+            } else if (dod < (1 << 9)) {
+                write(0b110, 3);
+                write(dod, 9);
+            } else if (dod < (1 << 12)) {
+                write(0b1110, 4);
+                write(dod, 12);
+            } else {
+                write(0b1111, 4);
+                write(dod, 32);
+            }
+
+            long diff = zigzag(bpm - lastHeartRate);
+            if (diff == 0) {
+                write(0, 1);
+            } else if (diff < (1 << 3)) {
+                write(0b10, 2);
+                write(diff, 3);
+            } else if (diff < (1 << 6)) {
+                write(0b110, 3);
+                write(diff, 6);
+            } else {
+                write(0b111, 3);
+                write(diff, 16);
+            }
+
+            count++;
+            lastDelta = delta;
+            lastTimestamp = timestampMillis;
+            lastHeartRate = bpm;
+            return true;
+        }
+
+        private void write(long value, int bits) {
+            while (bits > 0) {
+                int free = 8 - (bitPos & 7);
+                int take = Math.min(free, bits);
+                int chunk = (int) (value >>> (bits - take)) & ((1 << take) - 1);
+                data[bitPos >>> 3] |= (byte) (chunk << (free - take));
+                bitPos += take;
+                bits -= take;
+            }
+        }
+    }
+
+    /**
+     * Read-only view of the first count readings of a block
+     */
+    private static class BlockView {
+        private final byte[] data;
+        private final int endBit;
+        private final int count;
+        private int bitPos;
+
+        BlockView(byte[] data, int endBit, int count) {
+            this.data = data;
+            this.endBit = endBit;
+            this.count = count;
+        }
+
+        int scan(long fromMillis, long toMillis, ReadingVisitor visitor) {
+            long timestamp = read(64);
+            int bpm = (int) read(16);
+            long delta = 0;
+            int visited = 0;
+            for (int i = 0; ; ) {
+                if (timestamp > toMillis) break;
+                if (timestamp >= fromMillis) {
+                    visitor.reading(timestamp, bpm);
+                    visited++;
+                }
+                if (++i == count || bitPos >= endBit) break;
+
+                int dodBits = readBit() == 0 ? 0 : readBit() == 0 ? 7 : readBit() == 0 ? 9 : readBit() == 0 ? 12 : 32;
+                delta += dodBits == 0 ? 0 : unzigzag(read(dodBits));
+                timestamp += delta;
+                int diffBits = readBit() == 0 ? 0 : readBit() == 0 ? 3 : readBit() == 0 ? 6 : 16;
+                bpm += diffBits == 0 ? 0 : (int) unzigzag(read(diffBits));
+            }
+            return visited;
+        }
+
+        private int readBit() {
+            int bit = (data[bitPos >>> 3] >>> (7 - (bitPos & 7))) & 1;
+            bitPos++;
+            return bit;
+        }
+
+        private long read(int bits) {
+            long value = 0;
+            while (bits > 0) {
+                int available = 8 - (bitPos & 7);
+                int take = Math.min(available, bits);
+                int chunk = ((data[bitPos >>> 3] & 0xFF) >>> (available - take)) & ((1 << take) - 1);
+                value = (value << take) | chunk;
+                bitPos += take;
+                bits -= take;
+            }
+            return value;
+        }
+    }
+
+    private static long zigzag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static long unzigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+}
@@ -0,0 +1,421 @@
+package com.heartsafe.backend;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log for accepted reading batches
+ * Batches (in the ReadingBatchCodec format) are appended to memory-mapped segment files of a
+ * fixed size as {@code length, CRC32, bytes} records. A single syncer thread group-commits:
+ * once a record is waiting it lets further appends gather for up to the group commit window,
+ * then forces every segment written since the last sync and wakes all waiters, so one fsync
+ * covers many requests. Full or idle segments are sealed; compaction hands a sealed, synced
+ * segment's batches to an {@link Archiver} and, once they are stored, renames the file to mark it
+ * archived. Archived segments are kept until their last write is older than the retention period,
+ * so a restart can rebuild the in-memory window from the log alone.
+ * On startup the retained archived segments and all unarchived ones are replayed (each up to its
+ * first torn or corrupt record), unarchived ones are kept for compaction, and appends continue in
+ * a new segment.
+ */
+public class ReadingWal implements AutoCloseable {
+    private static final String PREFIX = "readings-";
+    private static final String SUFFIX = ".wal";
+    private static final String ARCHIVED_SUFFIX = ".archived";
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long groupCommitNanos;
+    private final long retentionMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pending = lock.newCondition();
+    private final Condition synced = lock.newCondition();
+    // Guarded by lock
+    private Segment current;
+    private final List<Segment> unsynced = new ArrayList<>();
+    private final Deque<Path> sealed = new ArrayDeque<>();
+    private final Deque<Path> archived = new ArrayDeque<>();
+    private long nextSegmentIndex;
+    private long appendedSeq;
+    private long durableSeq;
+    private IOException syncFailure;
+    private boolean closed;
+    private long syncCount;
+    private long syncNanos;
+
+    private final Thread syncer;
+    private final ReentrantLock compaction = new ReentrantLock();
+
+    /**
+     * Receives recovered batches on startup
+     */
+    public interface Replayer {
+        void replay(byte[] batch);
+    }
+
+    /**
+     * Stores a sealed segment's batches durably elsewhere; the segment is marked archived after it returns
+     */
+    public interface Archiver {
+        void archive(List<byte[]> batches) throws Exception;
+    }
+
+    /**
+     * Open the log in directory, replaying what it holds
+     * @param groupCommitMicros how long the syncer waits for more appends before an fsync; 0 syncs at once
+     * @param retentionMillis how long archived segments are kept, and replayed on startup, after their last write
+     */
+    public ReadingWal(Path directory, int segmentBytes, long groupCommitMicros, long retentionMillis, Replayer replayer) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.groupCommitNanos = TimeUnit.MICROSECONDS.toNanos(groupCommitMicros);
+        this.retentionMillis = retentionMillis;
+        Files.createDirectories(directory);
+
+        long now = System.currentTimeMillis();
+        List<Path> existing;
+        try (Stream<Path> files = Files.list(directory)) {
+            existing = files.filter(ReadingWal::isSegmentFile)
+                .sorted(Comparator.comparingLong(ReadingWal::segmentIndex))
+                .toList();
+        }
+        for (Path file : existing) {
+            nextSegmentIndex = Math.max(nextSegmentIndex, segmentIndex(file) + 1);
+            boolean isArchived = file.getFileName().toString().endsWith(ARCHIVED_SUFFIX);
+            // Only the retention window is replayed
+            if (isArchived && isExpired(file, now)) {
+                Files.delete(file);
+                continue;
+            }
+            for (byte[] batch : readSegment(file)) {
+                replayer.replay(batch);
+            }
+            if (isArchived) {
+                archived.addLast(file);
+            } else {
+                sealed.addLast(file);
+            }
+        }
+        current = new Segment(nextSegmentIndex++);
+
+        syncer = new Thread(this::syncLoop, "reading-wal-sync");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+
+    /**
+     * Append a batch and wait until it is on disk
+     * @throws IOException if the log cannot be written or synced
+     */
+    public void appendDurably(byte[] batch, int length) throws IOException, InterruptedException {
+        awaitDurable(append(batch, length));
+    }
+
+    /**
+     * Append a batch without waiting for it to be synced
+     * @return sequence number to pass to {@link #awaitDurable}
+     */
+    public long append(byte[] batch, int length) throws IOException {
+        if (length + RECORD_HEADER_BYTES > segmentBytes) {
+            throw new IllegalArgumentException("batch larger than a WAL segment");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(batch, 0, length);
+        lock.lock();
+        try {
+            if (closed) throw new IOException("WAL is closed");
+            if (syncFailure != null) throw syncFailure;
+            if (current.buf.remaining() < length + RECORD_HEADER_BYTES) {
+                roll();
+            }
+            current.buf.putInt(length);
+            current.buf.putInt((int) crc.getValue());
+            current.buf.put(batch, 0, length);
+            if (!unsynced.contains(current)) unsynced.add(current);
+            appendedSeq++;
+            pending.signal();
+            return appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void awaitDurable(long seq) throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            // After close the syncer still syncs everything appended before it stops
+            while (durableSeq < seq) {
+                if (syncFailure != null) throw syncFailure;
+                synced.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Seal the current segment if it holds any records, so compaction can pick it up
+     */
+    public void rollIfNotEmpty() throws IOException {
+        lock.lock();
+        try {
+            if (!closed && current.buf.position() > 0) roll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Archive sealed segments, oldest first, stopping at the first failure, then delete archived
+     * segments past the retention period
+     * @return number of segments archived
+     */
+    public int compact(Archiver archiver) throws Exception {
+        compaction.lock();
+        try {
+            int compacted = 0;
+            while (true) {
+                Path file;
+                lock.lock();
+                try {
+                    file = sealed.peekFirst();
+                    if (file == null) break;
+                } finally {
+                    lock.unlock();
+                }
+                archiver.archive(readSegment(file));
+                Path archivedFile = file.resolveSibling(PREFIX + segmentIndexText(file) + ARCHIVED_SUFFIX);
+                Files.move(file, archivedFile, StandardCopyOption.ATOMIC_MOVE);
+                lock.lock();
+                try {
+                    sealed.removeFirst();
+                    archived.addLast(archivedFile);
+                } finally {
+                    lock.unlock();
+                }
+                compacted++;
+            }
+            deleteExpiredArchives(System.currentTimeMillis());
+            return compacted;
+        } finally {
+            compaction.unlock();
+        }
+    }
+
+    /**
+     * Delete archived segments last written before the retention period, oldest first, stopping
+     * at the first one still retained. Only compaction touches the archived list after startup.
+     */
+    private void deleteExpiredArchives(long nowMillis) throws IOException {
+        while (true) {
+            Path file;
+            lock.lock();
+            try {
+                file = archived.peekFirst();
+            } finally {
+                lock.unlock();
+            }
+            if (file == null || !isExpired(file, nowMillis)) return;
+            Files.deleteIfExists(file);
+            lock.lock();
+            try {
+                archived.removeFirst();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean isExpired(Path segment, long nowMillis) throws IOException {
+        return nowMillis - Files.getLastModifiedTime(segment).toMillis() >= retentionMillis;
+    }
+
+    /**
+     * e.g. "48000 batches in 1200 fsyncs (40.0 per fsync, 1.85 ms each), 3 sealed segments, 700 archived"
+     */
+    public String describe() {
+        lock.lock();
+        try {
+            return String.format("%d batches in %d fsyncs (%.1f per fsync, %.2f ms each), %d sealed segments, %d archived",
+                durableSeq, syncCount, syncCount == 0 ? 0.0 : (double) durableSeq / syncCount,
+                syncCount == 0 ? 0.0 : syncNanos / 1e6 / syncCount, sealed.size(), archived.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getSealedSegmentCount() {
+        lock.lock();
+        try {
+            return sealed.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sync what has been appended and stop the syncer
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            pending.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            syncer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void roll() throws IOException {
+        sealed.addLast(current.file);
+        current = new Segment(nextSegmentIndex++);
+    }
+
+    private void syncLoop() {
+        while (true) {
+            List<Segment> toSync;
+            long target;
+            lock.lock();
+            try {
+                while (appendedSeq == durableSeq && !closed) {
+                    pending.awaitUninterruptibly();
+                }
+                if (appendedSeq == durableSeq) {
+                    synced.signalAll();
+                    return;
+                }
+                if (groupCommitNanos > 0 && !closed) {
+                    // Let concurrent requests join this fsync
+                    long wait = groupCommitNanos;
+                    while (wait > 0) {
+                        try {
+                            wait = pending.awaitNanos(wait);
+                        } catch (InterruptedException e) {
+                            break;
+                        }
+                    }
+                }
+                toSync = new ArrayList<>(unsynced);
+                unsynced.clear();
+                target = appendedSeq;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException failure = null;
+            long syncStart = System.nanoTime();
+            for (Segment segment : toSync) {
+                try {
+                    segment.buf.force();
+                } catch (RuntimeException e) {
+                    // MappedByteBuffer.force reports I/O errors as UncheckedIOException
+                    failure = new IOException("WAL sync failed", e);
+                }
+            }
+
+            lock.lock();
+            try {
+                if (failure != null) {
+                    syncFailure = failure;
+                } else {
+                    durableSeq = target;
+                    syncCount++;
+                    syncNanos += System.nanoTime() - syncStart;
+                }
+                synced.signalAll();
+                if (failure != null) return;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private Path segmentFile(long index) {
+        return directory.resolve(String.format("%s%016d%s", PREFIX, index, SUFFIX));
+    }
+
+    private static boolean isSegmentFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(PREFIX) && (name.endsWith(SUFFIX) || name.endsWith(ARCHIVED_SUFFIX));
+    }
+
+    private static String segmentIndexText(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(PREFIX.length(), name.lastIndexOf('.'));
+    }
+
+    private static long segmentIndex(Path file) {
+        return Long.parseLong(segmentIndexText(file));
+    }
+
+    /**
+     * Valid records of a segment, up to the first torn or corrupt one
+     */
+    private static List<byte[]> readSegment(Path file) throws IOException {
+        List<byte[]> batches = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buf.order(ByteOrder.BIG_ENDIAN);
+            CRC32 crc = new CRC32();
+            while (buf.remaining() >= RECORD_HEADER_BYTES) {
+                int length = buf.getInt();
+                int expected = buf.getInt();
+                // Unwritten space is zero-filled, so a zero length marks the end
+                if (length <= 0 || length > buf.remaining()) break;
+                byte[] batch = new byte[length];
+                buf.get(batch);
+                crc.reset();
+                crc.update(batch);
+                if ((int) crc.getValue() != expected) {
+                    System.out.println("WAL " + file.getFileName() + ": corrupt record, ignoring the rest of the segment");
+                    break;
+                }
+                batches.add(batch);
+            }
+        }
+        return batches;
+    }
+
+    private class Segment {
+        final Path file;
+        final MappedByteBuffer buf;
+
+        Segment(long index) throws IOException {
+            this.file = segmentFile(index);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // The mapping stays valid after the channel is closed
+                this.buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            }
+            // Make the new file's directory entry durable along with its first records
+            try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+                dir.force(true);
+            } catch (IOException e) {
+                // Not supported on every platform; the segment data is still forced
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.heartsafe.desktop;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Content-addressed archive for old incident reports
+ * Reports are stored by SHA-256 hash in append-only, deflate-compressed segment files.
+ * Identical reports are stored once, unless a later incident needs the content kept longer than
+ * its segment's retention allows; then a fresh copy is appended and the index moves to it.
+ * An in-memory offset index (rebuilt from segment headers on open, later copies winning)
+ * locates any report with a single seek.
+ */
+public class ReportArchive {
+    private static final Logger LOGGER = Logger.getLogger(ReportArchive.class.getName());
+
+    private static final int RECORD_MAGIC = 0x48534152; // "HSAR"
+    private static final int HASH_LENGTH = 32;
+    private static final int HEADER_LENGTH = 4 + HASH_LENGTH + 8 + 4 + 4;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".hsa";
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+
+    private final Map<String, Location> index = new HashMap<>();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    public ReportArchive(Path directory, long maxSegmentBytes) throws IOException {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        Files.createDirectories(directory);
+        rebuildIndex();
+    }
+
+    /**
+     * Compute the content hash used as a report's archive key
+     */
+    public static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return toHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Store a report in the archive; returns its hash. Already archived content is not stored again
+     * as long as the segment holding it is retained at least as long as incidentTime requires.
+     */
+    public synchronized String store(byte[] content, long incidentTime) throws IOException {
+        String hash = hash(content);
+        Location existing = index.get(hash);
+        if (existing != null && segments.get(existing.segmentId).newestIncidentTime >= incidentTime) {
+            return hash;
+        }
+
+        byte[] compressed = deflate(content);
+        Segment segment = currentSegment(HEADER_LENGTH + compressed.length);
+        try (RandomAccessFile file = new RandomAccessFile(segment.path.toFile(), "rw")) {
+            long offset = file.length();
+            file.seek(offset);
+            file.writeInt(RECORD_MAGIC);
+            file.write(fromHex(hash));
+            file.writeLong(incidentTime);
+            file.writeInt(content.length);
+            file.writeInt(compressed.length);
+            file.write(compressed);
+            file.getFD().sync();
+
+            index.put(hash, new Location(segment.id, offset + HEADER_LENGTH, compressed.length, content.length));
+            segment.sizeBytes = file.length();
+            segment.hashes.add(hash);
+            segment.newestIncidentTime = Math.max(segment.newestIncidentTime, incidentTime);
+        }
+        return hash;
+    }
+
+    public synchronized boolean contains(String hash) {
+        return index.containsKey(hash);
+    }
+
+    /**
+     * Read one report back out of its segment
+     */
+    public byte[] extract(String hash) throws IOException {
+        Location location;
+        Path segmentPath;
+        synchronized (this) {
+            location = index.get(hash);
+            if (location == null) {
+                throw new NoSuchFileException("Report not in archive: " + hash);
+            }
+            segmentPath = segments.get(location.segmentId).path;
+        }
+
+        byte[] compressed = new byte[location.compressedLength];
+        try (RandomAccessFile file = new RandomAccessFile(segmentPath.toFile(), "r")) {
+            file.seek(location.offset);
+            file.readFully(compressed);
+        }
+        return inflate(compressed, location.originalLength);
+    }
+
+    /**
+     * Delete whole segments, oldest first, whose reports are all older than maxAgeMillis
+     * or while the archive exceeds maxTotalBytes. Returns the hashes that are no longer
+     * archived; content with a newer copy in a later segment stays available.
+     */
+    public synchronized Set<String> applyRetention(long maxAgeMillis, long maxTotalBytes) throws IOException {
+        Set<String> dropped = new HashSet<>();
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        long total = segments.values().stream().mapToLong(s -> s.sizeBytes).sum();
+
+        Iterator<Segment> it = segments.values().iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            // Never drop the segment currently being appended to
+            if (segment.id == segments.lastKey()) break;
+            boolean expired = segment.newestIncidentTime < cutoff;
+            boolean oversized = total > maxTotalBytes;
+            if (!expired && !oversized) break;
+
+            Files.deleteIfExists(segment.path);
+            total -= segment.sizeBytes;
+            for (String hash : segment.hashes) {
+                Location location = index.get(hash);
+                if (location != null && location.segmentId == segment.id) {
+                    index.remove(hash);
+                    dropped.add(hash);
+                }
+            }
+            it.remove();
+            LOGGER.info("Dropped archive segment " + segment.path.getFileName()
+                + " (" + segment.hashes.size() + " reports, " + (expired ? "expired" : "size limit") + ")");
+        }
+        return dropped;
+    }
+
+    public synchronized long totalBytes() {
+        return segments.values().stream().mapToLong(s -> s.sizeBytes).sum();
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    private Segment currentSegment(int recordLength) throws IOException {
+        if (!segments.isEmpty()) {
+            Segment last = segments.lastEntry().getValue();
+            if (last.sizeBytes + recordLength <= maxSegmentBytes || last.sizeBytes == 0) {
+                return last;
+            }
+        }
+        int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Segment segment = new Segment(id, directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX)));
+        Files.createFile(segment.path);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Scan segment headers, skipping payloads, to rebuild the offset index
+     */
+    private void rebuildIndex() throws IOException {
+        TreeMap<Integer, Path> paths = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                paths.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), path);
+            }
+        }
+        // Oldest first, so a re-archived copy replaces the earlier one in the index
+        for (Map.Entry<Integer, Path> entry : paths.entrySet()) {
+            segments.put(entry.getKey(), scanSegment(entry.getKey(), entry.getValue()));
+        }
+        LOGGER.info("Report archive opened: " + index.size() + " reports in " + segments.size() + " segments");
+    }
+
+    private Segment scanSegment(int id, Path path) throws IOException {
+        Segment segment = new Segment(id, path);
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            long length = file.length();
+            long position = 0;
+            byte[] hashBytes = new byte[HASH_LENGTH];
+            while (position + HEADER_LENGTH <= length) {
+                file.seek(position);
+                if (file.readInt() != RECORD_MAGIC) break;
+                file.readFully(hashBytes);
+                long incidentTime = file.readLong();
+                int originalLength = file.readInt();
+                int compressedLength = file.readInt();
+                long payloadStart = position + HEADER_LENGTH;
+                if (payloadStart + compressedLength > length) break;
+
+                String hash = toHex(hashBytes);
+                index.put(hash, new Location(id, payloadStart, compressedLength, originalLength));
+                segment.hashes.add(hash);
+                segment.newestIncidentTime = Math.max(segment.newestIncidentTime, incidentTime);
+                position = payloadStart + compressedLength;
+            }
+            if (position < length) {
+                // Torn write at the tail from a crash mid-append
+                LOGGER.warning("Truncating incomplete record at end of " + path.getFileName());
+                file.setLength(position);
+            }
+            segment.sizeBytes = position;
+        } catch (EOFException e) {
+            LOGGER.warning("Unexpected end of archive segment " + path.getFileName());
+        }
+        return segment;
+    }
+
+    private static byte[] deflate(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int originalLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] content = new byte[originalLength];
+            int read = 0;
+            while (read < originalLength && !inflater.finished()) {
+                read += inflater.inflate(content, read, originalLength - read);
+            }
+            if (read != originalLength) {
+                throw new IOException("Archived report is truncated");
+            }
+            return content;
+        } catch (DataFormatException e) {
+            throw new IOException("Archived report is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    /**
+     * Position of a compressed report inside a segment
+     */
+    private static class Location {
+        final int segmentId;
+        final long offset;
+        final int compressedLength;
+        final int originalLength;
+
+        Location(int segmentId, long offset, int compressedLength, int originalLength) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.compressedLength = compressedLength;
+            this.originalLength = originalLength;
+        }
+    }
+
+    private static class Segment {
+        final int id;
+        final Path path;
+        final List<String> hashes = new ArrayList<>();
+        long sizeBytes;
+        long newestIncidentTime = Long.MIN_VALUE;
+
+        Segment(int id, Path path) {
+            this.id = id;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package com.heartsafe.desktop;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Persistent catalog of generated incident reports
+ * Keeps report metadata in an index file next to the PDFs so listing reports
+ * never has to scan or stat the reports directory. {@link #start} loads the index and
+ * scans the directory once to reconcile it, then keeps it in sync through a WatchService.
+ */
+public class ReportCatalog {
+    private static final Logger LOGGER = Logger.getLogger(ReportCatalog.class.getName());
+
+    private static final String INDEX_FILENAME = "catalog.json";
+    private static final String FILENAME_PREFIX = "HeartSafe_Incident_";
+    private static final int TIMESTAMP_LENGTH = "yyyy-MM-dd_HH-mm-ss".length();
+
+    private final Path directory;
+    private final Path indexFile;
+    private final DateTimeFormatter filenameFormatter;
+    private final Gson gson = new Gson();
+
+    // Entries sorted newest first, plus a lookup by filename
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Entry> byFilename = new HashMap<>();
+
+    private final ExecutorService persistExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "report-catalog-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean savePending = new AtomicBoolean(false);
+    private WatchService watchService;
+
+    public ReportCatalog(Path directory, DateTimeFormatter filenameFormatter) {
+        this.directory = directory;
+        this.indexFile = directory.resolve(INDEX_FILENAME);
+        this.filenameFormatter = filenameFormatter;
+    }
+
+    /**
+     * Load and reconcile the index and start watching the directory; call once, after construction
+     */
+    public ReportCatalog start() {
+        load();
+        reconcile();
+        startWatching();
+        return this;
+    }
+
+    /**
+     * Record a freshly generated report with its full metadata
+     */
+    public void record(String filename, String filepath, String contentHash, IncidentReportService.IncidentData incidentData) {
+        Entry entry = new Entry();
+        entry.filename = filename;
+        entry.filepath = Paths.get(filepath).toAbsolutePath().toString();
+        entry.patientName = incidentData.getPatientName();
+        entry.emergencyType = incidentData.getEmergencyType();
+        entry.triggerHeartRate = incidentData.getTriggerHeartRate();
+        entry.incidentTime = toMillis(incidentData.getTimestamp());
+        entry.generatedAt = System.currentTimeMillis();
+        entry.sizeBytes = sizeOf(Paths.get(filepath));
+        entry.contentHash = contentHash;
+        put(entry);
+        scheduleSave();
+    }
+
+    /**
+     * Query one page of reports, newest first
+     * @param filter case-insensitive match against patient name or emergency type, or null for all
+     */
+    public synchronized Page query(String filter, int offset, int limit) {
+        String needle = filter == null ? "" : filter.trim().toLowerCase(Locale.ROOT);
+        List<Entry> matches = new ArrayList<>(Math.min(limit, entries.size()));
+        int matched = 0;
+        for (Entry entry : entries) {
+            if (!needle.isEmpty() && !entry.matches(needle)) continue;
+            if (matched >= offset && matches.size() < limit) {
+                matches.add(entry);
+            }
+            matched++;
+        }
+        return new Page(matches, offset, matched);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized Entry get(String filename) {
+        return byFilename.get(filename);
+    }
+
+    /**
+     * Reports still stored as loose PDFs whose incident time is before the cutoff
+     */
+    public synchronized List<Entry> looseReportsBefore(long cutoffMillis) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (!entry.archived && entry.incidentTime < cutoffMillis) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Mark a report as moved into the archive under the given content hash
+     */
+    public void markArchived(String filename, String contentHash) {
+        synchronized (this) {
+            Entry entry = byFilename.get(filename);
+            if (entry == null) return;
+            entry.archived = true;
+            entry.contentHash = contentHash;
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Forget archived reports whose content was removed by archive retention
+     */
+    public void removeArchived(Set<String> contentHashes) {
+        if (contentHashes.isEmpty()) return;
+        synchronized (this) {
+            Iterator<Entry> it = entries.iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                if (entry.archived && contentHashes.contains(entry.contentHash)) {
+                    byFilename.remove(entry.filename);
+                    it.remove();
+                }
+            }
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Write the index now and wait until it is on disk
+     * @throws IOException if the index could not be written
+     */
+    public void flush() throws IOException {
+        try {
+            persistExecutor.submit(() -> {
+                writeIndex();
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while saving report catalog");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Stop watching the reports directory and flush the index
+     */
+    public void close() {
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warning("Error closing report directory watcher: " + e.getMessage());
+        }
+        persistExecutor.submit(this::save);
+        persistExecutor.shutdown();
+    }
+
+    private synchronized void put(Entry entry) {
+        Entry previous = byFilename.put(entry.filename, entry);
+        if (previous != null) {
+            entries.remove(previous);
+        }
+        // Binary search for the insertion point keeps the list sorted newest first
+        int idx = Collections.binarySearch(entries, entry, NEWEST_FIRST);
+        entries.add(idx < 0 ? -idx - 1 : idx, entry);
+    }
+
+    /**
+     * Add a filename-only entry unless the report is already indexed, so an entry
+     * {@link #record} added meanwhile keeps its metadata
+     */
+    private synchronized boolean putIfAbsent(Entry entry) {
+        if (byFilename.containsKey(entry.filename)) return false;
+        put(entry);
+        return true;
+    }
+
+    /**
+     * Drop the entry for a deleted PDF, unless the report has moved into the archive
+     */
+    private synchronized boolean remove(String filename) {
+        Entry previous = byFilename.get(filename);
+        if (previous != null && !previous.archived) {
+            byFilename.remove(filename);
+            entries.remove(previous);
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized boolean contains(String filename) {
+        return byFilename.containsKey(filename);
+    }
+
+    private void load() {
+        if (!Files.exists(indexFile)) return;
+        try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            List<Entry> loaded = gson.fromJson(reader, new TypeToken<List<Entry>>() {}.getType());
+            if (loaded != null) {
+                for (Entry entry : loaded) {
+                    put(entry);
+                }
+            }
+            LOGGER.info("Loaded report catalog with " + size() + " entries");
+        } catch (Exception e) {
+            LOGGER.warning("Report catalog unreadable, rebuilding from directory: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One directory scan at startup to pick up files added or removed while the app was closed
+     */
+    private void reconcile() {
+        Set<String> onDisk = new HashSet<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.pdf")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                onDisk.add(name);
+                if (!contains(name)) {
+                    putIfAbsent(entryFromFile(file));
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warning("Failed to scan reports directory: " + e.getMessage());
+            return;
+        }
+
+        List<String> stale = new ArrayList<>();
+        synchronized (this) {
+            for (String name : byFilename.keySet()) {
+                if (!onDisk.contains(name)) stale.add(name);
+            }
+        }
+        stale.forEach(this::remove);
+        scheduleSave();
+    }
+
+    private void startWatching() {
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            LOGGER.warning("Report directory watching unavailable: " + e.getMessage());
+            return;
+        }
+
+        Thread watcher = new Thread(this::watchLoop, "report-catalog-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    reconcile();
+                    continue;
+                }
+                Path name = (Path) event.context();
+                if (!name.toString().endsWith(".pdf")) continue;
+
+                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    changed |= remove(name.toString());
+                } else {
+                    changed |= refresh(directory.resolve(name));
+                }
+            }
+            if (changed) {
+                scheduleSave();
+            }
+            if (!key.reset()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Update the size of a known report, or add an externally created one
+     */
+    private boolean refresh(Path file) {
+        String name = file.getFileName().toString();
+        synchronized (this) {
+            Entry existing = byFilename.get(name);
+            if (existing != null) {
+                long size = sizeOf(file);
+                if (existing.sizeBytes == size) return false;
+                existing.sizeBytes = size;
+                return true;
+            }
+        }
+        return putIfAbsent(entryFromFile(file));
+    }
+
+    /**
+     * Build an entry for a report the catalog did not generate; metadata comes from the filename
+     */
+    private Entry entryFromFile(Path file) {
+        Entry entry = new Entry();
+        entry.filename = file.getFileName().toString();
+        entry.filepath = file.toAbsolutePath().toString();
+        entry.sizeBytes = sizeOf(file);
+        entry.generatedAt = System.currentTimeMillis();
+        entry.incidentTime = entry.generatedAt;
+        if (entry.filename.startsWith(FILENAME_PREFIX)
+                && entry.filename.length() >= FILENAME_PREFIX.length() + TIMESTAMP_LENGTH) {
+            // Names are <prefix><timestamp>_<hash>.pdf; older reports have no hash suffix
+            String stamp = entry.filename.substring(FILENAME_PREFIX.length(), FILENAME_PREFIX.length() + TIMESTAMP_LENGTH);
+            try {
+                entry.incidentTime = toMillis(LocalDateTime.parse(stamp, filenameFormatter));
+                entry.generatedAt = entry.incidentTime;
+            } catch (DateTimeParseException ignored) {
+                // Leave the discovery time in place
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Coalesce index writes: at most one pending save regardless of how many changes arrive
+     */
+    private void scheduleSave() {
+        if (savePending.compareAndSet(false, true) && !persistExecutor.isShutdown()) {
+            persistExecutor.submit(() -> {
+                savePending.set(false);
+                save();
+            });
+        }
+    }
+
+    private void save() {
+        try {
+            writeIndex();
+        } catch (IOException e) {
+            LOGGER.warning("Failed to save report catalog: " + e.getMessage());
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        List<Entry> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries);
+        }
+        Path tmp = indexFile.resolveSibling(INDEX_FILENAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8)) {
+            gson.toJson(snapshot, writer);
+            writer.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static final Comparator<Entry> NEWEST_FIRST = Comparator
+        .comparingLong((Entry e) -> e.incidentTime).reversed()
+        .thenComparing(e -> e.filename);
+
+    /**
+     * Catalog entry as stored in the index file
+     */
+    public static class Entry {
+        public String filename;
+        public String filepath;
+        public String patientName;
+        public String emergencyType;
+        public int triggerHeartRate;
+        public long incidentTime;
+        public long generatedAt;
+        public long sizeBytes;
+        public String contentHash;
+        public boolean archived;
+
+        public LocalDateTime getIncidentTime() {
+            return LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(incidentTime), ZoneId.systemDefault());
+        }
+
+        public LocalDateTime getGeneratedAt() {
+            return LocalDateTime.ofInstant(java.time.Instant.ofEpochMilli(generatedAt), ZoneId.systemDefault());
+        }
+
+        private boolean matches(String needle) {
+            return (patientName != null && patientName.toLowerCase(Locale.ROOT).contains(needle))
+                || (emergencyType != null && emergencyType.toLowerCase(Locale.ROOT).contains(needle))
+                || filename.toLowerCase(Locale.ROOT).contains(needle);
+        }
+    }
+
+    /**
+     * One page of query results
+     */
+    public static class Page {
+        private final List<Entry> entries;
+        private final int offset;
+        private final int totalMatches;
+
+        Page(List<Entry> entries, int offset, int totalMatches) {
+            this.entries = entries;
+            this.offset = offset;
+            this.totalMatches = totalMatches;
+        }
+
+        public List<Entry> getEntries() { return entries; }
+        public int getOffset() { return offset; }
+        public int getTotalMatches() { return totalMatches; }
+        public boolean hasMore() { return offset + entries.size() < totalMatches; }
+    }
+}
@@ -0,0 +1,228 @@
+package com.heartsafe.shared.report;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Shared PDF report layout for HeartSafe
+ * Used by both the desktop incident reports and the backend PDF endpoint.
+ * Static page furniture (title bars, footer disclaimer) is rendered once into content
+ * stream bytes and stamped into each document as a Form XObject shared by all its pages.
+ * Only bytes and detached font dictionaries are cached; every document gets its own resources,
+ * since PDFBox objects must not be shared between documents rendered on different threads.
+ */
+public class ReportTemplate {
+    private static final Logger LOGGER = Logger.getLogger(ReportTemplate.class.getName());
+
+    public static final float MARGIN = 50;
+    public static final String DISCLAIMER = "This report contains confidential medical information";
+
+    private static final ReportTemplate SHARED = new ReportTemplate(PDRectangle.A4);
+
+    private final PDRectangle pageSize;
+    private final Map<String, Furniture> furnitureCache = new ConcurrentHashMap<>();
+
+    public ReportTemplate(PDRectangle pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Template shared by all report generators in this JVM
+     */
+    public static ReportTemplate shared() {
+        return SHARED;
+    }
+
+    /**
+     * Pre-render the footer and the given page titles so the first report pays no layout cost
+     */
+    public void warmUp(String... titles) {
+        long start = System.nanoTime();
+        try {
+            furniture("footer");
+            furniture("cover");
+            for (String title : titles) {
+                furniture("title:" + title);
+            }
+            LOGGER.info(String.format("Report template warmed up (%d elements) in %.1f ms",
+                furnitureCache.size(), (System.nanoTime() - start) / 1_000_000.0));
+        } catch (IOException e) {
+            LOGGER.warning("Report template warm-up failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Start rendering a new document with this template
+     */
+    public Session open(PDDocument document) {
+        return new Session(document);
+    }
+
+    /**
+     * Y coordinate of the first content line below a page title
+     */
+    public float contentTop() {
+        return pageSize.getHeight() - MARGIN - 40;
+    }
+
+    public float getPageWidth() {
+        return pageSize.getWidth();
+    }
+
+    /**
+     * Helper method to add text line
+     */
+    public static void addTextLine(PDPageContentStream contentStream, String text, float x, float y,
+                                   PDFont font, int fontSize) throws IOException {
+        contentStream.beginText();
+        contentStream.setFont(font, fontSize);
+        contentStream.newLineAtOffset(x, y);
+        contentStream.showText(text);
+        contentStream.endText();
+    }
+
+    private Furniture furniture(String key) throws IOException {
+        Furniture cached = furnitureCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        Furniture rendered = render(key);
+        Furniture existing = furnitureCache.putIfAbsent(key, rendered);
+        return existing != null ? existing : rendered;
+    }
+
+    /**
+     * Render one furniture element into a scratch document and keep its content bytes and fonts
+     */
+    private Furniture render(String key) throws IOException {
+        try (PDDocument scratch = new PDDocument()) {
+            PDFormXObject form = new PDFormXObject(scratch);
+            form.setBBox(pageSize);
+            form.setResources(new PDResources());
+
+            try (PDPageContentStream contentStream = new PDPageContentStream(scratch, form, form.getStream().createOutputStream())) {
+                paint(key, contentStream);
+            }
+
+            Map<COSName, COSDictionary> fonts = new HashMap<>();
+            for (COSName name : form.getResources().getFontNames()) {
+                fonts.put(name, new COSDictionary(form.getResources().getFont(name).getCOSObject()));
+            }
+            try (InputStream in = form.getContents()) {
+                return new Furniture(in.readAllBytes(), fonts);
+            }
+        }
+    }
+
+    private void paint(String key, PDPageContentStream contentStream) throws IOException {
+        float top = pageSize.getHeight() - MARGIN;
+        if (key.equals("footer")) {
+            contentStream.setNonStrokingColor(0f, 0f, 0f);
+            addTextLine(contentStream, DISCLAIMER, MARGIN, MARGIN, PDType1Font.HELVETICA_OBLIQUE, 9);
+        } else if (key.equals("cover")) {
+            contentStream.setNonStrokingColor(0f, 0f, 0f);
+            addTextLine(contentStream, "HEARTSAFE INCIDENT REPORT", MARGIN, top, PDType1Font.HELVETICA_BOLD, 24);
+            contentStream.setStrokingColor(1f, 0f, 0f);
+            contentStream.setLineWidth(2);
+            contentStream.moveTo(MARGIN, top - 60);
+            contentStream.lineTo(pageSize.getWidth() - MARGIN, top - 60);
+            contentStream.stroke();
+        } else if (key.startsWith("title:")) {
+            contentStream.setNonStrokingColor(0f, 0f, 0f);
+            addTextLine(contentStream, key.substring("title:".length()), MARGIN, top, PDType1Font.HELVETICA_BOLD, 18);
+        } else {
+            throw new IllegalArgumentException("Unknown report furniture: " + key);
+        }
+    }
+
+    /**
+     * Pre-rendered content of a furniture element. The font dictionaries are copies that are
+     * never attached to a document; they only hold names (standard 14 fonts), so a shallow
+     * copy per document is a full copy.
+     */
+    private static class Furniture {
+        private final byte[] content;
+        private final Map<COSName, COSDictionary> fonts;
+
+        Furniture(byte[] content, Map<COSName, COSDictionary> fonts) {
+            this.content = content;
+            this.fonts = fonts;
+        }
+
+        PDResources newResources() {
+            COSDictionary fontDictionary = new COSDictionary();
+            for (Map.Entry<COSName, COSDictionary> font : fonts.entrySet()) {
+                fontDictionary.setItem(font.getKey(), new COSDictionary(font.getValue()));
+            }
+            COSDictionary resources = new COSDictionary();
+            resources.setItem(COSName.FONT, fontDictionary);
+            return new PDResources(resources);
+        }
+    }
+
+    /**
+     * Per-document rendering state; each furniture element becomes one Form XObject
+     * in the document, drawn by reference on every page that needs it
+     */
+    public class Session {
+        private final PDDocument document;
+        private final Map<String, PDFormXObject> forms = new HashMap<>();
+
+        private Session(PDDocument document) {
+            this.document = document;
+        }
+
+        /**
+         * Add the cover page (title and red rule) and return its content stream
+         */
+        public PDPageContentStream beginCoverPage() throws IOException {
+            return addPage("cover");
+        }
+
+        /**
+         * Add a titled content page and return its content stream
+         */
+        public PDPageContentStream beginPage(String title) throws IOException {
+            return addPage("title:" + title);
+        }
+
+        private PDPageContentStream addPage(String furnitureKey) throws IOException {
+            PDPage page = new PDPage(pageSize);
+            document.addPage(page);
+
+            PDPageContentStream contentStream = new PDPageContentStream(document, page);
+            contentStream.drawForm(form(furnitureKey));
+            contentStream.drawForm(form("footer"));
+            return contentStream;
+        }
+
+        private PDFormXObject form(String key) throws IOException {
+            PDFormXObject form = forms.get(key);
+            if (form == null) {
+                Furniture furniture = furniture(key);
+                form = new PDFormXObject(new PDStream(document, new ByteArrayInputStream(furniture.content)));
+                form.setBBox(pageSize);
+                form.setResources(furniture.newResources());
+                forms.put(key, form);
+            }
+            return form;
+        }
+    }
+}
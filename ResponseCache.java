@@ -0,0 +1,215 @@
+package com.heartsafe.desktop;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Size-bounded client-side cache for backend responses
+ * Entries are fresh for the TTL, then served stale while a background revalidation
+ * runs (stale-while-revalidate). Revalidation sends the stored ETag so an unchanged
+ * resource costs a 304 instead of a full body. Least recently used entries are evicted.
+ */
+public class ResponseCache<V> {
+    private static final Logger LOGGER = Logger.getLogger(ResponseCache.class.getName());
+
+    private final String name;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long staleMillis;
+    private final Executor executor;
+
+    private final Map<String, Entry<V>> entries;
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+
+    /**
+     * @param ttlMillis how long an entry is served without revalidation
+     * @param staleMillis how long past the TTL an entry may still be served while revalidating
+     */
+    public ResponseCache(String name, int maxEntries, long ttlMillis, long staleMillis, Executor executor) {
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.staleMillis = staleMillis;
+        this.executor = executor;
+        this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                return size() > ResponseCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get a value, fetching or revalidating as needed. Blocks only when there is nothing usable cached.
+     */
+    public V get(String key, Fetcher<V> fetcher) throws Exception {
+        Entry<V> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        long now = System.currentTimeMillis();
+
+        if (entry != null) {
+            long age = now - entry.fetchedAt;
+            if (age < ttlMillis) {
+                hits.increment();
+                return entry.value;
+            }
+            if (age < ttlMillis + staleMillis) {
+                staleHits.increment();
+                revalidateAsync(key, fetcher);
+                return entry.value;
+            }
+        }
+
+        misses.increment();
+        try {
+            return fetch(key, entry, fetcher);
+        } catch (Exception e) {
+            // Backend unreachable: an expired value is still better than nothing
+            if (entry != null) {
+                LOGGER.warning(name + " cache serving expired entry for " + key + ": " + e.getMessage());
+                return entry.value;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Cached value regardless of age, or null; does not count towards hit rate
+     */
+    public V peek(String key) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            return entry == null ? null : entry.value;
+        }
+    }
+
+    /**
+     * Warm an entry in the background unless it is already fresh
+     */
+    public void prefetch(String key, Fetcher<V> fetcher) {
+        Entry<V> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null || System.currentTimeMillis() - entry.fetchedAt >= ttlMillis) {
+            revalidateAsync(key, fetcher);
+        }
+    }
+
+    public void invalidate(String key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Fraction of lookups answered from cache (fresh or stale)
+     */
+    public double getHitRate() {
+        long served = hits.sum() + staleHits.sum();
+        long total = served + misses.sum();
+        return total == 0 ? 0 : (double) served / total;
+    }
+
+    public String getStats() {
+        synchronized (entries) {
+            return String.format("%s cache: %d entries, hit rate %.0f%% (%d fresh, %d stale, %d miss, %d not-modified)",
+                name, entries.size(), getHitRate() * 100, hits.sum(), staleHits.sum(), misses.sum(), notModified.sum());
+        }
+    }
+
+    private void revalidateAsync(String key, Fetcher<V> fetcher) {
+        if (!revalidating.add(key)) {
+            return; // Already in flight
+        }
+        executor.execute(() -> {
+            try {
+                Entry<V> entry;
+                synchronized (entries) {
+                    entry = entries.get(key);
+                }
+                fetch(key, entry, fetcher);
+            } catch (Exception e) {
+                LOGGER.fine(name + " cache revalidation failed for " + key + ": " + e.getMessage());
+            } finally {
+                revalidating.remove(key);
+            }
+        });
+    }
+
+    private V fetch(String key, Entry<V> previous, Fetcher<V> fetcher) throws Exception {
+        Fetched<V> fetched = fetcher.fetch(previous == null ? null : previous.etag);
+        if (fetched == null) {
+            throw new IllegalStateException("No data for " + key);
+        }
+        Entry<V> entry;
+        if (fetched.notModified) {
+            if (previous == null) {
+                throw new IllegalStateException("Not modified response without a cached entry for " + key);
+            }
+            notModified.increment();
+            entry = new Entry<>(previous.value, previous.etag, System.currentTimeMillis());
+        } else {
+            entry = new Entry<>(fetched.value, fetched.etag, System.currentTimeMillis());
+        }
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return entry.value;
+    }
+
+    /**
+     * Loads a value from the backend, sending the cached ETag (may be null) for revalidation
+     */
+    @FunctionalInterface
+    public interface Fetcher<V> {
+        Fetched<V> fetch(String etag) throws Exception;
+    }
+
+    /**
+     * Result of a fetch: a new value with its ETag, or "not modified"
+     */
+    public static class Fetched<V> {
+        private final V value;
+        private final String etag;
+        private final boolean notModified;
+
+        private Fetched(V value, String etag, boolean notModified) {
+            this.value = value;
+            this.etag = etag;
+            this.notModified = notModified;
+        }
+
+        public static <V> Fetched<V> of(V value, String etag) {
+            return new Fetched<>(value, etag, false);
+        }
+
+        public static <V> Fetched<V> notModified() {
+            return new Fetched<>(null, null, true);
+        }
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final String etag;
+        final long fetchedAt;
+
+        Entry(V value, String etag, long fetchedAt) {
+            this.value = value;
+            this.etag = etag;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
@@ -1,43 +1,148 @@
 package com.heartsafe.backend;
 
 import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import com.heartsafe.backend.db.MySql;
+import com.heartsafe.shared.json.JsonCodec;
+import com.heartsafe.shared.models.HealthReading;
 import com.heartsafe.shared.models.IncidentReport;
+import com.heartsafe.shared.models.ReadingBatchCodec;
+import com.heartsafe.shared.report.ReportTemplate;
 
 import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class Server {
-    private static final Gson gson = new Gson();
+    private static final Gson gson = JsonCodec.gson();
+    private static final java.lang.reflect.Type PAYLOAD_TYPE = new TypeToken<java.util.Map<String, Object>>() {}.getType();
+    private static final String INCIDENT_PDF_TITLE = "HeartSafe Incident Report";
+    private static final SlotAvailability availability = SlotAvailability.withDemoDoctors();
+    // Part of every ETag so clients revalidate after a restart resets slot versions
+    private static final String INSTANCE_TAG = Long.toHexString(System.currentTimeMillis());
+    private static volatile boolean teleconsultSchemaReady;
+    private static final EmergencyTriage triage = createTriage();
+    private static final int HISTORY_PAGE_SIZE = 20;
+    private static final int HISTORY_MAX_PAGE_SIZE = 100;
+    // Upper bound of a MySQL TIMESTAMP, used as the cursor for the first page
+    private static final long MAX_TIMESTAMP_MILLIS = 2147483647000L;
+    private static final IdempotencyStore idempotency = new IdempotencyStore(10_000, TimeUnit.HOURS.toMillis(24));
+    private static final ReadingStore readingStore = new ReadingStore(TimeUnit.MINUTES.toMillis(
+        Long.parseLong(System.getenv().getOrDefault("READING_RETENTION_MINUTES", "360"))));
+    // Same thresholds and cooldown as the monitoring agent; three readings in a row before alerting
+    private static final PatientStateTable patientStates = new PatientStateTable(120, 50, 3, TimeUnit.MINUTES.toMillis(5));
+    private static final PatientEvents patientEvents = new PatientEvents(
+        Integer.parseInt(System.getenv().getOrDefault("MAX_STREAM_SUBSCRIBERS", "10000")), 256);
+    // Patients without a reading for 30 seconds are flagged stale on the dashboard
+    private static final CaregiverDashboard dashboard = new CaregiverDashboard(30_000,
+        Integer.parseInt(System.getenv().getOrDefault("MAX_DASHBOARD_SUBSCRIBERS", "500")));
+    private static final long DASHBOARD_PUSH_MILLIS = Long.parseLong(System.getenv().getOrDefault("DASHBOARD_PUSH_MILLIS", "1000"));
+    private static final ReadingIngest readings = new ReadingIngest(readingStore, patientStates, patientEvents, dashboard);
+    // Opened in main, after replaying into readings
+    private static ReadingWal readingWal;
+    // About 250k readings in the binary format; larger batches should be split by the gateway
+    private static final int MAX_READING_BATCH_BYTES = 512 * 1024;
 
     public static void main(String[] args) throws IOException {
         int port = Integer.parseInt(System.getenv().getOrDefault("PORT", "8080"));
         HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
 
+        ReportTemplate.shared().warmUp(INCIDENT_PDF_TITLE);
+
+        long recoveryStart = System.nanoTime();
+        readingWal = new ReadingWal(Paths.get(System.getenv().getOrDefault("WAL_DIR", "wal")),
+            Integer.parseInt(System.getenv().getOrDefault("WAL_SEGMENT_MB", "64")) * 1024 * 1024,
+            // Appends arriving during an fsync already share the next one; a window only helps slow disks
+            Long.parseLong(System.getenv().getOrDefault("WAL_GROUP_COMMIT_MICROS", "0")),
+            // Archived segments are kept as long as the store keeps readings, so a restart restores the window
+            readingStore.getRetentionMillis(),
+            readings::replay);
+        System.out.println("Reading WAL recovered " + readings.getReadingCount() + " readings in "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - recoveryStart) + " ms");
+
         server.createContext("/api/health", Server::handleHealth);
         server.createContext("/api/incidents/pdf", Server::handleIncidentPdf);
         server.createContext("/api/teleconsult/book", Server::handleTeleconsultBook);
+        server.createContext("/api/teleconsult/emergency", Server::handleEmergency);
+        server.createContext("/api/doctors/", Server::handleDoctors);
+        server.createContext("/api/patients/", Server::handlePatients);
+        server.createContext("/api/readings", Server::handleReadings);
+        server.createContext("/api/dashboard", Server::handleDashboard);
+
+        ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "backend-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        maintenance.scheduleAtFixedRate(idempotency::purgeExpired, 1, 1, TimeUnit.HOURS);
+        maintenance.scheduleAtFixedRate(() -> availability.purgeBefore(LocalDate.now()), 1, 1, TimeUnit.HOURS);
+        maintenance.scheduleAtFixedRate(() -> {
+            long now = System.currentTimeMillis();
+            readingStore.purgeExpired(now);
+            patientStates.removeIdle(now - readingStore.getRetentionMillis());
+            if (readingStore.getSampleCount() > 0) {
+                System.out.println("Reading store: " + readingStore.describe() + "; patient state: "
+                    + patientStates.size() + " patients, " + patientStates.getOffHeapBytes() / 1024 + " KB off-heap");
+            }
+        }, 10, 10, TimeUnit.MINUTES);
+        maintenance.scheduleAtFixedRate(() -> {
+            long now = System.currentTimeMillis();
+            dashboard.sweep(now, now - readingStore.getRetentionMillis());
+        }, 10, 10, TimeUnit.SECONDS);
+        long compactSeconds = Long.parseLong(System.getenv().getOrDefault("WAL_COMPACT_SECONDS", "30"));
+        maintenance.scheduleWithFixedDelay(() -> {
+            try {
+                readingWal.rollIfNotEmpty();
+                int compacted = readingWal.compact(ReadingArchive::store);
+                if (compacted > 0) {
+                    System.out.println("Archived " + compacted + " WAL segments; " + readingWal.describe());
+                }
+            } catch (Exception e) {
+                // Segments stay on disk and are retried on the next run
+                System.out.println("WAL compaction failed: " + e.getMessage());
+            }
+        }, compactSeconds, compactSeconds, TimeUnit.SECONDS);
 
+        // Handlers block on the WAL fsync, so requests need their own threads for group commit to batch them
+        server.setExecutor(Executors.newFixedThreadPool(Integer.parseInt(System.getenv().getOrDefault("HTTP_THREADS", "32"))));
         server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // Stop taking batches, then sync what was accepted
+            server.stop(1);
+            readingWal.close();
+        }, "backend-shutdown"));
         System.out.println("HeartSafe backend listening on " + port);
     }
 
@@ -55,18 +160,11 @@ public class Server {
         Path out = Files.createTempDirectory("heartsafe").resolve(fileName);
 
         try (PDDocument doc = new PDDocument()) {
-            PDPage page = new PDPage();
-            doc.addPage(page);
-            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
-                cs.beginText();
-                cs.setFont(PDType1Font.HELVETICA_BOLD, 18);
-                cs.newLineAtOffset(50, 750);
-                cs.showText("HeartSafe Incident Report");
-                cs.endText();
-
+            ReportTemplate template = ReportTemplate.shared();
+            try (PDPageContentStream cs = template.open(doc).beginPage(INCIDENT_PDF_TITLE)) {
                 cs.beginText();
                 cs.setFont(PDType1Font.HELVETICA, 12);
-                cs.newLineAtOffset(50, 720);
+                cs.newLineAtOffset(ReportTemplate.MARGIN, template.contentTop());
                 cs.showText("Patient ID: " + report.patientId);
                 cs.newLineAtOffset(0, -18);
                 cs.showText("Incident Time: " + report.incidentTime);
@@ -88,14 +186,16 @@ public class Server {
             respondJson(exchange, 405, "{\"error\":\"method not allowed\"}");
             return;
         }
+        handleIdempotent(exchange, true, Server::bookTeleconsult);
+    }
 
+    private static IdempotencyStore.Response bookTeleconsult(String body, String idempotencyKey, String fingerprint) {
         // Parse incoming JSON as a generic map to support flexible booking payloads
-        String body = readBody(exchange);
-        java.util.Map<String, Object> payload = gson.fromJson(body, java.util.Map.class);
+        java.util.Map<String, Object> payload = gson.fromJson(body, PAYLOAD_TYPE);
 
         String patientId = getString(payload.get("patientId"));
         String patientName = getString(payload.get("patientName"));
-        String doctorId = getString(payload.get("doctorId"));
+        String requestedDoctorId = getString(payload.get("doctorId"));
         String timeSlotId = getString(payload.get("timeSlotId"));
         String appointmentTimeText = getString(payload.get("appointmentTime"));
         String reason = getString(payload.get("reason"));
@@ -108,8 +208,236 @@ public class Server {
         String medicalHistoryJson = gson.toJson(payload.getOrDefault("medicalHistory", new java.util.HashMap<>()));
         String vitalSignsJson = gson.toJson(payload.getOrDefault("vitalSigns", new java.util.HashMap<>()));
 
-        long generatedId = -1;
+        // The slot id names the doctor; it is the only source of the doctor for the booking
+        SlotAvailability.SlotRef slot = SlotAvailability.parseSlotId(timeSlotId);
+        if (slot == null) {
+            return new IdempotencyStore.Response(400, "{\"error\":\"timeSlotId is required, as returned by /api/doctors/{id}/slots\"}", fingerprint);
+        }
+        if (requestedDoctorId != null && !requestedDoctorId.equals(slot.doctorId)) {
+            return new IdempotencyStore.Response(400, "{\"error\":\"timeSlotId does not belong to doctorId\"}", fingerprint);
+        }
+        String doctorId = slot.doctorId;
+
+        long[] generatedId = {-1};
+        SlotAvailability.BookingOutcome outcome;
         try (Connection conn = MySql.get()) {
+            ensureTeleconsultSchema(conn);
+            conn.setAutoCommit(false);
+            outcome = availability.book(slot, () -> {
+                String insertSql = "INSERT INTO teleconsultations(patient_id, patient_name, doctor_id, time_slot_id, appointment_time_text, reason, symptoms, is_emergency, contact_phone, contact_email, medical_history, vital_signs) VALUES(?,?,?,?,?,?,?,?,?,?,?,?)";
+                try (PreparedStatement ps = conn.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
+                    ps.setString(1, patientId);
+                    ps.setString(2, patientName);
+                    ps.setString(3, doctorId);
+                    ps.setString(4, timeSlotId);
+                    ps.setString(5, appointmentTimeText);
+                    ps.setString(6, reason);
+                    ps.setString(7, symptoms);
+                    ps.setBoolean(8, isEmergency);
+                    ps.setString(9, contactPhone);
+                    ps.setString(10, contactEmail);
+                    ps.setString(11, medicalHistoryJson);
+                    ps.setString(12, vitalSignsJson);
+
+                    try {
+                        ps.executeUpdate();
+                    } catch (SQLIntegrityConstraintViolationException e) {
+                        // The unique time_slot_id key caught a booking the bitmap did not know about,
+                        // e.g. one made before a restart
+                        conn.rollback();
+                        return SlotAvailability.BookingOutcome.TAKEN;
+                    }
+                    try (ResultSet rs = ps.getGeneratedKeys()) {
+                        if (rs.next()) generatedId[0] = rs.getLong(1);
+                    }
+                }
+
+                // The key is stored in the same transaction, so a retry can never book twice
+                if (idempotencyKey != null) {
+                    try {
+                        IdempotencyStore.persist(conn, idempotencyKey,
+                            new IdempotencyStore.Response(201, bookingCreated(generatedId[0]), fingerprint));
+                    } catch (SQLIntegrityConstraintViolationException e) {
+                        // Another server instance is handling the same key
+                        conn.rollback();
+                        return SlotAvailability.BookingOutcome.NOT_BOOKED;
+                    }
+                }
+                conn.commit();
+                return SlotAvailability.BookingOutcome.BOOKED;
+            });
+        } catch (Exception e) {
+            return new IdempotencyStore.Response(500, "{\"error\":\"" + String.valueOf(e.getMessage()).replace("\"", "'") + "\"}", fingerprint);
+        }
+
+        switch (outcome) {
+            case BOOKED:
+                return new IdempotencyStore.Response(201, bookingCreated(generatedId[0]), fingerprint);
+            case TAKEN:
+                return new IdempotencyStore.Response(409, "{\"error\":\"slot already booked\",\"code\":\"slot_taken\",\"timeSlotId\":"
+                    + gson.toJson(timeSlotId) + "}", fingerprint);
+            case UNKNOWN_DOCTOR:
+                return new IdempotencyStore.Response(404, "{\"error\":\"unknown doctor\"}", fingerprint);
+            case OUTSIDE_WORKING_HOURS:
+                return new IdempotencyStore.Response(400, "{\"error\":\"slot is outside the doctor's working hours\"}", fingerprint);
+            default:
+                // 5xx so it is not remembered here; the retry replays the other instance's stored response
+                return new IdempotencyStore.Response(503, "{\"error\":\"request with this Idempotency-Key is being handled elsewhere, retry\"}", fingerprint);
+        }
+    }
+
+    private static String bookingCreated(long id) {
+        return "{\"message\":\"booking created\",\"id\":" + id + "}";
+    }
+
+    /**
+     * Run a POST handler under the request's Idempotency-Key, if any: duplicates replay the first
+     * response, and 5xx results are not remembered so the client may retry them
+     * @param durable whether keys survive a restart (handler must persist them in its transaction)
+     */
+    private static void handleIdempotent(HttpExchange exchange, boolean durable, IdempotentHandler handler) throws IOException {
+        String body = readBody(exchange);
+        String key = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+        if (key == null) {
+            IdempotencyStore.Response response = handler.handle(body, null, null);
+            respondJson(exchange, response.status, response.body);
+            return;
+        }
+        if (key.isEmpty() || key.length() > 255) {
+            respondJson(exchange, 400, "{\"error\":\"Idempotency-Key must be 1-255 characters\"}");
+            return;
+        }
+
+        String fingerprint = IdempotencyStore.fingerprint(body);
+        IdempotencyStore.Response replay;
+        try {
+            replay = idempotency.begin(key, fingerprint, durable);
+        } catch (SQLException e) {
+            respondJson(exchange, 503, "{\"error\":\"" + String.valueOf(e.getMessage()).replace("\"", "'") + "\"}");
+            return;
+        }
+        if (replay != null) {
+            exchange.getResponseHeaders().add("Idempotent-Replayed", "true");
+            respondJson(exchange, replay.status, replay.body);
+            return;
+        }
+
+        IdempotencyStore.Response response;
+        try {
+            response = handler.handle(body, key, fingerprint);
+        } catch (RuntimeException e) {
+            idempotency.abandon(key);
+            throw e;
+        }
+        if (response.status >= 500) {
+            idempotency.abandon(key);
+        } else {
+            idempotency.complete(key, response);
+        }
+        respondJson(exchange, response.status, response.body);
+    }
+
+    @FunctionalInterface
+    private interface IdempotentHandler {
+        IdempotencyStore.Response handle(String body, String idempotencyKey, String fingerprint);
+    }
+
+
+    /**
+     * POST /api/teleconsult/emergency, GET /api/teleconsult/emergency/{caseId},
+     * POST /api/teleconsult/emergency/{caseId}/complete
+     */
+    private static void handleEmergency(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] parts = exchange.getRequestURI().getPath().split("/");
+        // ["", "api", "teleconsult", "emergency", {caseId}, "complete"]
+        if (parts.length == 4 && "POST".equalsIgnoreCase(method)) {
+            // A retried emergency request must not queue the patient twice
+            handleIdempotent(exchange, false, Server::submitEmergency);
+        } else if (parts.length == 5 && "GET".equalsIgnoreCase(method)) {
+            EmergencyTriage.Status status = triage.status(parts[4]);
+            if (status == null) {
+                respondJson(exchange, 404, "{\"error\":\"unknown case\"}");
+                return;
+            }
+            respondJson(exchange, 200, gson.toJson(emergencyResult(status)));
+        } else if (parts.length == 6 && "complete".equals(parts[5]) && "POST".equalsIgnoreCase(method)) {
+            if (!triage.complete(parts[4])) {
+                respondJson(exchange, 409, "{\"error\":\"case is not in consultation\"}");
+                return;
+            }
+            respondJson(exchange, 200, "{\"message\":\"consultation completed\"}");
+        } else if (parts.length >= 4 && parts.length <= 6) {
+            respondJson(exchange, 405, "{\"error\":\"method not allowed\"}");
+        } else {
+            respondJson(exchange, 404, "{\"error\":\"not found\"}");
+        }
+    }
+
+    private static IdempotencyStore.Response submitEmergency(String body, String idempotencyKey, String fingerprint) {
+        java.util.Map<String, Object> payload = gson.fromJson(body, PAYLOAD_TYPE);
+        if (payload == null) {
+            return new IdempotencyStore.Response(400, "{\"error\":\"missing body\"}", fingerprint);
+        }
+        String emergencyType = getString(payload.get("emergencyType"));
+        Object heartRate = payload.get("currentHeartRate");
+        int bpm = heartRate instanceof Number ? ((Number) heartRate).intValue() : 0;
+
+        EmergencyTriage.Status status = triage.submit(emergencyType, bpm);
+        System.out.println("Emergency case " + status.caseId + " queued: severity " + status.severity
+            + ", position " + status.position + ", queue depth " + triage.getQueueDepth());
+        return new IdempotencyStore.Response(201, gson.toJson(emergencyResult(status)), fingerprint);
+    }
+
+    /**
+     * Triage status in the shape of the desktop client's BookingResult
+     */
+    private static java.util.Map<String, Object> emergencyResult(EmergencyTriage.Status status) {
+        long waitMinutes = (status.estimatedWaitMillis + 59_999) / 60_000;
+        String wait = status.estimatedWaitMillis == 0 ? "immediate" : "about " + waitMinutes + " minute" + (waitMinutes == 1 ? "" : "s");
+
+        java.util.Map<String, Object> result = new java.util.LinkedHashMap<>();
+        result.put("success", true);
+        result.put("bookingId", status.caseId);
+        result.put("confirmationNumber", "HS_" + status.caseId);
+        result.put("emergencyPriority", true);
+        result.put("estimatedWaitTime", wait);
+        result.put("doctorName", status.doctorName);
+        result.put("instructions", status.instructions);
+        if ("queued".equals(status.state)) {
+            result.put("message", "Emergency teleconsultation queued at position " + status.position
+                + "; the next available on-call doctor will contact you");
+        } else if ("assigned".equals(status.state)) {
+            result.put("message", status.doctorName + " has been assigned and will contact you now");
+        } else {
+            result.put("message", "Emergency teleconsultation completed");
+        }
+        return result;
+    }
+
+    /**
+     * Emergency physicians and cardiologists take emergency consultations
+     */
+    private static EmergencyTriage createTriage() {
+        List<SlotAvailability.Doctor> onCall = new ArrayList<>();
+        for (SlotAvailability.Doctor doctor : availability.getDoctors()) {
+            String specialty = doctor.specialty.toLowerCase(java.util.Locale.ROOT);
+            if (specialty.contains("emergency") || specialty.contains("cardi")) {
+                onCall.add(doctor);
+            }
+        }
+        long expected = Long.parseLong(System.getenv().getOrDefault("TRIAGE_EXPECTED_CONSULT_MINUTES", "15"));
+        long max = Long.parseLong(System.getenv().getOrDefault("TRIAGE_MAX_CONSULT_MINUTES", "45"));
+        return new EmergencyTriage(onCall, expected * 60_000, max * 60_000).start();
+    }
+
+    /**
+     * Create the booking tables once per process, adding the slot uniqueness key to older tables
+     */
+    private static void ensureTeleconsultSchema(Connection conn) throws SQLException {
+        if (teleconsultSchemaReady) return;
+        synchronized (Server.class) {
+            if (teleconsultSchemaReady) return;
             // Create table with richer schema if it doesn't exist
             try (Statement st = conn.createStatement()) {
                 st.execute("CREATE TABLE IF NOT EXISTS teleconsultations ("
@@ -126,36 +454,496 @@ public class Server {
                         + "contact_email VARCHAR(255), "
                         + "medical_history TEXT, "
                         + "vital_signs TEXT, "
-                        + "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP) ENGINE=InnoDB");
+                        + "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, "
+                        + "UNIQUE KEY uq_time_slot (time_slot_id), "
+                        + "INDEX idx_patient_created (patient_id, created_at, id)) ENGINE=InnoDB");
             }
+            IdempotencyStore.createTable(conn);
+            // Tables created by older versions lack these; without the unique key only the in-memory check remains.
+            // Slot ids include the doctor, and unlike (doctor_id, time_slot_id) the key is never partly NULL
+            addIndexIfMissing(conn, "ADD UNIQUE KEY uq_time_slot (time_slot_id)");
+            dropIndexIfPresent(conn, "uq_doctor_slot");
+            addIndexIfMissing(conn, "ADD INDEX idx_patient_created (patient_id, created_at, id)");
+            teleconsultSchemaReady = true;
+        }
+    }
 
-            String insertSql = "INSERT INTO teleconsultations(patient_id, patient_name, doctor_id, time_slot_id, appointment_time_text, reason, symptoms, is_emergency, contact_phone, contact_email, medical_history, vital_signs) VALUES(?,?,?,?,?,?,?,?,?,?,?,?)";
-            try (PreparedStatement ps = conn.prepareStatement(insertSql, Statement.RETURN_GENERATED_KEYS)) {
-                ps.setString(1, patientId);
-                ps.setString(2, patientName);
-                ps.setString(3, doctorId);
-                ps.setString(4, timeSlotId);
-                ps.setString(5, appointmentTimeText);
-                ps.setString(6, reason);
-                ps.setString(7, symptoms);
-                ps.setBoolean(8, isEmergency);
-                ps.setString(9, contactPhone);
-                ps.setString(10, contactEmail);
-                ps.setString(11, medicalHistoryJson);
-                ps.setString(12, vitalSignsJson);
-
-                ps.executeUpdate();
-                try (ResultSet rs = ps.getGeneratedKeys()) {
-                    if (rs.next()) generatedId = rs.getLong(1);
+    private static void dropIndexIfPresent(Connection conn, String name) {
+        try (Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE teleconsultations DROP INDEX " + name);
+        } catch (SQLException e) {
+            // 1091: no such key
+            if (e.getErrorCode() != 1091) {
+                System.out.println("Could not drop index " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static void addIndexIfMissing(Connection conn, String clause) {
+        try (Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE teleconsultations " + clause);
+        } catch (SQLException e) {
+            // 1061: key already exists
+            if (e.getErrorCode() != 1061) {
+                System.out.println("Could not " + clause + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * POST /api/readings with a batch from a gateway, in the binary format of ReadingBatchCodec or as JSON
+     * ({"patientId": ..., "readings": [{"timestamp": ..., "heartRate": ...}]}), and
+     * GET /api/readings/{patientId}[?from=..&to=..] for stored readings (epoch millis, default the last hour);
+     * the part of the range before the in-memory retention window is read from heart_rate_readings.
+     */
+    private static void handleReadings(HttpExchange exchange) throws IOException {
+        String[] parts = exchange.getRequestURI().getPath().split("/");
+        // ["", "api", "readings", {patientId}]
+        if ("GET".equalsIgnoreCase(exchange.getRequestMethod()) && parts.length == 4) {
+            handleReadingRange(exchange, parts[3]);
+            return;
+        }
+        if (!"POST".equalsIgnoreCase(exchange.getRequestMethod()) || parts.length != 3) {
+            respondJson(exchange, 405, "{\"error\":\"method not allowed\"}");
+            return;
+        }
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        byte[] body;
+        try {
+            if (contentType != null && contentType.startsWith(ReadingBatchCodec.CONTENT_TYPE)) {
+                body = readBinaryBody(exchange, MAX_READING_BATCH_BYTES);
+                if (body == null) {
+                    respondJson(exchange, 413, "{\"error\":\"batch too large\"}");
+                    return;
+                }
+            } else if (contentType == null || contentType.startsWith("application/json")) {
+                ReadingBatch batch = gson.fromJson(readBody(exchange), ReadingBatch.class);
+                if (batch == null || batch.patientId == null || batch.readings == null || batch.readings.contains(null)) {
+                    respondJson(exchange, 400, "{\"error\":\"patientId and readings are required\"}");
+                    return;
+                }
+                body = ReadingBatchCodec.encode(batch.patientId, batch.readings);
+            } else {
+                respondJson(exchange, 415, "{\"error\":\"unsupported content type\"}");
+                return;
+            }
+            ReadingIngest.validate(body, body.length);
+        } catch (IllegalArgumentException e) {
+            // Also covers Gson's JsonSyntaxException
+            respondJson(exchange, 400, "{\"error\":\"" + String.valueOf(e.getMessage()).replace("\"", "'") + "\"}");
+            return;
+        }
+
+        // Durable before it is acknowledged; concurrent requests share one fsync
+        try {
+            readingWal.appendDurably(body, body.length);
+        } catch (IOException e) {
+            respondJson(exchange, 503, "{\"error\":\"" + String.valueOf(e.getMessage()).replace("\"", "'") + "\"}");
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respondJson(exchange, 503, "{\"error\":\"interrupted\"}");
+            return;
+        }
+        int accepted = readings.ingest(body, body.length);
+        respondJson(exchange, 200, "{\"accepted\":" + accepted + "}");
+    }
+
+    private static void handleReadingRange(HttpExchange exchange, String patientId) throws IOException {
+        long from;
+        long to;
+        try {
+            String toText = queryParam(exchange, "to");
+            String fromText = queryParam(exchange, "from");
+            to = toText == null ? System.currentTimeMillis() : Long.parseLong(toText);
+            from = fromText == null ? to - TimeUnit.HOURS.toMillis(1) : Long.parseLong(fromText);
+        } catch (NumberFormatException e) {
+            respondJson(exchange, 400, "{\"error\":\"invalid from or to\"}");
+            return;
+        }
+        // Written straight from the compressed blocks, without a HealthReading per reading
+        StringBuilder json = new StringBuilder("{\"patientId\":").append(gson.toJson(patientId)).append(",\"readings\":[");
+        ReadingStore.ReadingVisitor append = (timestamp, heartRate) ->
+            json.append("{\"timestamp\":").append(timestamp).append(",\"heartRate\":").append(heartRate).append("},");
+        // The store holds every reading since the window start (restored from the WAL on restart);
+        // older ones are only in the archive
+        long windowStart = System.currentTimeMillis() - readingStore.getRetentionMillis();
+        int count = 0;
+        if (from < windowStart) {
+            try {
+                count += ReadingArchive.scan(patientId, from, Math.min(to + 1, windowStart), append);
+            } catch (SQLException e) {
+                respondJson(exchange, 503, "{\"error\":\"" + String.valueOf(e.getMessage()).replace("\"", "'") + "\"}");
+                return;
+            }
+        }
+        if (to >= windowStart) {
+            count += readingStore.scan(patientId, Math.max(from, windowStart), to, append);
+        }
+        if (count > 0) json.setLength(json.length() - 1);
+        respondJson(exchange, 200, json.append("]}").toString());
+    }
+
+    /**
+     * GET /api/dashboard[?since=version] for the patient summaries changed since a version (all of
+     * them without one), and GET /api/dashboard/stream for the same deltas as server-sent events.
+     */
+    private static void handleDashboard(HttpExchange exchange) throws IOException {
+        if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+            respondJson(exchange, 405, "{\"error\":\"method not allowed\"}");
+            return;
+        }
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/api/dashboard/stream")) {
+            if (!dashboard.tryReserve()) {
+                respondJson(exchange, 503, "{\"error\":\"too many subscribers\"}");
+                return;
+            }
+            Thread.ofVirtual().name("dashboard-stream").start(() -> {
+                try {
+                    dashboard.stream(exchange, DASHBOARD_PUSH_MILLIS);
+                } catch (IOException e) {
+                    // Client disconnected
+                } finally {
+                    exchange.close();
                 }
+            });
+            return;
+        }
+        if (!path.equals("/api/dashboard") && !path.equals("/api/dashboard/")) {
+            respondJson(exchange, 404, "{\"error\":\"not found\"}");
+            return;
+        }
+        long since;
+        try {
+            String sinceText = queryParam(exchange, "since");
+            since = sinceText == null ? 0 : Long.parseLong(sinceText);
+        } catch (NumberFormatException e) {
+            respondJson(exchange, 400, "{\"error\":\"invalid since\"}");
+            return;
+        }
+        respondJson(exchange, 200, dashboard.changesSince(since, System.currentTimeMillis()));
+    }
+
+    /**
+     * GET /api/patients/{id}/consultations[?limit=..&cursor=..], GET /api/patients/{id}/consultations/{consultationId}
+     * and GET /api/patients/{id}/stream
+     */
+    private static void handlePatients(HttpExchange exchange) throws IOException {
+        if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+            respondJson(exchange, 405, "{\"error\":\"method not allowed\"}");
+            return;
+        }
+        String[] parts = exchange.getRequestURI().getPath().split("/");
+        // ["", "api", "patients", {id}, "consultations", {consultationId}]
+        if (parts.length == 5 && "stream".equals(parts[4])) {
+            handlePatientStream(exchange, parts[3]);
+        } else if (parts.length == 5 && "consultations".equals(parts[4])) {
+            handleConsultationList(exchange, parts[3]);
+        } else if (parts.length == 6 && "consultations".equals(parts[4])) {
+            handleConsultationDetail(exchange, parts[3], parts[5]);
+        } else {
+            respondJson(exchange, 404, "{\"error\":\"not found\"}");
+        }
+    }
+
+    /**
+     * Server-sent events with the patient's readings and alerts as they are ingested. Each stream
+     * gets its own virtual thread, so idle subscribers hold no platform thread and the request
+     * pool stays free for other endpoints.
+     */
+    private static void handlePatientStream(HttpExchange exchange, String patientId) throws IOException {
+        if (!PatientStateTable.isValidId(patientId)) {
+            respondJson(exchange, 400, "{\"error\":\"invalid patient id\"}");
+            return;
+        }
+        if (!patientEvents.tryReserve()) {
+            respondJson(exchange, 503, "{\"error\":\"too many subscribers\"}");
+            return;
+        }
+        Thread.ofVirtual().name("patient-stream-" + patientId).start(() -> {
+            try {
+                patientEvents.stream(exchange, patientId, readingStore.latest(patientId));
+            } catch (IOException e) {
+                // Client disconnected
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    /**
+     * One page of a patient's consultations, newest first. Only the list columns are selected,
+     * so the medical_history/vital_signs blobs are never read. Pages are keyed on
+     * (created_at, id) of the last row, which the (patient_id, created_at, id) index answers
+     * directly however deep the history; the cursor for the next page is in X-Next-Cursor.
+     */
+    private static void handleConsultationList(HttpExchange exchange, String patientId) throws IOException {
+        int limit;
+        long cursorMillis = Long.MAX_VALUE;
+        long cursorId = Long.MAX_VALUE;
+        try {
+            String limitText = queryParam(exchange, "limit");
+            limit = limitText == null ? HISTORY_PAGE_SIZE : Math.max(1, Math.min(HISTORY_MAX_PAGE_SIZE, Integer.parseInt(limitText)));
+            String cursor = queryParam(exchange, "cursor");
+            if (cursor != null) {
+                int sep = cursor.indexOf('_');
+                cursorMillis = Long.parseLong(cursor.substring(0, sep));
+                cursorId = Long.parseLong(cursor.substring(sep + 1));
             }
+        } catch (RuntimeException e) {
+            respondJson(exchange, 400, "{\"error\":\"invalid limit or cursor\"}");
+            return;
+        }
 
+        String sql = "SELECT id, doctor_id, appointment_time_text, reason, is_emergency, created_at "
+            + "FROM teleconsultations WHERE patient_id = ? AND (created_at < ? OR (created_at = ? AND id < ?)) "
+            + "ORDER BY created_at DESC, id DESC LIMIT ?";
+        List<java.util.Map<String, Object>> page = new ArrayList<>();
+        String lastCursor = null;
+        String nextCursor = null;
+        try (Connection conn = MySql.get()) {
+            ensureTeleconsultSchema(conn);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                java.sql.Timestamp before = new java.sql.Timestamp(cursorMillis == Long.MAX_VALUE ? MAX_TIMESTAMP_MILLIS : cursorMillis);
+                ps.setString(1, patientId);
+                ps.setTimestamp(2, before);
+                ps.setTimestamp(3, before);
+                ps.setLong(4, cursorId);
+                // One extra row tells whether there is a next page
+                ps.setInt(5, limit + 1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        if (page.size() == limit) {
+                            nextCursor = lastCursor;
+                            break;
+                        }
+                        long id = rs.getLong("id");
+                        java.sql.Timestamp createdAt = rs.getTimestamp("created_at");
+                        page.add(consultationSummary(rs, id, createdAt));
+                        lastCursor = createdAt.getTime() + "_" + id;
+                    }
+                }
+            }
         } catch (Exception e) {
-            respondJson(exchange, 500, "{\"error\":\"" + e.getMessage().replace("\"", "'") + "\"}");
+            respondJson(exchange, 500, "{\"error\":\"" + String.valueOf(e.getMessage()).replace("\"", "'") + "\"}");
+            return;
+        }
+
+        if (nextCursor != null) {
+            exchange.getResponseHeaders().add("X-Next-Cursor", nextCursor);
+        }
+        respondJson(exchange, 200, gson.toJson(page));
+    }
+
+    /**
+     * List row in the shape of the desktop client's Consultation DTO
+     */
+    private static java.util.Map<String, Object> consultationSummary(ResultSet rs, long id, java.sql.Timestamp createdAt) throws SQLException {
+        String doctorId = rs.getString("doctor_id");
+        SlotAvailability.Doctor doctor = doctorId == null ? null : availability.getDoctor(doctorId);
+
+        java.util.Map<String, Object> row = new java.util.LinkedHashMap<>();
+        row.put("id", String.valueOf(id));
+        row.put("doctorId", doctorId);
+        row.put("doctorName", doctor != null ? doctor.name : doctorId);
+        row.put("date", createdAt.toLocalDateTime().toString());
+        row.put("appointmentTime", rs.getString("appointment_time_text"));
+        row.put("status", rs.getBoolean("is_emergency") ? "Emergency" : "Booked");
+        row.put("notes", rs.getString("reason"));
+        return row;
+    }
+
+    /**
+     * Full consultation including medical history and vital signs. The query uses a streaming
+     * result set, so the driver holds only this row rather than buffering a result, and the blobs
+     * are copied from its character streams into the chunked response without building the JSON
+     * document as a String. The row itself, blobs included, is still read whole by the driver.
+     */
+    private static void handleConsultationDetail(HttpExchange exchange, String patientId, String consultationId) throws IOException {
+        long id;
+        try {
+            id = Long.parseLong(consultationId);
+        } catch (NumberFormatException e) {
+            respondJson(exchange, 404, "{\"error\":\"unknown consultation\"}");
+            return;
+        }
+
+        String sql = "SELECT id, doctor_id, time_slot_id, appointment_time_text, reason, symptoms, is_emergency, "
+            + "created_at, medical_history, vital_signs FROM teleconsultations WHERE id = ? AND patient_id = ?";
+        boolean streaming = false;
+        try (Connection conn = MySql.get()) {
+            ensureTeleconsultSchema(conn);
+            try (PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // Connector/J streams rows for a forward-only, read-only statement with this fetch size
+                ps.setFetchSize(Integer.MIN_VALUE);
+                ps.setLong(1, id);
+                ps.setString(2, patientId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        respondJson(exchange, 404, "{\"error\":\"unknown consultation\"}");
+                        return;
+                    }
+                    java.util.Map<String, Object> head = consultationSummary(rs, id, rs.getTimestamp("created_at"));
+                    head.put("timeSlotId", rs.getString("time_slot_id"));
+                    head.put("symptoms", rs.getString("symptoms"));
+                    String headJson = gson.toJson(head);
+
+                    boolean gzip = JsonCodec.acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+                    exchange.getResponseHeaders().add("Content-Type", "application/json");
+                    if (gzip) {
+                        exchange.getResponseHeaders().add("Content-Encoding", JsonCodec.GZIP);
+                    }
+                    exchange.sendResponseHeaders(200, 0);
+                    streaming = true;
+                    OutputStream body = gzip ? new GZIPOutputStream(exchange.getResponseBody()) : exchange.getResponseBody();
+                    try (java.io.Writer out = new java.io.BufferedWriter(new java.io.OutputStreamWriter(body, StandardCharsets.UTF_8))) {
+                        // Blobs were written by gson.toJson, so they are embedded as JSON values as-is
+                        out.write(headJson, 0, headJson.length() - 1);
+                        out.write(",\"medicalHistory\":");
+                        copyJsonColumn(rs, "medical_history", out);
+                        out.write(",\"vitalSigns\":");
+                        copyJsonColumn(rs, "vital_signs", out);
+                        out.write('}');
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            if (streaming) {
+                // Too late for an error status; the truncated body fails to parse on the client
+                exchange.close();
+            } else {
+                respondJson(exchange, 500, "{\"error\":\"" + String.valueOf(e.getMessage()).replace("\"", "'") + "\"}");
+            }
+        }
+    }
+
+    private static void copyJsonColumn(ResultSet rs, String column, java.io.Writer out) throws SQLException, IOException {
+        try (java.io.Reader in = rs.getCharacterStream(column)) {
+            if (in == null) {
+                out.write("null");
+            } else {
+                in.transferTo(out);
+            }
+        }
+    }
+
+    /**
+     * GET /api/doctors/available[?specialty=..&withinMinutes=..] and GET /api/doctors/{id}/slots?date=yyyy-MM-dd
+     */
+    private static void handleDoctors(HttpExchange exchange) throws IOException {
+        if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+            respondJson(exchange, 405, "{\"error\":\"method not allowed\"}");
+            return;
+        }
+        String[] parts = exchange.getRequestURI().getPath().split("/");
+        // ["", "api", "doctors", "available"] or ["", "api", "doctors", "{id}", "slots"]
+        if (parts.length == 4 && "available".equals(parts[3])) {
+            handleAvailableDoctors(exchange);
+        } else if (parts.length == 5 && "slots".equals(parts[4])) {
+            handleDoctorSlots(exchange, parts[3]);
+        } else {
+            respondJson(exchange, 404, "{\"error\":\"not found\"}");
+        }
+    }
+
+    private static void handleAvailableDoctors(HttpExchange exchange) throws IOException {
+        String specialty = queryParam(exchange, "specialty");
+        String withinMinutes = queryParam(exchange, "withinMinutes");
+
+        if (specialty == null && withinMinutes == null) {
+            // Whole directory; cacheable until a doctor is added or changed
+            String etag = "\"" + INSTANCE_TAG + "-d" + availability.getDirectoryVersion() + "\"";
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                respondNotModified(exchange, etag);
+                return;
+            }
+            exchange.getResponseHeaders().add("ETag", etag);
+            respondJson(exchange, 200, gson.toJson(availability.getDoctors()));
+            return;
+        }
+
+        Collection<SlotAvailability.Doctor> doctors;
+        if (withinMinutes != null) {
+            int minutes;
+            try {
+                minutes = Integer.parseInt(withinMinutes);
+            } catch (NumberFormatException e) {
+                respondJson(exchange, 400, "{\"error\":\"withinMinutes must be a number\"}");
+                return;
+            }
+            if (minutes < 0 || minutes > 24 * 60) {
+                respondJson(exchange, 400, "{\"error\":\"withinMinutes must be between 0 and 1440\"}");
+                return;
+            }
+            doctors = availability.freeWithin(specialty, LocalDateTime.now(), minutes);
+        } else {
+            doctors = new ArrayList<>();
+            for (SlotAvailability.Doctor doctor : availability.getDoctors()) {
+                if (doctor.specialty.equalsIgnoreCase(specialty.trim())) doctors.add(doctor);
+            }
+        }
+        respondJson(exchange, 200, gson.toJson(doctors));
+    }
+
+    private static void handleDoctorSlots(HttpExchange exchange, String doctorId) throws IOException {
+        String dateText = queryParam(exchange, "date");
+        LocalDate date;
+        try {
+            date = dateText == null ? LocalDate.now() : LocalDate.parse(dateText);
+        } catch (DateTimeParseException e) {
+            respondJson(exchange, 400, "{\"error\":\"date must be yyyy-MM-dd\"}");
+            return;
+        }
+
+        SlotAvailability.DaySnapshot day = availability.getDay(doctorId, date);
+        if (day == null) {
+            respondJson(exchange, 404, "{\"error\":\"unknown doctor\"}");
+            return;
+        }
+
+        String etag = "\"" + INSTANCE_TAG + "-" + doctorId + "-" + date + "-" + day.version + "\"";
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            respondNotModified(exchange, etag);
             return;
         }
 
-        respondJson(exchange, 201, "{\"message\":\"booking created\",\"id\":" + generatedId + "}");
+        List<SlotView> slots = new ArrayList<>();
+        for (int slot = 0; slot < SlotAvailability.SLOTS_PER_DAY; slot++) {
+            if (!day.isWorking(slot)) continue;
+            LocalDateTime start = SlotAvailability.slotStart(date, slot);
+            slots.add(new SlotView(SlotAvailability.slotId(doctorId, date, slot), start,
+                start.plusMinutes(SlotAvailability.SLOT_MINUTES), day.isFree(slot), doctorId));
+        }
+        exchange.getResponseHeaders().add("ETag", etag);
+        respondJson(exchange, 200, gson.toJson(slots));
+    }
+
+    /**
+     * JSON reading batch as sent by older gateways
+     */
+    private static class ReadingBatch {
+        String patientId;
+        List<HealthReading> readings;
+    }
+
+    /**
+     * Slot as serialized to the desktop client's TimeSlot DTO
+     */
+    private static class SlotView {
+        final String id;
+        final String startTime;
+        final String endTime;
+        final boolean available;
+        final String doctorId;
+
+        SlotView(String id, LocalDateTime startTime, LocalDateTime endTime, boolean available, String doctorId) {
+            this.id = id;
+            this.startTime = startTime.toString();
+            this.endTime = endTime.toString();
+            this.available = available;
+            this.doctorId = doctorId;
+        }
     }
 
     // Helper to safely convert object to string
@@ -164,20 +952,55 @@ public class Server {
     }
 
     private static String readBody(HttpExchange exchange) throws IOException {
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(exchange.getRequestBody()))) {
-            StringBuilder sb = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) sb.append(line);
-            return sb.toString();
+        try (InputStream in = exchange.getRequestBody()) {
+            return JsonCodec.readBody(in, exchange.getRequestHeaders().getFirst("Content-Encoding"));
+        }
+    }
+
+    /**
+     * Raw request body, gunzipped if needed; null if it exceeds maxBytes
+     */
+    private static byte[] readBinaryBody(HttpExchange exchange, int maxBytes) throws IOException {
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        try (InputStream raw = exchange.getRequestBody();
+             InputStream in = encoding != null && encoding.trim().equalsIgnoreCase(JsonCodec.GZIP) ? new GZIPInputStream(raw) : raw) {
+            byte[] body = in.readNBytes(maxBytes + 1);
+            return body.length > maxBytes ? null : body;
+        }
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            if (name.equals(URLDecoder.decode(key, StandardCharsets.UTF_8))) {
+                return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
         }
+        return null;
+    }
+
+    private static void respondNotModified(HttpExchange exchange, String etag) throws IOException {
+        exchange.getResponseHeaders().add("ETag", etag);
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
     }
 
     private static void respondJson(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
         Headers headers = exchange.getResponseHeaders();
         headers.add("Content-Type", "application/json");
-        exchange.sendResponseHeaders(status, body.getBytes().length);
+        // Tells clients they may gzip request bodies
+        headers.add("Accept-Encoding", JsonCodec.GZIP);
+        if (JsonCodec.shouldCompress(bytes) && JsonCodec.acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"))) {
+            bytes = JsonCodec.gzip(bytes);
+            headers.add("Content-Encoding", JsonCodec.GZIP);
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
         try (OutputStream os = exchange.getResponseBody()) {
-            os.write(body.getBytes());
+            os.write(bytes);
         }
     }
 }
@@ -0,0 +1,245 @@
+package com.heartsafe.desktop;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Running statistics for a monitoring session, updated once per reading
+ * Mean and variance use Welford's algorithm, so nothing is recomputed over the history.
+ * Time in each zone is credited to the zone of the previous reading until the next one
+ * arrives (gaps longer than MAX_SAMPLE_GAP_MILLIS count as no data). The HRV proxy is the
+ * RMSSD of the beat intervals implied by successive readings (60000 / BPM); with one
+ * reading every few seconds this tracks short-term variability, not true beat-to-beat HRV.
+ * The session trend keeps at most TREND_BUCKETS min/max/sum buckets; when they fill up,
+ * neighbouring buckets are merged in pairs, so a session of any length charts in fixed memory.
+ */
+public class SessionStats {
+    public static final int ZONE_NORMAL = 0;
+    public static final int ZONE_ELEVATED = 1;
+    public static final int ZONE_CRITICAL = 2;
+    private static final String[] ZONE_NAMES = {"Normal", "Elevated", "Critical"};
+
+    // Same bands as the monitor's colour coding
+    public static final int CRITICAL_HIGH_BPM = 120;
+    public static final int CRITICAL_LOW_BPM = 50;
+    public static final int ELEVATED_HIGH_BPM = 100;
+    public static final int ELEVATED_LOW_BPM = 60;
+
+    private static final long MAX_SAMPLE_GAP_MILLIS = 30_000;
+    // More than a report chart has columns, so short sessions chart reading by reading
+    static final int TREND_BUCKETS = 1024;
+
+    private long count;
+    private double mean;
+    private double m2;
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+    private long highCount;
+    private long lowCount;
+    private final long[] samplesInZone = new long[3];
+    private final long[] millisInZone = new long[3];
+    private long firstAtMillis;
+    private long lastAtMillis;
+    private int lastZone;
+    private double lastIntervalMillis;
+    private long successiveDiffs;
+    private double sumSquaredDiffs;
+    private final int[] trendMin = new int[TREND_BUCKETS];
+    private final int[] trendMax = new int[TREND_BUCKETS];
+    private final long[] trendSum = new long[TREND_BUCKETS];
+    private final int[] trendCount = new int[TREND_BUCKETS];
+    private int trendSize;
+    private int readingsPerBucket = 1;
+
+    public static int zoneOf(int heartRate) {
+        if (heartRate >= CRITICAL_HIGH_BPM || heartRate <= CRITICAL_LOW_BPM) return ZONE_CRITICAL;
+        if (heartRate >= ELEVATED_HIGH_BPM || heartRate <= ELEVATED_LOW_BPM) return ZONE_ELEVATED;
+        return ZONE_NORMAL;
+    }
+
+    public static String zoneName(int zone) {
+        return ZONE_NAMES[zone];
+    }
+
+    /**
+     * Statistics for readings that were not tracked live, assuming a fixed sampling interval
+     */
+    public static Snapshot fromHistory(List<Integer> heartRates, long sampleIntervalMillis) {
+        SessionStats stats = new SessionStats();
+        long at = 0;
+        for (int hr : heartRates) {
+            stats.add(hr, at);
+            at += sampleIntervalMillis;
+        }
+        return stats.snapshot();
+    }
+
+    public synchronized void add(int heartRate, long atMillis) {
+        if (heartRate <= 0) return;
+        count++;
+        double delta = heartRate - mean;
+        mean += delta / count;
+        m2 += delta * (heartRate - mean);
+        min = Math.min(min, heartRate);
+        max = Math.max(max, heartRate);
+        if (heartRate > CRITICAL_HIGH_BPM) highCount++;
+        if (heartRate < CRITICAL_LOW_BPM) lowCount++;
+
+        int zone = zoneOf(heartRate);
+        samplesInZone[zone]++;
+        double intervalMillis = 60_000.0 / heartRate;
+        if (count == 1) {
+            firstAtMillis = atMillis;
+        } else {
+            long gap = atMillis - lastAtMillis;
+            if (gap > 0 && gap <= MAX_SAMPLE_GAP_MILLIS) {
+                millisInZone[lastZone] += gap;
+            }
+            double diff = intervalMillis - lastIntervalMillis;
+            sumSquaredDiffs += diff * diff;
+            successiveDiffs++;
+        }
+        lastAtMillis = atMillis;
+        lastZone = zone;
+        lastIntervalMillis = intervalMillis;
+        addToTrend(heartRate);
+    }
+
+    private void addToTrend(int heartRate) {
+        int last = trendSize - 1;
+        if (last >= 0 && trendCount[last] < readingsPerBucket) {
+            trendMin[last] = Math.min(trendMin[last], heartRate);
+            trendMax[last] = Math.max(trendMax[last], heartRate);
+            trendSum[last] += heartRate;
+            trendCount[last]++;
+            return;
+        }
+        if (trendSize == TREND_BUCKETS) {
+            for (int i = 0; i < TREND_BUCKETS / 2; i++) {
+                int a = 2 * i;
+                int b = a + 1;
+                trendMin[i] = Math.min(trendMin[a], trendMin[b]);
+                trendMax[i] = Math.max(trendMax[a], trendMax[b]);
+                trendSum[i] = trendSum[a] + trendSum[b];
+                trendCount[i] = trendCount[a] + trendCount[b];
+            }
+            trendSize = TREND_BUCKETS / 2;
+            readingsPerBucket *= 2;
+        }
+        trendMin[trendSize] = heartRate;
+        trendMax[trendSize] = heartRate;
+        trendSum[trendSize] = heartRate;
+        trendCount[trendSize] = 1;
+        trendSize++;
+    }
+
+    public synchronized void reset() {
+        count = 0;
+        mean = 0;
+        m2 = 0;
+        min = Integer.MAX_VALUE;
+        max = Integer.MIN_VALUE;
+        highCount = 0;
+        lowCount = 0;
+        Arrays.fill(samplesInZone, 0);
+        Arrays.fill(millisInZone, 0);
+        successiveDiffs = 0;
+        sumSquaredDiffs = 0;
+        trendSize = 0;
+        readingsPerBucket = 1;
+    }
+
+    /**
+     * Bounded-size copy of the current values; the trend is at most TREND_BUCKETS entries
+     */
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Immutable view of the statistics at one point in time
+     */
+    public static class Snapshot {
+        private final long count;
+        private final double mean;
+        private final double variance;
+        private final int min;
+        private final int max;
+        private final long highCount;
+        private final long lowCount;
+        private final long[] samplesInZone;
+        private final long[] millisInZone;
+        private final long durationMillis;
+        private final double rmssdMillis;
+        private final Trend trend;
+
+        private Snapshot(SessionStats s) {
+            this.count = s.count;
+            this.mean = s.mean;
+            this.variance = s.count > 1 ? s.m2 / (s.count - 1) : 0;
+            this.min = s.count > 0 ? s.min : 0;
+            this.max = s.count > 0 ? s.max : 0;
+            this.highCount = s.highCount;
+            this.lowCount = s.lowCount;
+            this.samplesInZone = s.samplesInZone.clone();
+            this.millisInZone = s.millisInZone.clone();
+            this.durationMillis = s.count > 0 ? s.lastAtMillis - s.firstAtMillis : 0;
+            this.rmssdMillis = s.successiveDiffs > 0 ? Math.sqrt(s.sumSquaredDiffs / s.successiveDiffs) : 0;
+            this.trend = new Trend(s);
+        }
+
+        public long getCount() { return count; }
+        public double getMean() { return mean; }
+        public double getVariance() { return variance; }
+        public double getStdDev() { return Math.sqrt(variance); }
+        public int getMin() { return min; }
+        public int getMax() { return max; }
+        /** Readings above CRITICAL_HIGH_BPM */
+        public long getHighCount() { return highCount; }
+        /** Readings below CRITICAL_LOW_BPM */
+        public long getLowCount() { return lowCount; }
+        public long getSamplesInZone(int zone) { return samplesInZone[zone]; }
+        public long getMillisInZone(int zone) { return millisInZone[zone]; }
+        public long getDurationMillis() { return durationMillis; }
+        /** HRV proxy: RMSSD of successive implied beat intervals */
+        public double getRmssdMillis() { return rmssdMillis; }
+        /** Decimated series of the whole session, oldest first */
+        public Trend getTrend() { return trend; }
+
+        /**
+         * Share of tracked time in a zone, falling back to the share of readings
+         */
+        public double getZoneFraction(int zone) {
+            long trackedMillis = millisInZone[ZONE_NORMAL] + millisInZone[ZONE_ELEVATED] + millisInZone[ZONE_CRITICAL];
+            if (trackedMillis > 0) return (double) millisInZone[zone] / trackedMillis;
+            return count > 0 ? (double) samplesInZone[zone] / count : 0;
+        }
+    }
+
+    /**
+     * Session trend in time order; each bucket summarises getReadingsPerBucket() consecutive
+     * readings, except the newest, which may hold fewer
+     */
+    public static class Trend {
+        private final int[] min;
+        private final int[] max;
+        private final long[] sum;
+        private final int[] count;
+        private final int readingsPerBucket;
+
+        private Trend(SessionStats s) {
+            this.min = Arrays.copyOf(s.trendMin, s.trendSize);
+            this.max = Arrays.copyOf(s.trendMax, s.trendSize);
+            this.sum = Arrays.copyOf(s.trendSum, s.trendSize);
+            this.count = Arrays.copyOf(s.trendCount, s.trendSize);
+            this.readingsPerBucket = s.readingsPerBucket;
+        }
+
+        public int size() { return count.length; }
+        public int getReadingsPerBucket() { return readingsPerBucket; }
+        public int getMin(int bucket) { return min[bucket]; }
+        public int getMax(int bucket) { return max[bucket]; }
+        public long getSum(int bucket) { return sum[bucket]; }
+        public int getCount(int bucket) { return count[bucket]; }
+    }
+}
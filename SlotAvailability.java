@@ -0,0 +1,431 @@
+package com.heartsafe.backend;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Doctor directory and slot availability for teleconsultations
+ * Each doctor's day is a 96-bit bitmap of 15-minute slots (set bit = free),
+ * created from the doctor's working hours when a slot on that day is first reserved; queries
+ * about other days are answered from the working hours alone, so only days with bookings are
+ * kept, and past days are dropped by {@link #purgeBefore}. Free-slot and "anyone free soon"
+ * queries are a handful of bit operations per doctor. Bookings for the same doctor are
+ * serialized by {@link #book}, so the free check and the durable commit are atomic.
+ */
+public class SlotAvailability {
+    public static final int SLOT_MINUTES = 15;
+    public static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+
+    /**
+     * Result of {@link #book}
+     */
+    public enum BookingOutcome {
+        BOOKED,
+        // Reserved already, here or (as reported by the commit) in the database
+        TAKEN,
+        UNKNOWN_DOCTOR,
+        OUTSIDE_WORKING_HOURS,
+        // The commit neither booked nor found the slot taken, e.g. the request is handled elsewhere
+        NOT_BOOKED
+    }
+
+    private final Map<String, Doctor> doctors = new ConcurrentHashMap<>();
+    private final Map<String, List<Doctor>> bySpecialty = new ConcurrentHashMap<>();
+    private final Map<String, Map<Long, DaySlots>> schedules = new ConcurrentHashMap<>();
+    private final AtomicLong directoryVersion = new AtomicLong();
+    private final Lock[] doctorLocks = new Lock[64];
+
+    public SlotAvailability() {
+        for (int i = 0; i < doctorLocks.length; i++) {
+            doctorLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Directory seeded with the demo doctors the desktop client falls back to
+     */
+    public static SlotAvailability withDemoDoctors() {
+        SlotAvailability availability = new SlotAvailability();
+        availability.register(new Doctor("DOC001", "Dr. Sarah Johnson", "Cardiologist", 15, 4.8, 150.0,
+            "Mon-Fri 9:00-17:00", weekdays(DayOfWeek.MONDAY, DayOfWeek.FRIDAY), 9 * 4, 17 * 4));
+        availability.register(new Doctor("DOC002", "Dr. Michael Chen", "Cardiac Electrophysiologist", 12, 4.9, 180.0,
+            "Tue-Sat 10:00-18:00", weekdays(DayOfWeek.TUESDAY, DayOfWeek.SATURDAY), 10 * 4, 18 * 4));
+        availability.register(new Doctor("DOC003", "Dr. Emily Rodriguez", "Emergency Medicine", 8, 4.7, 120.0,
+            "24/7 Emergency", weekdays(DayOfWeek.MONDAY, DayOfWeek.SUNDAY), 0, SLOTS_PER_DAY));
+        return availability;
+    }
+
+    /**
+     * Add or replace a doctor in the directory
+     */
+    public void register(Doctor doctor) {
+        Doctor previous = doctors.put(doctor.id, doctor);
+        if (previous != null) {
+            bySpecialty.getOrDefault(specialtyKey(previous.specialty), Collections.emptyList()).remove(previous);
+            schedules.remove(doctor.id);
+        }
+        bySpecialty.computeIfAbsent(specialtyKey(doctor.specialty), k -> new CopyOnWriteArrayList<>()).add(doctor);
+        directoryVersion.incrementAndGet();
+    }
+
+    public Collection<Doctor> getDoctors() {
+        return doctors.values();
+    }
+
+    public Doctor getDoctor(String doctorId) {
+        return doctors.get(doctorId);
+    }
+
+    /**
+     * Changes whenever the directory changes; used as the doctor list ETag
+     */
+    public long getDirectoryVersion() {
+        return directoryVersion.get();
+    }
+
+    /**
+     * Slot indexes (0-95) within the doctor's working hours on the given date, with free state
+     * @return null if the doctor is unknown
+     */
+    public DaySnapshot getDay(String doctorId, LocalDate date) {
+        Doctor doctor = doctors.get(doctorId);
+        if (doctor == null) return null;
+        DaySlots day = readDaySlots(doctor, date);
+        synchronized (day) {
+            return new DaySnapshot(doctor, date, doctor.workingMask(date), day.lo, day.hi, day.version);
+        }
+    }
+
+    /**
+     * Doctors with the given specialty (case-insensitive; null for any) who have a free slot
+     * starting within the next {@code minutes} from {@code from}
+     */
+    public List<Doctor> freeWithin(String specialty, LocalDateTime from, int minutes) {
+        Collection<Doctor> candidates = specialty == null
+            ? doctors.values()
+            : bySpecialty.getOrDefault(specialtyKey(specialty), Collections.emptyList());
+
+        // Slots whose start lies in [from, from + minutes]; at most two calendar days
+        LocalDateTime first = ceilToSlot(from);
+        LocalDateTime last = from.plusMinutes(minutes);
+        List<Doctor> result = new ArrayList<>();
+        for (Doctor doctor : candidates) {
+            for (LocalDateTime t = first; !t.isAfter(last); ) {
+                LocalDate date = t.toLocalDate();
+                int fromSlot = slotIndex(t.toLocalTime());
+                int toSlot = date.equals(last.toLocalDate()) ? slotIndex(last.toLocalTime()) : SLOTS_PER_DAY - 1;
+                if (hasFree(readDaySlots(doctor, date), fromSlot, toSlot)) {
+                    result.add(doctor);
+                    break;
+                }
+                t = date.plusDays(1).atStartOfDay();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether a slot is within working hours and not yet reserved
+     */
+    public boolean isFree(String doctorId, LocalDate date, int slot) {
+        Doctor doctor = doctors.get(doctorId);
+        if (doctor == null || slot < 0 || slot >= SLOTS_PER_DAY) return false;
+        DaySlots day = readDaySlots(doctor, date);
+        synchronized (day) {
+            return day.isFree(slot);
+        }
+    }
+
+    /**
+     * Book a slot: under the slot doctor's lock, check that it is free, run the commit (which
+     * stores the booking durably) and mark the slot taken if the commit returns BOOKED or TAKEN.
+     * Slots that are only ever booked through here cannot be given out twice.
+     * @throws Exception whatever the commit throws; the slot stays free
+     */
+    public BookingOutcome book(SlotRef slot, Callable<BookingOutcome> commit) throws Exception {
+        Doctor doctor = doctors.get(slot.doctorId);
+        if (doctor == null) return BookingOutcome.UNKNOWN_DOCTOR;
+        if (!doctor.worksAt(slot.date, slot.slot)) return BookingOutcome.OUTSIDE_WORKING_HOURS;
+        Lock lock = doctorLocks[Math.floorMod(slot.doctorId.hashCode(), doctorLocks.length)];
+        lock.lock();
+        try {
+            if (!isFree(slot.doctorId, slot.date, slot.slot)) return BookingOutcome.TAKEN;
+            BookingOutcome outcome = commit.call();
+            if (outcome == BookingOutcome.BOOKED || outcome == BookingOutcome.TAKEN) {
+                reserve(slot.doctorId, slot.date, slot.slot);
+            }
+            return outcome;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Mark a free slot as taken. Returns false if it was not free.
+     */
+    public boolean reserve(String doctorId, LocalDate date, int slot) {
+        Doctor doctor = doctors.get(doctorId);
+        if (doctor == null || slot < 0 || slot >= SLOTS_PER_DAY) return false;
+        DaySlots day = daySlots(doctor, date);
+        synchronized (day) {
+            if (!day.isFree(slot)) return false;
+            day.set(slot, false);
+            return true;
+        }
+    }
+
+    /**
+     * Return a reserved slot to the free pool if it is within working hours
+     */
+    public void release(String doctorId, LocalDate date, int slot) {
+        Doctor doctor = doctors.get(doctorId);
+        if (doctor == null || slot < 0 || slot >= SLOTS_PER_DAY) return;
+        if (!doctor.worksAt(date, slot)) return;
+        DaySlots day = daySlots(doctor, date);
+        synchronized (day) {
+            day.set(slot, true);
+        }
+    }
+
+    /**
+     * Forget reservations on days before the given date; they can no longer be booked or queried usefully
+     */
+    public void purgeBefore(LocalDate date) {
+        long cutoff = date.toEpochDay();
+        for (Map<Long, DaySlots> days : schedules.values()) {
+            days.keySet().removeIf(day -> day < cutoff);
+        }
+    }
+
+    /**
+     * Doctor days holding reservations
+     */
+    public int getScheduledDayCount() {
+        int count = 0;
+        for (Map<Long, DaySlots> days : schedules.values()) {
+            count += days.size();
+        }
+        return count;
+    }
+
+    public static int slotIndex(LocalTime time) {
+        return (time.getHour() * 60 + time.getMinute()) / SLOT_MINUTES;
+    }
+
+    public static LocalDateTime slotStart(LocalDate date, int slot) {
+        return date.atStartOfDay().plusMinutes((long) slot * SLOT_MINUTES);
+    }
+
+    /**
+     * Stable slot id understood by the booking endpoint: {doctorId}_{yyyy-MM-dd}_{slot}
+     */
+    public static String slotId(String doctorId, LocalDate date, int slot) {
+        return doctorId + "_" + date + "_" + slot;
+    }
+
+    /**
+     * Parse an id produced by {@link #slotId}; null if it is not in that form
+     */
+    public static SlotRef parseSlotId(String slotId) {
+        if (slotId == null) return null;
+        int last = slotId.lastIndexOf('_');
+        int middle = last > 0 ? slotId.lastIndexOf('_', last - 1) : -1;
+        if (middle <= 0) return null;
+        try {
+            LocalDate date = LocalDate.parse(slotId.substring(middle + 1, last));
+            int slot = Integer.parseInt(slotId.substring(last + 1));
+            if (slot < 0 || slot >= SLOTS_PER_DAY) return null;
+            return new SlotRef(slotId.substring(0, middle), date, slot);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private DaySlots daySlots(Doctor doctor, LocalDate date) {
+        return schedules
+            .computeIfAbsent(doctor.id, k -> new ConcurrentHashMap<>())
+            .computeIfAbsent(date.toEpochDay(), k -> new DaySlots(doctor.workingMask(date)));
+    }
+
+    /**
+     * The stored day, or an unstored one with every working slot free; queries for arbitrary
+     * dates must not grow the schedule
+     */
+    private DaySlots readDaySlots(Doctor doctor, LocalDate date) {
+        Map<Long, DaySlots> days = schedules.get(doctor.id);
+        DaySlots day = days == null ? null : days.get(date.toEpochDay());
+        return day != null ? day : new DaySlots(doctor.workingMask(date));
+    }
+
+    private static boolean hasFree(DaySlots day, int fromSlot, int toSlot) {
+        long loMask = rangeMask(fromSlot, toSlot, 0);
+        long hiMask = rangeMask(fromSlot, toSlot, 64);
+        synchronized (day) {
+            return (day.lo & loMask) != 0 || (day.hi & hiMask) != 0;
+        }
+    }
+
+    /**
+     * Bits [from, to] inclusive that fall into the 64-bit word starting at {@code base}
+     */
+    static long rangeMask(int from, int to, int base) {
+        int lo = Math.max(from, base) - base;
+        int hi = Math.min(to, base + 63) - base;
+        if (lo > hi) return 0;
+        long upper = hi == 63 ? -1L : (1L << (hi + 1)) - 1;
+        return upper & (-1L << lo);
+    }
+
+    private static LocalDateTime ceilToSlot(LocalDateTime time) {
+        LocalDateTime floor = time.withSecond(0).withNano(0)
+            .withMinute(time.getMinute() / SLOT_MINUTES * SLOT_MINUTES);
+        return floor.isBefore(time) ? floor.plusMinutes(SLOT_MINUTES) : floor;
+    }
+
+    private static String specialtyKey(String specialty) {
+        return specialty == null ? "" : specialty.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static int weekdays(DayOfWeek first, DayOfWeek last) {
+        int mask = 0;
+        for (int d = first.getValue(); d <= last.getValue(); d++) {
+            mask |= 1 << (d - 1);
+        }
+        return mask;
+    }
+
+    /**
+     * Mutable free-slot bitmap for one doctor and date
+     */
+    private static class DaySlots {
+        long lo;
+        long hi;
+        long version;
+
+        DaySlots(long[] mask) {
+            this.lo = mask[0];
+            this.hi = mask[1];
+        }
+
+        boolean isFree(int slot) {
+            return slot < 64 ? (lo & (1L << slot)) != 0 : (hi & (1L << (slot - 64))) != 0;
+        }
+
+        void set(int slot, boolean free) {
+            if (slot < 64) {
+                lo = free ? lo | (1L << slot) : lo & ~(1L << slot);
+            } else {
+                hi = free ? hi | (1L << (slot - 64)) : hi & ~(1L << (slot - 64));
+            }
+            version++;
+        }
+    }
+
+    /**
+     * Doctor, date and slot index identified by a slot id
+     */
+    public static class SlotRef {
+        public final String doctorId;
+        public final LocalDate date;
+        public final int slot;
+
+        SlotRef(String doctorId, LocalDate date, int slot) {
+            this.doctorId = doctorId;
+            this.date = date;
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * Consistent read of one doctor's day
+     */
+    public static class DaySnapshot {
+        public final Doctor doctor;
+        public final LocalDate date;
+        private final long[] working;
+        private final long lo;
+        private final long hi;
+        public final long version;
+
+        DaySnapshot(Doctor doctor, LocalDate date, long[] working, long lo, long hi, long version) {
+            this.doctor = doctor;
+            this.date = date;
+            this.working = working;
+            this.lo = lo;
+            this.hi = hi;
+            this.version = version;
+        }
+
+        public boolean isWorking(int slot) {
+            return slot < 64 ? (working[0] & (1L << slot)) != 0 : (working[1] & (1L << (slot - 64))) != 0;
+        }
+
+        public boolean isFree(int slot) {
+            return slot < 64 ? (lo & (1L << slot)) != 0 : (hi & (1L << (slot - 64))) != 0;
+        }
+    }
+
+    /**
+     * Directory entry; field names match the desktop client's Doctor DTO
+     */
+    public static class Doctor {
+        public final String id;
+        public final String name;
+        public final String specialty;
+        public final int experience;
+        public final double rating;
+        public final double consultationFee;
+        public final String availability;
+        private final transient int workDays;
+        private final transient int workStartSlot;
+        private final transient int workEndSlot;
+
+        /**
+         * @param workDays bitmask of working days, bit 0 = Monday
+         * @param workStartSlot first working slot of the day (inclusive)
+         * @param workEndSlot last working slot of the day (exclusive)
+         */
+        public Doctor(String id, String name, String specialty, int experience, double rating,
+                      double consultationFee, String availability, int workDays, int workStartSlot, int workEndSlot) {
+            this.id = id;
+            this.name = name;
+            this.specialty = specialty;
+            this.experience = experience;
+            this.rating = rating;
+            this.consultationFee = consultationFee;
+            this.availability = availability;
+            this.workDays = workDays;
+            this.workStartSlot = workStartSlot;
+            this.workEndSlot = workEndSlot;
+        }
+
+        boolean worksAt(LocalDate date, int slot) {
+            return (workDays & (1 << (date.getDayOfWeek().getValue() - 1))) != 0
+                && slot >= workStartSlot && slot < workEndSlot;
+        }
+
+        long[] workingMask(LocalDate date) {
+            if ((workDays & (1 << (date.getDayOfWeek().getValue() - 1))) == 0 || workEndSlot <= workStartSlot) {
+                return new long[2];
+            }
+            return new long[] {
+                rangeMask(workStartSlot, workEndSlot - 1, 0),
+                rangeMask(workStartSlot, workEndSlot - 1, 64)
+            };
+        }
+    }
+}
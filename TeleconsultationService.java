@@ -1,20 +1,42 @@
 package com.heartsafe.desktop;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.annotations.SerializedName;
+import com.heartsafe.shared.json.JsonCodec;
+import com.heartsafe.shared.models.ReadingBatchCodec;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
@@ -23,45 +45,189 @@ import java.util.logging.Logger;
  */
 public class TeleconsultationService {
     private static final Logger LOGGER = Logger.getLogger(TeleconsultationService.class.getName());
+    // 409 error codes from the backend: a duplicate of a request still running, or a lost slot race
+    private static final String REQUEST_IN_PROGRESS = "request_in_progress";
     
     private final Gson gson;
     private String backendBaseUrl;
     private CloseableHttpClient httpClient;
+    private final ExecutorService executor;
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, WireStats> wireStats = new ConcurrentHashMap<>();
+    // Request bodies are only gzipped once the backend has advertised that it accepts them
+    private volatile boolean backendAcceptsGzip;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    
+    // Doctor directory changes rarely; slot availability is keyed by doctor and date and goes stale faster
+    private static final String DOCTORS_KEY = "available";
+    private final ResponseCache<List<Doctor>> doctorCache;
+    private final ResponseCache<List<TimeSlot>> slotCache;
     
     public TeleconsultationService() {
-        this.gson = new GsonBuilder()
-            .setDateFormat("yyyy-MM-dd HH:mm:ss")
-            .setPrettyPrinting()
-            .create();
-        this.httpClient = HttpClients.createDefault();
-        
         // Load backend URL from system properties or use default
-        this.backendBaseUrl = System.getProperty("heartsafe.backend.url", "http://localhost:8081");
+        this(System.getProperty("heartsafe.backend.url", "http://localhost:8081"), HttpSettings.fromSystemProperties());
+    }
+    
+    public TeleconsultationService(String backendBaseUrl, HttpSettings settings) {
+        this.gson = JsonCodec.gson();
+        JsonCodec.warmUp(Doctor[].class, TimeSlot[].class, ConsultationBooking.class, BookingResult.class,
+            EmergencyConsultationRequest.class, Consultation[].class);
+        this.backendBaseUrl = backendBaseUrl;
+        this.httpClient = createHttpClient(settings);
+        this.maxRetries = settings.maxRetries;
+        this.retryBackoffMillis = settings.retryBackoffMillis;
+        // Requests block on I/O; virtual threads keep them off the common pool
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.doctorCache = new ResponseCache<>("doctors", 8,
+            TimeUnit.MINUTES.toMillis(5), TimeUnit.MINUTES.toMillis(30), executor);
+        this.slotCache = new ResponseCache<>("slots", 512,
+            TimeUnit.MINUTES.toMillis(1), TimeUnit.MINUTES.toMillis(10), executor);
         
         LOGGER.info("TeleconsultationService initialized with backend: " + backendBaseUrl);
     }
     
+    /**
+     * Build a pooled client with keep-alive, timeouts and idle connection eviction
+     */
+    private static CloseableHttpClient createHttpClient(HttpSettings settings) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(settings.maxTotalConnections);
+        connectionManager.setDefaultMaxPerRoute(settings.maxConnectionsPerRoute);
+        connectionManager.setValidateAfterInactivity(2000);
+        
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(settings.connectTimeoutMillis)
+            .setSocketTimeout(settings.socketTimeoutMillis)
+            .setConnectionRequestTimeout(settings.connectionRequestTimeoutMillis)
+            .build();
+        
+        return HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            // Compression is negotiated in execute() so bytes on the wire can be measured
+            .disableContentCompression()
+            .setDefaultRequestConfig(requestConfig)
+            .setKeepAliveStrategy((response, context) -> {
+                long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                return serverKeepAlive > 0 ? serverKeepAlive : settings.keepAliveMillis;
+            })
+            .evictExpiredConnections()
+            .evictIdleConnections(settings.idleEvictionMillis, TimeUnit.MILLISECONDS)
+            .build();
+    }
+    
+    /**
+     * Per-endpoint request latency, keyed by endpoint name
+     */
+    public Map<String, LatencyHistogram> getLatencyHistograms() {
+        return Collections.unmodifiableMap(latencies);
+    }
+    
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+    
+    /**
+     * Execute a request, read the whole body and record its latency under the endpoint name
+     */
+    private HttpResult execute(String endpoint, HttpUriRequest request) throws IOException {
+        long start = System.nanoTime();
+        request.setHeader("Accept-Encoding", JsonCodec.GZIP);
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            HttpEntity entity = response.getEntity();
+            String body = "";
+            if (entity != null) {
+                byte[] wire = EntityUtils.toByteArray(entity);
+                String encoding = entity.getContentEncoding() == null ? null : entity.getContentEncoding().getValue();
+                try (InputStream in = new ByteArrayInputStream(wire)) {
+                    body = JsonCodec.readBody(in, encoding);
+                }
+                wireStats(endpoint).response(body.getBytes(StandardCharsets.UTF_8).length, wire.length);
+            }
+            String acceptEncoding = response.getFirstHeader("Accept-Encoding") == null ? null : response.getFirstHeader("Accept-Encoding").getValue();
+            if (JsonCodec.acceptsGzip(acceptEncoding)) {
+                backendAcceptsGzip = true;
+            }
+            String etag = response.getFirstHeader("ETag") == null ? null : response.getFirstHeader("ETag").getValue();
+            String nextCursor = response.getFirstHeader("X-Next-Cursor") == null ? null : response.getFirstHeader("X-Next-Cursor").getValue();
+            return new HttpResult(response.getStatusLine().getStatusCode(),
+                response.getStatusLine().getReasonPhrase(), body, etag, nextCursor);
+        } finally {
+            latencies.computeIfAbsent(endpoint, LatencyHistogram::new).record(System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * Serialize a DTO as a JSON request body, gzipped when large and the backend accepts it.
+     * Serialization time and bytes on the wire are recorded per endpoint.
+     */
+    private HttpEntity jsonEntity(String endpoint, Object dto) throws IOException {
+        long start = System.nanoTime();
+        byte[] json = gson.toJson(dto).getBytes(StandardCharsets.UTF_8);
+        latencies.computeIfAbsent("serialize " + dto.getClass().getSimpleName(), LatencyHistogram::new)
+            .record(System.nanoTime() - start);
+        
+        ByteArrayEntity entity;
+        if (backendAcceptsGzip && JsonCodec.shouldCompress(json)) {
+            entity = new ByteArrayEntity(JsonCodec.gzip(json), ContentType.APPLICATION_JSON);
+            entity.setContentEncoding(JsonCodec.GZIP);
+        } else {
+            entity = new ByteArrayEntity(json, ContentType.APPLICATION_JSON);
+        }
+        wireStats(endpoint).request(json.length, entity.getContentLength());
+        return entity;
+    }
+    
+    private WireStats wireStats(String endpoint) {
+        return wireStats.computeIfAbsent(endpoint, WireStats::new);
+    }
+    
+    /**
+     * Bytes on the wire versus uncompressed JSON, per endpoint
+     */
+    public Collection<WireStats> getWireStats() {
+        return wireStats.values();
+    }
+    
+    /**
+     * Execute a booking POST under a fresh Idempotency-Key, retrying connection failures, 429, 5xx
+     * and "request_in_progress" 409s with exponential backoff and jitter. The backend replays the
+     * first response for a repeated key, so a retry after a lost response cannot book twice.
+     */
+    private HttpResult executeIdempotent(String endpoint, HttpPost request) throws IOException {
+        request.setHeader("Idempotency-Key", UUID.randomUUID().toString());
+        for (int attempt = 0; ; attempt++) {
+            try {
+                HttpResult result = execute(endpoint, request);
+                boolean retryable = result.status >= 500 || result.status == 429
+                    || (result.status == 409 && REQUEST_IN_PROGRESS.equals(result.errorCode()));
+                if (!retryable || attempt >= maxRetries) {
+                    return result;
+                }
+                LOGGER.info("Retrying " + endpoint + " after " + result);
+            } catch (IOException e) {
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                LOGGER.info("Retrying " + endpoint + " after " + e.getMessage());
+            }
+            long delay = retryBackoffMillis << attempt;
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(delay / 2, delay + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while retrying " + endpoint);
+            }
+        }
+    }
+    
     /**
      * Get list of available doctors
      */
     public CompletableFuture<List<Doctor>> getAvailableDoctors() {
-        return CompletableFuture.supplyAsync(() -> {
+        return submit(() -> {
             try {
-                HttpGet request = new HttpGet(backendBaseUrl + "/api/doctors/available");
-                request.setHeader("Accept", "application/json");
-                request.setHeader("Content-Type", "application/json");
-                
-                try (CloseableHttpResponse response = httpClient.execute(request)) {
-                    String responseBody = EntityUtils.toString(response.getEntity());
-                    
-                    if (response.getStatusLine().getStatusCode() == 200) {
-                        Doctor[] doctors = gson.fromJson(responseBody, Doctor[].class);
-                        return Arrays.asList(doctors);
-                    } else {
-                        LOGGER.warning("Failed to get available doctors: " + response.getStatusLine());
-                        return getDefaultDoctors(); // Fallback to demo data
-                    }
-                }
+                return doctorCache.get(DOCTORS_KEY, this::fetchDoctors);
             } catch (Exception e) {
                 LOGGER.warning("Error fetching available doctors, using demo data: " + e.getMessage());
                 return getDefaultDoctors();
@@ -69,27 +235,39 @@ public class TeleconsultationService {
         });
     }
     
+    /**
+     * Doctors already in the cache, at any age, or null if none have been loaded yet
+     */
+    public List<Doctor> getCachedDoctors() {
+        return doctorCache.peek(DOCTORS_KEY);
+    }
+    
+    private ResponseCache.Fetched<List<Doctor>> fetchDoctors(String etag) throws IOException {
+        HttpGet request = new HttpGet(backendBaseUrl + "/api/doctors/available");
+        request.setHeader("Accept", "application/json");
+        request.setHeader("Content-Type", "application/json");
+        if (etag != null) {
+            request.setHeader("If-None-Match", etag);
+        }
+        
+        HttpResult response = execute("doctors", request);
+        if (response.status == 304) {
+            return ResponseCache.Fetched.notModified();
+        } else if (response.status == 200) {
+            Doctor[] doctors = gson.fromJson(response.body, Doctor[].class);
+            return ResponseCache.Fetched.of(Arrays.asList(doctors), response.etag);
+        }
+        throw new IOException("Failed to get available doctors: " + response);
+    }
+    
     /**
      * Get available time slots for a specific doctor
      */
     public CompletableFuture<List<TimeSlot>> getAvailableTimeSlots(String doctorId, LocalDateTime date) {
-        return CompletableFuture.supplyAsync(() -> {
+        return submit(() -> {
             try {
                 String dateStr = date.format(DateTimeFormatter.ISO_LOCAL_DATE);
-                HttpGet request = new HttpGet(backendBaseUrl + "/api/doctors/" + doctorId + "/slots?date=" + dateStr);
-                request.setHeader("Accept", "application/json");
-                
-                try (CloseableHttpResponse response = httpClient.execute(request)) {
-                    String responseBody = EntityUtils.toString(response.getEntity());
-                    
-                    if (response.getStatusLine().getStatusCode() == 200) {
-                        TimeSlot[] slots = gson.fromJson(responseBody, TimeSlot[].class);
-                        return Arrays.asList(slots);
-                    } else {
-                        LOGGER.warning("Failed to get time slots: " + response.getStatusLine());
-                        return getDefaultTimeSlots(); // Fallback to demo data
-                    }
-                }
+                return slotCache.get(doctorId + "|" + dateStr, etag -> fetchTimeSlots(doctorId, dateStr, etag));
             } catch (Exception e) {
                 LOGGER.warning("Error fetching time slots, using demo data: " + e.getMessage());
                 return getDefaultTimeSlots();
@@ -97,53 +275,157 @@ public class TeleconsultationService {
         });
     }
     
+    private ResponseCache.Fetched<List<TimeSlot>> fetchTimeSlots(String doctorId, String dateStr, String etag) throws IOException {
+        HttpGet request = new HttpGet(backendBaseUrl + "/api/doctors/" + doctorId + "/slots?date=" + dateStr);
+        request.setHeader("Accept", "application/json");
+        if (etag != null) {
+            request.setHeader("If-None-Match", etag);
+        }
+        
+        HttpResult response = execute("slots", request);
+        if (response.status == 304) {
+            return ResponseCache.Fetched.notModified();
+        } else if (response.status == 200) {
+            TimeSlot[] slots = gson.fromJson(response.body, TimeSlot[].class);
+            return ResponseCache.Fetched.of(Arrays.asList(slots), response.etag);
+        }
+        throw new IOException("Failed to get time slots: " + response);
+    }
+    
+    /**
+     * Warm the doctor directory and today's slots for every doctor in the background
+     */
+    public void prefetch() {
+        String today = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE);
+        getAvailableDoctors().thenAccept(doctors -> {
+            for (Doctor doctor : doctors) {
+                slotCache.prefetch(doctor.id + "|" + today, etag -> fetchTimeSlots(doctor.id, today, etag));
+            }
+        });
+    }
+    
+    /**
+     * Cache hit-rate summary for the doctor directory and slot caches
+     */
+    public String getCacheStats() {
+        return doctorCache.getStats() + "; " + slotCache.getStats();
+    }
+    
+    /**
+     * Earliest free slot in the next days days with a doctor whose specialty contains
+     * specialtyKeyword (ignoring case), or null if there is none. Fails if the backend cannot
+     * be reached: a slot from demo data could not be booked.
+     */
+    public CompletableFuture<TimeSlot> findEarliestFreeSlot(String specialtyKeyword, int days) {
+        return submit(() -> {
+            try {
+                String keyword = specialtyKeyword.toLowerCase(Locale.ROOT);
+                LocalDateTime now = LocalDateTime.now();
+                TimeSlot earliest = null;
+                for (Doctor doctor : doctorCache.get(DOCTORS_KEY, this::fetchDoctors)) {
+                    if (doctor.specialty == null || !doctor.specialty.toLowerCase(Locale.ROOT).contains(keyword)) continue;
+                    for (int day = 0; day < days; day++) {
+                        String dateStr = now.plusDays(day).format(DateTimeFormatter.ISO_LOCAL_DATE);
+                        TimeSlot found = null;
+                        for (TimeSlot slot : slotCache.get(doctor.id + "|" + dateStr, etag -> fetchTimeSlots(doctor.id, dateStr, etag))) {
+                            if (slot.available && slot.startTime.isAfter(now)
+                                    && (found == null || slot.startTime.isBefore(found.startTime))) {
+                                found = slot;
+                            }
+                        }
+                        if (found != null) {
+                            if (earliest == null || found.startTime.isBefore(earliest.startTime)) {
+                                earliest = found;
+                            }
+                            break;
+                        }
+                    }
+                }
+                return earliest;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+    
+    /**
+     * Book the earliest free slot with a doctor of the given specialty (see {@link #findEarliestFreeSlot})
+     * @param booking patient details; the doctor, slot and appointment time are filled in
+     */
+    public CompletableFuture<BookingResult> bookEarliestConsultation(ConsultationBooking booking, String specialtyKeyword, int days) {
+        return findEarliestFreeSlot(specialtyKeyword, days).thenCompose(slot -> {
+            if (slot == null) {
+                BookingResult none = new BookingResult();
+                none.success = false;
+                none.message = "No " + specialtyKeyword + " appointments are free in the next " + days + " days.";
+                return CompletableFuture.completedFuture(none);
+            }
+            booking.doctorId = slot.doctorId;
+            booking.timeSlotId = slot.id;
+            booking.appointmentTime = slot.startTime;
+            return bookConsultation(booking);
+        });
+    }
+    
     /**
      * Book teleconsultation appointment
+     * The booking must name a slot (timeSlotId) from {@link #getAvailableTimeSlots}.
      */
     public CompletableFuture<BookingResult> bookConsultation(ConsultationBooking booking) {
-        return CompletableFuture.supplyAsync(() -> {
+        return submit(() -> {
             try {
                 HttpPost request = new HttpPost(backendBaseUrl + "/api/teleconsult/book");
                 request.setHeader("Accept", "application/json");
                 request.setHeader("Content-Type", "application/json");
                 
-                String jsonPayload = gson.toJson(booking);
-                request.setEntity(new StringEntity(jsonPayload));
+                request.setEntity(jsonEntity("book", booking));
                 
-                try (CloseableHttpResponse response = httpClient.execute(request)) {
-                    String responseBody = EntityUtils.toString(response.getEntity());
-                    
-                    if (response.getStatusLine().getStatusCode() == 200 || response.getStatusLine().getStatusCode() == 201) {
-                        BookingResult result = gson.fromJson(responseBody, BookingResult.class);
-                        if (result == null) {
-                            // Create successful demo result
-                            result = new BookingResult();
-                            result.success = true;
-                            result.bookingId = "DEMO_" + UUID.randomUUID().toString().substring(0, 8);
-                            result.confirmationNumber = "HS" + System.currentTimeMillis();
-                            result.message = "Teleconsultation booked successfully (Demo Mode)";
-                        }
-                        
-                        LOGGER.info("Consultation booked successfully: " + result.bookingId);
-                        return result;
-                    } else {
-                        BookingResult errorResult = new BookingResult();
-                        errorResult.success = false;
-                        errorResult.message = "Booking failed: " + response.getStatusLine().getReasonPhrase();
-                        return errorResult;
+                HttpResult response = executeIdempotent("book", request);
+                if (booking.appointmentTime != null) {
+                    // Booked or lost to someone else, the cached slot list is now out of date
+                    slotCache.invalidate(booking.doctorId + "|" + booking.appointmentTime.format(DateTimeFormatter.ISO_LOCAL_DATE));
+                }
+                if (response.status == 409 && REQUEST_IN_PROGRESS.equals(response.errorCode())) {
+                    // Retries ran out while the first attempt was still running; it may yet succeed
+                    BookingResult pending = new BookingResult();
+                    pending.success = false;
+                    pending.message = "Your booking is still being processed. Please check your consultations before booking again.";
+                    return pending;
+                } else if (response.status == 409) {
+                    BookingResult conflict = new BookingResult();
+                    conflict.success = false;
+                    conflict.message = "This time slot has just been booked by another patient. Please choose a different slot.";
+                    return conflict;
+                } else if (response.status >= 200 && response.status < 300) {
+                    // The backend answers {"message":...,"id":...}; the id is the booking id
+                    BookingResult result = response.body.isEmpty() ? null : gson.fromJson(response.body, BookingResult.class);
+                    if (result == null) {
+                        result = new BookingResult();
+                    }
+                    result.success = true;
+                    if (result.message == null) {
+                        result.message = "Teleconsultation booked";
+                    }
+                    if (result.appointmentTime == null) {
+                        result.appointmentTime = booking.appointmentTime;
                     }
+                    
+                    LOGGER.info("Consultation booked successfully: " + result.bookingId);
+                    return result;
+                } else {
+                    String error = response.jsonField("error");
+                    BookingResult errorResult = new BookingResult();
+                    errorResult.success = false;
+                    errorResult.message = "Booking failed: " + (error != null ? error : response.toString());
+                    return errorResult;
                 }
             } catch (Exception e) {
                 LOGGER.severe("Error booking consultation: " + e.getMessage());
                 
-                // Return demo success for presentation purposes
-                BookingResult demoResult = new BookingResult();
-                demoResult.success = true;
-                demoResult.bookingId = "DEMO_" + UUID.randomUUID().toString().substring(0, 8);
-                demoResult.confirmationNumber = "HS" + System.currentTimeMillis();
-                demoResult.message = "Teleconsultation booked successfully (Demo Mode - Backend not available)";
-                
-                return demoResult;
+                BookingResult errorResult = new BookingResult();
+                errorResult.success = false;
+                errorResult.message = "Booking failed: the teleconsultation service could not be reached (" + e.getMessage() + ")";
+                return errorResult;
             }
         });
     }
@@ -152,25 +434,57 @@ public class TeleconsultationService {
      * Get consultation history for a patient
      */
     public CompletableFuture<List<Consultation>> getConsultationHistory(String patientId) {
-        return CompletableFuture.supplyAsync(() -> {
+        return getConsultationHistoryPage(patientId, null).thenApply(page -> page.items);
+    }
+    
+    /**
+     * Get one page of consultation history, newest first; pass the previous page's nextCursor
+     * (null for the first page). List rows omit medical history and vital signs.
+     */
+    public CompletableFuture<ConsultationPage> getConsultationHistoryPage(String patientId, String cursor) {
+        return submit(() -> {
+            ConsultationPage page = new ConsultationPage();
             try {
-                HttpGet request = new HttpGet(backendBaseUrl + "/api/patients/" + patientId + "/consultations");
+                String url = backendBaseUrl + "/api/patients/" + patientId + "/consultations";
+                if (cursor != null) {
+                    url += "?cursor=" + cursor;
+                }
+                HttpGet request = new HttpGet(url);
                 request.setHeader("Accept", "application/json");
                 
-                try (CloseableHttpResponse response = httpClient.execute(request)) {
-                    String responseBody = EntityUtils.toString(response.getEntity());
-                    
-                    if (response.getStatusLine().getStatusCode() == 200) {
-                        Consultation[] consultations = gson.fromJson(responseBody, Consultation[].class);
-                        return Arrays.asList(consultations);
-                    } else {
-                        return getDefaultConsultationHistory(); // Fallback to demo data
-                    }
+                HttpResult response = execute("history", request);
+                if (response.status == 200) {
+                    page.items = Arrays.asList(gson.fromJson(response.body, Consultation[].class));
+                    page.nextCursor = response.nextCursor;
+                } else {
+                    page.items = getDefaultConsultationHistory(); // Fallback to demo data
                 }
             } catch (Exception e) {
                 LOGGER.warning("Error fetching consultation history: " + e.getMessage());
-                return getDefaultConsultationHistory();
+                page.items = getDefaultConsultationHistory();
             }
+            return page;
+        });
+    }
+    
+    /**
+     * Get a single consultation including medical history and vital signs
+     */
+    public CompletableFuture<ConsultationDetail> getConsultationDetail(String patientId, String consultationId) {
+        return submit(() -> {
+            try {
+                HttpGet request = new HttpGet(backendBaseUrl + "/api/patients/" + patientId + "/consultations/" + consultationId);
+                request.setHeader("Accept", "application/json");
+                
+                HttpResult response = execute("history-detail", request);
+                if (response.status == 200) {
+                    return gson.fromJson(response.body, ConsultationDetail.class);
+                }
+                LOGGER.warning("Failed to get consultation " + consultationId + ": " + response);
+            } catch (Exception e) {
+                LOGGER.warning("Error fetching consultation " + consultationId + ": " + e.getMessage());
+            }
+            return null;
         });
     }
     
@@ -178,15 +492,13 @@ public class TeleconsultationService {
      * Cancel existing consultation
      */
     public CompletableFuture<Boolean> cancelConsultation(String bookingId) {
-        return CompletableFuture.supplyAsync(() -> {
+        return submit(() -> {
             try {
                 HttpPost request = new HttpPost(backendBaseUrl + "/api/teleconsult/" + bookingId + "/cancel");
                 request.setHeader("Accept", "application/json");
                 request.setHeader("Content-Type", "application/json");
                 
-                try (CloseableHttpResponse response = httpClient.execute(request)) {
-                    return response.getStatusLine().getStatusCode() == 200;
-                }
+                return execute("cancel", request).status == 200;
             } catch (Exception e) {
                 LOGGER.severe("Error cancelling consultation: " + e.getMessage());
                 return false;
@@ -194,35 +506,66 @@ public class TeleconsultationService {
         });
     }
     
+    /**
+     * Upload a batch of readings encoded with {@link ReadingBatchCodec} (about 2 bytes per reading)
+     */
+    public CompletableFuture<Boolean> uploadReadings(byte[] batch) {
+        return submit(() -> {
+            try {
+                HttpPost request = new HttpPost(backendBaseUrl + "/api/readings");
+                request.setHeader("Accept", "application/json");
+                request.setEntity(new ByteArrayEntity(batch, ContentType.create(ReadingBatchCodec.CONTENT_TYPE)));
+                
+                return execute("readings", request).status == 200;
+            } catch (Exception e) {
+                LOGGER.warning("Error uploading readings: " + e.getMessage());
+                return false;
+            }
+        });
+    }
+    
     /**
      * Create emergency consultation booking
      */
     public CompletableFuture<BookingResult> bookEmergencyConsultation(EmergencyConsultationRequest request) {
-        return CompletableFuture.supplyAsync(() -> {
+        return submit(() -> {
             try {
                 HttpPost httpRequest = new HttpPost(backendBaseUrl + "/api/teleconsult/emergency");
                 httpRequest.setHeader("Accept", "application/json");
                 httpRequest.setHeader("Content-Type", "application/json");
                 
-                String jsonPayload = gson.toJson(request);
-                httpRequest.setEntity(new StringEntity(jsonPayload));
+                httpRequest.setEntity(jsonEntity("emergency", request));
                 
-                try (CloseableHttpResponse response = httpClient.execute(httpRequest)) {
-                    String responseBody = EntityUtils.toString(response.getEntity());
-                    
-                    if (response.getStatusLine().getStatusCode() == 200 || response.getStatusLine().getStatusCode() == 201) {
-                        BookingResult result = gson.fromJson(responseBody, BookingResult.class);
-                        if (result == null) {
-                            result = createEmergencyDemoResult();
-                        }
-                        return result;
-                    } else {
-                        return createEmergencyDemoResult(); // Fallback for demo
+                HttpResult response = executeIdempotent("emergency", httpRequest);
+                if (response.status >= 200 && response.status < 300) {
+                    // The backend answers with the triage case: id, queue message and estimated wait
+                    BookingResult result = response.body.isEmpty() ? null : gson.fromJson(response.body, BookingResult.class);
+                    if (result == null) {
+                        result = new BookingResult();
+                    }
+                    result.success = true;
+                    result.emergencyPriority = true;
+                    if (result.message == null) {
+                        result.message = "Emergency teleconsultation queued";
                     }
+                    
+                    LOGGER.info("Emergency consultation queued: " + result.bookingId);
+                    return result;
+                } else {
+                    String error = response.jsonField("error");
+                    BookingResult errorResult = new BookingResult();
+                    errorResult.success = false;
+                    // Callers prefix their own "failed" text, so the message is only the cause
+                    errorResult.message = error != null ? error : response.toString();
+                    return errorResult;
                 }
             } catch (Exception e) {
-                LOGGER.warning("Emergency consultation booking failed, using demo mode: " + e.getMessage());
-                return createEmergencyDemoResult();
+                LOGGER.severe("Error booking emergency consultation: " + e.getMessage());
+                
+                BookingResult errorResult = new BookingResult();
+                errorResult.success = false;
+                errorResult.message = "the teleconsultation service could not be reached (" + e.getMessage() + ")";
+                return errorResult;
             }
         });
     }
@@ -328,24 +671,11 @@ public class TeleconsultationService {
         return history;
     }
     
-    /**
-     * Create emergency demo result
-     */
-    private BookingResult createEmergencyDemoResult() {
-        BookingResult result = new BookingResult();
-        result.success = true;
-        result.bookingId = "EMRG_" + UUID.randomUUID().toString().substring(0, 8);
-        result.confirmationNumber = "HS_EMRG_" + System.currentTimeMillis();
-        result.message = "Emergency teleconsultation booked - Dr. Emily Rodriguez will contact you within 5 minutes";
-        result.estimatedWaitTime = "2-5 minutes";
-        result.emergencyPriority = true;
-        return result;
-    }
-    
     /**
      * Close HTTP client resources
      */
     public void close() {
+        executor.shutdown();
         try {
             if (httpClient != null) {
                 httpClient.close();
@@ -353,6 +683,122 @@ public class TeleconsultationService {
         } catch (IOException e) {
             LOGGER.warning("Error closing HTTP client: " + e.getMessage());
         }
+        for (LatencyHistogram histogram : latencies.values()) {
+            LOGGER.info("Backend latency " + histogram.summary());
+        }
+        for (WireStats stats : wireStats.values()) {
+            LOGGER.info("Backend traffic " + stats);
+        }
+        LOGGER.info(getCacheStats());
+    }
+    
+    /**
+     * Connection pool and timeout settings for the backend HTTP client
+     */
+    public static class HttpSettings {
+        public int maxTotalConnections = 20;
+        public int maxConnectionsPerRoute = 10;
+        public int connectTimeoutMillis = 3000;
+        public int socketTimeoutMillis = 10000;
+        public int connectionRequestTimeoutMillis = 2000;
+        public long keepAliveMillis = 30000;
+        public long idleEvictionMillis = 60000;
+        public int maxRetries = 3;
+        public long retryBackoffMillis = 250;
+        
+        /**
+         * Read settings from heartsafe.http.* system properties, keeping defaults for any not set
+         */
+        public static HttpSettings fromSystemProperties() {
+            HttpSettings settings = new HttpSettings();
+            settings.maxTotalConnections = Integer.getInteger("heartsafe.http.maxTotal", settings.maxTotalConnections);
+            settings.maxConnectionsPerRoute = Integer.getInteger("heartsafe.http.maxPerRoute", settings.maxConnectionsPerRoute);
+            settings.connectTimeoutMillis = Integer.getInteger("heartsafe.http.connectTimeoutMs", settings.connectTimeoutMillis);
+            settings.socketTimeoutMillis = Integer.getInteger("heartsafe.http.socketTimeoutMs", settings.socketTimeoutMillis);
+            settings.connectionRequestTimeoutMillis = Integer.getInteger("heartsafe.http.requestTimeoutMs", settings.connectionRequestTimeoutMillis);
+            settings.keepAliveMillis = Long.getLong("heartsafe.http.keepAliveMs", settings.keepAliveMillis);
+            settings.idleEvictionMillis = Long.getLong("heartsafe.http.idleEvictionMs", settings.idleEvictionMillis);
+            settings.maxRetries = Integer.getInteger("heartsafe.http.maxRetries", settings.maxRetries);
+            settings.retryBackoffMillis = Long.getLong("heartsafe.http.retryBackoffMs", settings.retryBackoffMillis);
+            return settings;
+        }
+    }
+    
+    /**
+     * Request and response byte counts for one endpoint
+     */
+    public static class WireStats {
+        private final String endpoint;
+        private final LongAdder requestJsonBytes = new LongAdder();
+        private final LongAdder requestWireBytes = new LongAdder();
+        private final LongAdder responseJsonBytes = new LongAdder();
+        private final LongAdder responseWireBytes = new LongAdder();
+        
+        WireStats(String endpoint) {
+            this.endpoint = endpoint;
+        }
+        
+        void request(long jsonBytes, long wireBytes) {
+            requestJsonBytes.add(jsonBytes);
+            requestWireBytes.add(wireBytes);
+        }
+        
+        void response(long jsonBytes, long wireBytes) {
+            responseJsonBytes.add(jsonBytes);
+            responseWireBytes.add(wireBytes);
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%s: sent %d bytes (%d JSON), received %d bytes (%d JSON)", endpoint,
+                requestWireBytes.sum(), requestJsonBytes.sum(), responseWireBytes.sum(), responseJsonBytes.sum());
+        }
+    }
+    
+    /**
+     * Fully read HTTP response
+     */
+    private static class HttpResult {
+        final int status;
+        final String reason;
+        final String body;
+        final String etag;
+        final String nextCursor;
+        
+        HttpResult(int status, String reason, String body, String etag, String nextCursor) {
+            this.status = status;
+            this.reason = reason;
+            this.body = body;
+            this.etag = etag;
+            this.nextCursor = nextCursor;
+        }
+        
+        /**
+         * The "code" field of a JSON error body, or null
+         */
+        String errorCode() {
+            return jsonField("code");
+        }
+        
+        /**
+         * A top-level string field of a JSON object body, or null
+         */
+        String jsonField(String name) {
+            try {
+                JsonElement json = JsonParser.parseString(body);
+                if (json.isJsonObject() && json.getAsJsonObject().has(name)) {
+                    return json.getAsJsonObject().get(name).getAsString();
+                }
+            } catch (RuntimeException e) {
+                // Not a JSON object body
+            }
+            return null;
+        }
+        
+        @Override
+        public String toString() {
+            return status + " " + reason;
+        }
     }
     
     // Data classes
@@ -410,6 +856,7 @@ public class TeleconsultationService {
     
     public static class BookingResult {
         public boolean success;
+        @SerializedName(value = "bookingId", alternate = {"id"})
         public String bookingId;
         public String confirmationNumber;
         public String message;
@@ -439,6 +886,22 @@ public class TeleconsultationService {
         }
     }
     
+    public static class ConsultationDetail extends Consultation {
+        public String doctorId;
+        public String timeSlotId;
+        public String symptoms;
+        public Map<String, Object> medicalHistory;
+        public Map<String, Object> vitalSigns;
+    }
+    
+    /**
+     * One page of consultation history; nextCursor is null on the last page
+     */
+    public static class ConsultationPage {
+        public List<Consultation> items = new ArrayList<>();
+        public String nextCursor;
+    }
+    
     public static class EmergencyConsultationRequest {
         public String patientId;
         public String patientName;
@@ -0,0 +1,130 @@
+package com.heartsafe.desktop;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * UI latency metrics for the desktop monitor
+ * Wraps the system EventQueue to time every event dispatch (overall and per event type),
+ * and collects heart rate chart repaint time and sample-to-pixel latency, i.e. from a
+ * reading being produced to the chart frame that shows it being painted.
+ */
+public class UiMetrics {
+    private static final Logger LOGGER = Logger.getLogger(UiMetrics.class.getName());
+
+    private final LatencyHistogram dispatch = new LatencyHistogram("edt-dispatch");
+    private final LatencyHistogram chartRepaint = new LatencyHistogram("chart-repaint");
+    private final LatencyHistogram sampleToPixel = new LatencyHistogram("sample-to-pixel");
+    private final Map<Class<?>, LatencyHistogram> dispatchByType = new ConcurrentHashMap<>();
+    private final long slowEventNanos;
+
+    public UiMetrics(long slowEventMillis) {
+        this.slowEventNanos = TimeUnit.MILLISECONDS.toNanos(slowEventMillis);
+    }
+
+    /**
+     * Replace the system event queue with the timing queue; call once at startup
+     */
+    public void install() {
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new TimingEventQueue());
+    }
+
+    public LatencyHistogram getChartRepaint() {
+        return chartRepaint;
+    }
+
+    public LatencyHistogram getSampleToPixel() {
+        return sampleToPixel;
+    }
+
+    /**
+     * Overall dispatch, repaint and sample-to-pixel histograms, then dispatch time per event type
+     */
+    public List<LatencyHistogram> getHistograms() {
+        List<LatencyHistogram> histograms = new ArrayList<>(List.of(dispatch, chartRepaint, sampleToPixel));
+        dispatchByType.values().stream()
+            .sorted((a, b) -> Long.compare(b.getCount(), a.getCount()))
+            .forEach(histograms::add);
+        return histograms;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : getHistograms()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Format histograms one per line, with the same columns as the export file
+     */
+    public static String format(Collection<LatencyHistogram> histograms) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-34s %8s %9s %9s %9s %9s %9s%n", "metric", "count", "mean ms", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+        for (LatencyHistogram h : histograms) {
+            sb.append(String.format("%-34s %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n", h.getName(), h.getCount(),
+                h.getMeanNanos() / 1e6, h.percentile(50) / 1e6, h.percentile(95) / 1e6,
+                h.percentile(99) / 1e6, h.getMaxNanos() / 1e6));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write a snapshot of the given histograms to a text file
+     */
+    public static void export(Path file, Collection<LatencyHistogram> histograms) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("HeartSafe UI diagnostics, " + Instant.now() + System.lineSeparator());
+            writer.write(format(histograms));
+        }
+    }
+
+    /**
+     * Times each dispatch on the EDT. Time spent in nested dispatch loops (modal dialogs,
+     * secondary loops) is charged to the nested events, not to the event that opened them.
+     */
+    private class TimingEventQueue extends EventQueue {
+        private final long[] nestedNanos = new long[64];
+        private int depth;
+
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            int level = depth++;
+            if (level < nestedNanos.length) nestedNanos[level] = 0;
+            long start = System.nanoTime();
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                depth--;
+                long self = level < nestedNanos.length ? elapsed - nestedNanos[level] : elapsed;
+                if (level > 0 && level - 1 < nestedNanos.length) {
+                    nestedNanos[level - 1] += elapsed;
+                }
+                record(event, self);
+            }
+        }
+
+        private void record(AWTEvent event, long nanos) {
+            dispatch.record(nanos);
+            dispatchByType.computeIfAbsent(event.getClass(),
+                type -> new LatencyHistogram("edt-dispatch " + type.getSimpleName())).record(nanos);
+            if (nanos > slowEventNanos) {
+                LOGGER.warning("Slow EDT event (" + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms): " + event.getClass().getSimpleName() + " " + event.paramString());
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.heartsafe.backend;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlotAvailabilityTest {
+    private static final int ALL_WEEK = 0x7F;
+    private static final LocalDate DATE = LocalDate.now().plusDays(7);
+
+    private static SlotAvailability directory() {
+        SlotAvailability availability = new SlotAvailability();
+        availability.register(new SlotAvailability.Doctor("D1", "Dr. One", "Cardiologist", 10, 4.5, 100.0,
+            "Daily 9:00-17:00", ALL_WEEK, 9 * 4, 17 * 4));
+        availability.register(new SlotAvailability.Doctor("D2", "Dr. Two", "Cardiologist", 10, 4.5, 100.0,
+            "Daily 9:00-17:00", ALL_WEEK, 9 * 4, 17 * 4));
+        return availability;
+    }
+
+    private static SlotAvailability.SlotRef slot(String doctorId, int slot) {
+        return SlotAvailability.parseSlotId(SlotAvailability.slotId(doctorId, DATE, slot));
+    }
+
+    @Test
+    void concurrentBookingsOfOneSlotBookItOnce() throws Exception {
+        SlotAvailability availability = directory();
+        SlotAvailability.SlotRef slot = slot("D1", 40);
+        int threads = 64;
+        AtomicInteger commits = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<SlotAvailability.BookingOutcome>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return availability.book(slot, () -> {
+                        commits.incrementAndGet();
+                        // Widen the window between the free check and the reservation
+                        Thread.sleep(1);
+                        return SlotAvailability.BookingOutcome.BOOKED;
+                    });
+                }));
+            }
+            start.countDown();
+            int booked = 0;
+            int taken = 0;
+            for (Future<SlotAvailability.BookingOutcome> result : results) {
+                SlotAvailability.BookingOutcome outcome = result.get(30, TimeUnit.SECONDS);
+                if (outcome == SlotAvailability.BookingOutcome.BOOKED) booked++;
+                if (outcome == SlotAvailability.BookingOutcome.TAKEN) taken++;
+            }
+            assertEquals(1, booked);
+            assertEquals(threads - 1, taken);
+            assertEquals(1, commits.get());
+            assertFalse(availability.isFree("D1", DATE, 40));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void thousandsOfParallelBookingsNeverDoubleBookASmallSlotPool() throws Exception {
+        SlotAvailability availability = directory();
+        // 32 slots: two doctors, 09:00-13:00
+        List<SlotAvailability.SlotRef> pool = new ArrayList<>();
+        for (String doctorId : new String[] {"D1", "D2"}) {
+            for (int s = 9 * 4; s < 13 * 4; s++) {
+                pool.add(slot(doctorId, s));
+            }
+        }
+        int attempts = 20_000;
+        int threads = 32;
+        AtomicIntegerArray commits = new AtomicIntegerArray(pool.size());
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<SlotAvailability.BookingOutcome>> results = new ArrayList<>(attempts);
+            for (int i = 0; i < attempts; i++) {
+                int index = i % pool.size();
+                SlotAvailability.SlotRef slot = pool.get(index);
+                results.add(workers.submit(() -> {
+                    start.await();
+                    return availability.book(slot, () -> {
+                        commits.incrementAndGet(index);
+                        return SlotAvailability.BookingOutcome.BOOKED;
+                    });
+                }));
+            }
+            long began = System.nanoTime();
+            start.countDown();
+            int booked = 0;
+            int taken = 0;
+            for (Future<SlotAvailability.BookingOutcome> result : results) {
+                SlotAvailability.BookingOutcome outcome = result.get(60, TimeUnit.SECONDS);
+                if (outcome == SlotAvailability.BookingOutcome.BOOKED) booked++;
+                if (outcome == SlotAvailability.BookingOutcome.TAKEN) taken++;
+            }
+            long elapsedNanos = System.nanoTime() - began;
+
+            for (int i = 0; i < pool.size(); i++) {
+                SlotAvailability.SlotRef slot = pool.get(i);
+                assertEquals(1, commits.get(i), "commits for " + SlotAvailability.slotId(slot.doctorId, slot.date, slot.slot));
+                assertFalse(availability.isFree(slot.doctorId, slot.date, slot.slot));
+            }
+            assertEquals(pool.size(), booked);
+            assertEquals(attempts - pool.size(), taken);
+            System.out.printf("Slot booking stress: %d attempts on %d slots from %d threads in %d ms, %.0f bookings/s%n",
+                attempts, pool.size(), threads, elapsedNanos / 1_000_000, attempts * 1e9 / elapsedNanos);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentBookingsOfDifferentSlotsAllSucceed() throws Exception {
+        SlotAvailability availability = directory();
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<SlotAvailability.BookingOutcome>> results = new ArrayList<>();
+            for (String doctorId : new String[] {"D1", "D2"}) {
+                for (int s = 9 * 4; s < 17 * 4; s++) {
+                    SlotAvailability.SlotRef slot = slot(doctorId, s);
+                    results.add(pool.submit(() -> availability.book(slot, () -> SlotAvailability.BookingOutcome.BOOKED)));
+                }
+            }
+            for (Future<SlotAvailability.BookingOutcome> result : results) {
+                assertEquals(SlotAvailability.BookingOutcome.BOOKED, result.get(30, TimeUnit.SECONDS));
+            }
+            for (String doctorId : new String[] {"D1", "D2"}) {
+                SlotAvailability.DaySnapshot day = availability.getDay(doctorId, DATE);
+                for (int s = 0; s < SlotAvailability.SLOTS_PER_DAY; s++) {
+                    assertFalse(day.isFree(s));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void unknownDoctorAndOutsideHoursAreNotConflicts() throws Exception {
+        SlotAvailability availability = directory();
+        assertEquals(SlotAvailability.BookingOutcome.UNKNOWN_DOCTOR,
+            availability.book(slot("NOPE", 40), () -> SlotAvailability.BookingOutcome.BOOKED));
+        assertEquals(SlotAvailability.BookingOutcome.OUTSIDE_WORKING_HOURS,
+            availability.book(slot("D1", 2), () -> SlotAvailability.BookingOutcome.BOOKED));
+    }
+
+    @Test
+    void onlyReservedDaysAreStoredAndPastOnesArePurged() {
+        SlotAvailability availability = directory();
+        for (int d = 0; d < 1000; d++) {
+            availability.getDay("D1", DATE.plusDays(d));
+            availability.isFree("D2", DATE.plusDays(d), 40);
+        }
+        availability.freeWithin(null, DATE.atStartOfDay(), 24 * 60);
+        assertEquals(0, availability.getScheduledDayCount());
+
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        assertTrue(availability.reserve("D1", yesterday, 40));
+        assertTrue(availability.reserve("D1", DATE, 40));
+        long version = availability.getDay("D1", DATE).version;
+        assertEquals(2, availability.getScheduledDayCount());
+
+        availability.purgeBefore(LocalDate.now());
+        assertEquals(1, availability.getScheduledDayCount());
+        assertFalse(availability.isFree("D1", DATE, 40));
+        assertEquals(version, availability.getDay("D1", DATE).version);
+    }
+
+    @Test
+    void failedCommitLeavesTheSlotFree() throws Exception {
+        SlotAvailability availability = directory();
+        SlotAvailability.SlotRef slot = slot("D1", 41);
+        assertThrows(IllegalStateException.class, () -> availability.book(slot, () -> {
+            throw new IllegalStateException("database down");
+        }));
+        assertEquals(SlotAvailability.BookingOutcome.NOT_BOOKED,
+            availability.book(slot, () -> SlotAvailability.BookingOutcome.NOT_BOOKED));
+        assertTrue(availability.isFree("D1", DATE, 41));
+
+        // A booking the database already holds marks the slot taken here too
+        assertEquals(SlotAvailability.BookingOutcome.TAKEN,
+            availability.book(slot, () -> SlotAvailability.BookingOutcome.TAKEN));
+        assertFalse(availability.isFree("D1", DATE, 41));
+    }
+}
\ No newline at end of file
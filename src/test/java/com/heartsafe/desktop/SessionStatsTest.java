@@ -0,0 +1,71 @@
+package com.heartsafe.desktop;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionStatsTest {
+
+    @Test
+    void shortSessionTrendHoldsEveryReading() {
+        SessionStats stats = new SessionStats();
+        for (int i = 0; i < 40; i++) {
+            stats.add(60 + i, i * 1000L);
+        }
+        SessionStats.Trend trend = stats.snapshot().getTrend();
+        assertEquals(40, trend.size());
+        assertEquals(1, trend.getReadingsPerBucket());
+        assertEquals(60, trend.getMin(0));
+        assertEquals(99, trend.getMax(39));
+    }
+
+    @Test
+    void longSessionTrendIsBoundedAndCoversTheWholeSession() {
+        SessionStats stats = new SessionStats();
+        int readings = 100_000;
+        long sum = 0;
+        for (int i = 0; i < readings; i++) {
+            // One spike early on and one at the very end
+            int hr = i == 10 ? 180 : i == readings - 1 ? 40 : 70 + i % 10;
+            stats.add(hr, i * 1000L);
+            sum += hr;
+        }
+        SessionStats.Snapshot snapshot = stats.snapshot();
+        SessionStats.Trend trend = snapshot.getTrend();
+        assertTrue(trend.size() <= SessionStats.TREND_BUCKETS, "size " + trend.size());
+        assertTrue(trend.size() > SessionStats.TREND_BUCKETS / 2, "size " + trend.size());
+
+        long counted = 0;
+        long summed = 0;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int b = 0; b < trend.size(); b++) {
+            assertTrue(trend.getCount(b) <= trend.getReadingsPerBucket());
+            counted += trend.getCount(b);
+            summed += trend.getSum(b);
+            min = Math.min(min, trend.getMin(b));
+            max = Math.max(max, trend.getMax(b));
+        }
+        assertEquals(readings, counted);
+        assertEquals(sum, summed);
+        assertEquals(snapshot.getMin(), min);
+        assertEquals(snapshot.getMax(), max);
+        assertEquals(180, trend.getMax(0));
+        assertEquals(40, trend.getMin(trend.size() - 1));
+    }
+
+    @Test
+    void resetClearsTheTrend() {
+        SessionStats stats = new SessionStats();
+        for (int i = 0; i < 5000; i++) {
+            stats.add(80, i * 1000L);
+        }
+        stats.reset();
+        stats.add(90, 0);
+        SessionStats.Trend trend = stats.snapshot().getTrend();
+        assertEquals(1, trend.size());
+        assertEquals(1, trend.getReadingsPerBucket());
+        assertEquals(90, trend.getMax(0));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,260 @@
+package com.heartsafe.desktop;
+
+import com.heartsafe.shared.json.JsonCodec;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TeleconsultationServiceTest {
+    private static final long SOCKET_TIMEOUT_MILLIS = 300;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private TeleconsultationService service;
+    // Scripted responses for /api/teleconsult/book, one per request; status 0 means "never answer in time"
+    private final Deque<Integer> statuses = new ArrayDeque<>();
+    private final Deque<String> bodies = new ArrayDeque<>();
+    private final List<String> idempotencyKeys = new CopyOnWriteArrayList<>();
+    private final List<String> bookingBodies = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.createContext("/api/teleconsult/book", this::handleBook);
+        server.createContext("/api/teleconsult/emergency", this::handleBook);
+        server.start();
+
+        TeleconsultationService.HttpSettings settings = new TeleconsultationService.HttpSettings();
+        settings.socketTimeoutMillis = (int) SOCKET_TIMEOUT_MILLIS;
+        settings.connectTimeoutMillis = 1000;
+        settings.maxRetries = 2;
+        settings.retryBackoffMillis = 10;
+        service = new TeleconsultationService("http://127.0.0.1:" + server.getAddress().getPort(), settings);
+    }
+
+    @AfterEach
+    void stopStub() {
+        service.close();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    private synchronized void script(int status, String body) {
+        statuses.addLast(status);
+        bodies.addLast(body);
+    }
+
+    private void handleBook(HttpExchange exchange) throws IOException {
+        idempotencyKeys.add(exchange.getRequestHeaders().getFirst("Idempotency-Key"));
+        bookingBodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        int status;
+        String body;
+        synchronized (this) {
+            status = statuses.isEmpty() ? 500 : statuses.removeFirst();
+            body = bodies.isEmpty() ? "{\"error\":\"unscripted\"}" : bodies.removeFirst();
+        }
+        if (status == 0) {
+            try {
+                Thread.sleep(SOCKET_TIMEOUT_MILLIS * 4);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+            return;
+        }
+        send(exchange, status, body);
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static TeleconsultationService.ConsultationBooking booking() {
+        TeleconsultationService.ConsultationBooking booking = new TeleconsultationService.ConsultationBooking();
+        booking.patientId = "p1";
+        booking.patientName = "Test Patient";
+        booking.doctorId = "DOC001";
+        booking.timeSlotId = "DOC001@2030-01-07#40";
+        booking.reason = "test";
+        return booking;
+    }
+
+    private TeleconsultationService.BookingResult book() throws Exception {
+        return service.bookConsultation(booking()).get(30, TimeUnit.SECONDS);
+    }
+
+    private TeleconsultationService.BookingResult bookEmergency() throws Exception {
+        TeleconsultationService.EmergencyConsultationRequest request = new TeleconsultationService.EmergencyConsultationRequest();
+        request.patientId = "p1";
+        request.emergencyType = "HIGH_HEART_RATE";
+        request.currentHeartRate = 165;
+        return service.bookEmergencyConsultation(request).get(30, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void retriesServerErrorsUnderTheSameIdempotencyKey() throws Exception {
+        script(503, "{\"error\":\"busy\"}");
+        script(201, "{\"message\":\"booking created\",\"id\":42}");
+
+        TeleconsultationService.BookingResult result = book();
+
+        assertTrue(result.success);
+        assertEquals("42", result.bookingId);
+        assertEquals(2, idempotencyKeys.size());
+        assertNotNull(idempotencyKeys.get(0));
+        assertEquals(idempotencyKeys.get(0), idempotencyKeys.get(1));
+        assertTrue(bookingBodies.get(0).contains("\"timeSlotId\":\"DOC001@2030-01-07#40\""));
+    }
+
+    @Test
+    void anyTwoHundredIsSuccess() throws Exception {
+        script(202, "");
+
+        TeleconsultationService.BookingResult result = book();
+
+        assertTrue(result.success);
+        assertNotNull(result.message);
+    }
+
+    @Test
+    void slotTakenConflictIsNotRetried() throws Exception {
+        script(409, "{\"error\":\"slot already booked\",\"code\":\"slot_taken\"}");
+
+        TeleconsultationService.BookingResult result = book();
+
+        assertFalse(result.success);
+        assertTrue(result.message.contains("booked by another patient"), result.message);
+        assertEquals(1, idempotencyKeys.size());
+    }
+
+    @Test
+    void requestInProgressConflictIsRetried() throws Exception {
+        script(409, "{\"error\":\"still in progress\",\"code\":\"request_in_progress\"}");
+        script(201, "{\"message\":\"booking created\",\"id\":7}");
+
+        TeleconsultationService.BookingResult result = book();
+
+        assertTrue(result.success);
+        assertEquals("7", result.bookingId);
+        assertEquals(2, idempotencyKeys.size());
+        assertEquals(idempotencyKeys.get(0), idempotencyKeys.get(1));
+    }
+
+    @Test
+    void requestStillInProgressAfterRetriesIsReportedAsPending() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            script(409, "{\"error\":\"still in progress\",\"code\":\"request_in_progress\"}");
+        }
+
+        TeleconsultationService.BookingResult result = book();
+
+        assertFalse(result.success);
+        assertTrue(result.message.contains("still being processed"), result.message);
+        assertEquals(3, idempotencyKeys.size());
+    }
+
+    @Test
+    void timeoutsAreRetriedAndThenReportedAsFailure() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            script(0, "");
+        }
+
+        TeleconsultationService.BookingResult result = book();
+
+        // No demo success when the backend never answers
+        assertFalse(result.success);
+        assertEquals(3, idempotencyKeys.size());
+        assertEquals(1, idempotencyKeys.stream().distinct().count());
+    }
+
+    @Test
+    void emergencyCaseFromTheBackendIsReturned() throws Exception {
+        script(202, "{\"bookingId\":\"EMRG_1\",\"estimatedWaitTime\":\"immediate\",\"message\":\"queued at position 1\"}");
+
+        TeleconsultationService.BookingResult result = bookEmergency();
+
+        assertTrue(result.success);
+        assertTrue(result.emergencyPriority);
+        assertEquals("EMRG_1", result.bookingId);
+        assertEquals("queued at position 1", result.message);
+    }
+
+    @Test
+    void emergencyFailureIsNotReportedAsBooked() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            script(503, "{\"error\":\"triage unavailable\"}");
+        }
+
+        TeleconsultationService.BookingResult result = bookEmergency();
+
+        assertFalse(result.success);
+        assertEquals("triage unavailable", result.message);
+        assertEquals(3, idempotencyKeys.size());
+        assertEquals(1, idempotencyKeys.stream().distinct().count());
+
+        script(0, "");
+        script(0, "");
+        script(0, "");
+        TeleconsultationService.BookingResult timedOut = bookEmergency();
+        assertFalse(timedOut.success);
+        assertNotNull(timedOut.message);
+    }
+
+    @Test
+    void bookEarliestConsultationSendsTheSlotAndItsDoctor() throws Exception {
+        LocalDateTime start = LocalDateTime.now().plusDays(1).withHour(10).withMinute(0).withSecond(0).withNano(0);
+        server.createContext("/api/doctors/available", exchange -> send(exchange, 200,
+            "[{\"id\":\"DOC001\",\"name\":\"Dr. A\",\"specialty\":\"Cardiologist\"},"
+                + "{\"id\":\"DOC003\",\"name\":\"Dr. C\",\"specialty\":\"Emergency Medicine\"}]"));
+        server.createContext("/api/doctors/DOC001/slots", exchange -> {
+            String query = exchange.getRequestURI().getQuery();
+            TeleconsultationService.TimeSlot slot = new TeleconsultationService.TimeSlot();
+            slot.id = "DOC001@" + start.toLocalDate() + "#40";
+            slot.startTime = start;
+            slot.endTime = start.plusMinutes(15);
+            slot.available = true;
+            slot.doctorId = "DOC001";
+            boolean tomorrow = query != null && query.contains("date=" + start.toLocalDate());
+            send(exchange, 200, tomorrow ? JsonCodec.gson().toJson(new TeleconsultationService.TimeSlot[] {slot}) : "[]");
+        });
+        script(201, "{\"message\":\"booking created\",\"id\":9}");
+
+        TeleconsultationService.BookingResult result =
+            service.bookEarliestConsultation(booking(), "cardi", 3).get(30, TimeUnit.SECONDS);
+
+        assertTrue(result.success, result.message);
+        assertEquals("9", result.bookingId);
+        assertEquals(start, result.appointmentTime);
+        assertEquals(1, bookingBodies.size());
+        assertTrue(bookingBodies.get(0).contains("\"doctorId\":\"DOC001\""));
+        assertTrue(bookingBodies.get(0).contains("\"timeSlotId\":\"DOC001@" + start.toLocalDate() + "#40\""));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,180 @@
+package com.heartsafe.shared.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadingBatchCodecTest {
+
+    private static class Collected implements ReadingBatchCodec.BatchSink {
+        String patientId;
+        int announced = -1;
+        final List<long[]> readings = new ArrayList<>();
+
+        @Override
+        public void begin(String patientId, int count) {
+            this.patientId = patientId;
+            this.announced = count;
+        }
+
+        @Override
+        public void reading(long timestampMillis, int heartRate) {
+            readings.add(new long[] {timestampMillis, heartRate});
+        }
+    }
+
+    private static Collected decode(byte[] data, int length) {
+        Collected sink = new Collected();
+        int count = ReadingBatchCodec.decode(data, length, sink);
+        assertEquals(count, sink.announced);
+        assertEquals(count, sink.readings.size());
+        return sink;
+    }
+
+    private static void assertRoundTrip(String patientId, long[] timestamps, int[] heartRates) {
+        byte[] encoded = ReadingBatchCodec.encode(patientId, timestamps, heartRates, timestamps.length);
+        Collected decoded = decode(encoded, encoded.length);
+        assertEquals(patientId, decoded.patientId);
+        for (int i = 0; i < timestamps.length; i++) {
+            assertEquals(timestamps[i], decoded.readings.get(i)[0], "timestamp " + i);
+            assertEquals(heartRates[i], decoded.readings.get(i)[1], "heart rate " + i);
+        }
+    }
+
+    @Test
+    void steadyReadingsRoundTripAtAboutTwoBytesEach() {
+        int count = 1000;
+        long[] timestamps = new long[count];
+        int[] heartRates = new int[count];
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = 1_700_000_000_000L + i * 1000L;
+            heartRates[i] = 70 + (i % 5);
+        }
+        assertRoundTrip("patient-1", timestamps, heartRates);
+        byte[] encoded = ReadingBatchCodec.encode("patient-1", timestamps, heartRates, count);
+        assertTrue(encoded.length < count * 2 + 32, "encoded " + encoded.length + " bytes");
+    }
+
+    @Test
+    void irregularReadingsRoundTrip() {
+        Random random = new Random(42);
+        int count = 500;
+        long[] timestamps = new long[count];
+        int[] heartRates = new int[count];
+        long t = 1_700_000_000_000L;
+        for (int i = 0; i < count; i++) {
+            // Jittered gaps, a few long pauses and the odd out-of-order reading
+            t += random.nextInt(10) == 0 ? random.nextInt(3_600_000) : 900 + random.nextInt(200) - (i % 50 == 0 ? 5_000 : 0);
+            timestamps[i] = t;
+            heartRates[i] = 30 + random.nextInt(200);
+        }
+        assertRoundTrip("p-é中", timestamps, heartRates);
+    }
+
+    @Test
+    void extremesRoundTrip() {
+        assertRoundTrip("x", new long[] {0, Long.MAX_VALUE / 4, -1, 1}, new int[] {0, 300, 0, Integer.MAX_VALUE / 2});
+        assertRoundTrip("empty", new long[0], new int[0]);
+    }
+
+    @Test
+    void listEncodingMatchesArrayEncoding() {
+        List<HealthReading> readings = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            HealthReading reading = new HealthReading();
+            reading.timestamp = 1000L * i;
+            reading.heartRate = 60 + i;
+            readings.add(reading);
+        }
+        long[] timestamps = readings.stream().mapToLong(r -> r.timestamp).toArray();
+        int[] heartRates = readings.stream().mapToInt(r -> r.heartRate).toArray();
+        assertArrayEquals(ReadingBatchCodec.encode("p", timestamps, heartRates, 10), ReadingBatchCodec.encode("p", readings));
+    }
+
+    @Test
+    void decodesAPrefixOfALargerBuffer() {
+        byte[] encoded = ReadingBatchCodec.encode("p", new long[] {1, 2, 3}, new int[] {60, 61, 62}, 3);
+        byte[] buffer = Arrays.copyOf(encoded, encoded.length + 100);
+        Arrays.fill(buffer, encoded.length, buffer.length, (byte) 0x7F);
+        assertEquals(3, decode(buffer, encoded.length).readings.size());
+    }
+
+    @Test
+    void everySingleBitFlipIsRejectedBeforeAnyReading() {
+        byte[] encoded = ReadingBatchCodec.encode("patient-1", new long[] {1000, 2000, 3000, 4100}, new int[] {70, 71, 69, 90}, 4);
+        for (int bit = 0; bit < encoded.length * 8; bit++) {
+            byte[] corrupt = encoded.clone();
+            corrupt[bit / 8] ^= (byte) (1 << (bit % 8));
+            Collected sink = new Collected();
+            assertThrows(IllegalArgumentException.class, () -> ReadingBatchCodec.decode(corrupt, corrupt.length, sink), "bit " + bit);
+            assertTrue(sink.readings.isEmpty(), "readings delivered for bit " + bit);
+        }
+    }
+
+    @Test
+    void everyTruncationIsRejected() {
+        byte[] encoded = ReadingBatchCodec.encode("patient-1", new long[] {1000, 2000, 3000}, new int[] {70, 71, 69}, 3);
+        for (int length = 0; length < encoded.length; length++) {
+            int truncated = length;
+            assertThrows(IllegalArgumentException.class, () -> decode(encoded, truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void malformedBodiesWithAValidCrcAreRejected() {
+        // Claims 100 readings but carries one
+        byte[] tooFew = withCrc(new byte[] {'H', 'R', 1, 1, 'p', 100, 2, 120});
+        assertThrows(IllegalArgumentException.class, () -> decode(tooFew, tooFew.length));
+
+        // One reading followed by a stray byte
+        byte[] trailing = withCrc(new byte[] {'H', 'R', 1, 1, 'p', 1, 2, 120, 0});
+        assertThrows(IllegalArgumentException.class, () -> decode(trailing, trailing.length));
+
+        // Patient id length past the end of the batch
+        byte[] longId = withCrc(new byte[] {'H', 'R', 1, 50, 'p', 0});
+        assertThrows(IllegalArgumentException.class, () -> decode(longId, longId.length));
+
+        // Patient id length whose varint decodes to a negative long
+        byte[] negativeId = withCrc(new byte[] {'H', 'R', 1,
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01, 'p', 0});
+        assertThrows(IllegalArgumentException.class, () -> decode(negativeId, negativeId.length));
+
+        // Patient id length of 2^32 + 1, which narrows to 1
+        byte[] wrappedId = withCrc(new byte[] {'H', 'R', 1, (byte) 0x81, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x10, 'p', 0});
+        assertThrows(IllegalArgumentException.class, () -> decode(wrappedId, wrappedId.length));
+
+        byte[] version = withCrc(new byte[] {'H', 'R', 2, 1, 'p', 0});
+        assertThrows(IllegalArgumentException.class, () -> decode(version, version.length));
+
+        byte[] json = "{\"patientId\":\"p\",\"readings\":[]}".getBytes(StandardCharsets.UTF_8);
+        assertThrows(IllegalArgumentException.class, () -> decode(json, json.length));
+    }
+
+    @Test
+    void patientIdLongerThanTheFormatAllowsIsRejected() {
+        String id = "x".repeat(256);
+        assertThrows(IllegalArgumentException.class, () -> ReadingBatchCodec.encode(id, new long[0], new int[0], 0));
+    }
+
+    private static byte[] withCrc(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        int value = (int) crc.getValue();
+        byte[] framed = Arrays.copyOf(body, body.length + 4);
+        framed[body.length] = (byte) (value >>> 24);
+        framed[body.length + 1] = (byte) (value >>> 16);
+        framed[body.length + 2] = (byte) (value >>> 8);
+        framed[body.length + 3] = (byte) value;
+        return framed;
+    }
+}
\ No newline at end of file